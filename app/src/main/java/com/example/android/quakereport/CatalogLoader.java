@@ -0,0 +1,109 @@
+package com.example.android.quakereport;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Loader importing a catalog query, every earthquake of a time range above a magnitude, into the
+ * {@link EarthquakeDatabase} and delivering the newest stored earthquakes of the range.
+ *
+ * The response of a catalog query can be too large to hold in memory, so it goes through
+ * {@link EarthquakeDatabase#importCatalog(String, CatalogDownload)}: spilled to a file in the
+ * cache directory and stored a chunk at a time, chunks sized from the maximum heap of the
+ * runtime. The list is then read back from the database, so the earthquakes imported by earlier
+ * loads are still shown when the import fails, for example without network connectivity, and
+ * its display fields are computed before it is delivered.
+ */
+public class CatalogLoader extends AsyncTaskLoader<EarthquakeStore> {
+
+    private static final String LOG_TAG = CatalogLoader.class.getSimpleName();
+
+    // usgs query of the catalog, the starttime parameter is appended
+    private static final String CATALOG_URL = "http://earthquake.usgs.gov/fdsnws/event/1/query"
+            + "?format=geojson&eventtype=earthquake&orderby=time&minmag=";
+
+    // name of the directory of the downloads inside the application cache directory
+    private static final String SPILL_DIRECTORY = "catalog";
+
+    // maximum number of earthquakes delivered, the newest ones
+    private static final int MAX_EARTHQUAKES = 2000;
+
+    private final EarthquakeDatabase mDatabase;
+
+    // time range of the catalog before now
+    private final long mRangeMillis;
+
+    private final double mMinMagnitude;
+
+    // last result, delivered again when the loader starts
+    private EarthquakeStore mResult;
+
+    /**
+     * @param context      {@link Context}
+     * @param rangeMillis  time range of the catalog before now, in milliseconds
+     * @param minMagnitude minimum magnitude of the earthquakes of the catalog
+     */
+    public CatalogLoader(Context context, long rangeMillis, double minMagnitude) {
+        super(context);
+        mDatabase = EarthquakeDatabase.getInstance(context);
+        mRangeMillis = rangeMillis;
+        mMinMagnitude = minMagnitude;
+    }
+
+    @Override
+    public EarthquakeStore loadInBackground() {
+        long endMillis = System.currentTimeMillis();
+        long startMillis = endMillis - mRangeMillis;
+        String requestUrl = CATALOG_URL + mMinMagnitude + "&starttime="
+                + QueryUtils.formatQueryTime(startMillis);
+
+        CatalogDownload download = new CatalogDownload(
+                new File(getContext().getCacheDir(), SPILL_DIRECTORY));
+        try {
+            mDatabase.importCatalog(requestUrl, download);
+        } catch (IOException e) {
+            // the earthquakes stored by earlier imports are shown instead
+            Log.e(LOG_TAG, "Problem importing the catalog", e);
+        }
+
+        EarthquakeStore earthquakes = mDatabase.query(startMillis, endMillis, mMinMagnitude,
+                EarthquakeDatabase.ORDER_BY_TIME, MAX_EARTHQUAKES);
+        earthquakes.formatDisplayFields(new EarthquakeFormatter());
+        return earthquakes;
+    }
+
+    @Override
+    protected void onStartLoading() {
+        // the result kept is delivered again instead of importing the catalog twice, an import
+        // still running when the activity is recreated is delivered to the new activity
+        if (mResult != null) {
+            deliverResult(mResult);
+        }
+        if (mResult == null || takeContentChanged()) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        cancelLoad();
+        mResult = null;
+    }
+
+    @Override
+    public void deliverResult(EarthquakeStore data) {
+        if (isReset()) {
+            // the loader is no longer used
+            return;
+        }
+        mResult = data;
+        if (isStarted()) {
+            super.deliverResult(data);
+        }
+    }
+}
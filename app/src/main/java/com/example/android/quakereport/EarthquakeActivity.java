@@ -23,143 +23,383 @@ import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-public class EarthquakeActivity extends AppCompatActivity implements LoaderCallbacks<List<Earthquake>> {
+public class EarthquakeActivity extends AppCompatActivity implements LoaderCallbacks<EarthquakeStore> {
 
     public static final String LOG_TAG = EarthquakeActivity.class.getName();
     private static final String mUsgsUrl = "http://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&eventtype=earthquake&orderby=time&minmag=6&limit=10";
-    private static EarthquakeAdapter mAdapter;
-    private static TextView mEmptyTextView;
-    private static ProgressBar mProgressBar;
+    // number of rows left below the visible ones at which the next page is requested
+    private static final int PAGE_PREFETCH_THRESHOLD = 5;
+    // usgs real-time summary feed followed in live mode
+    private static final String FEED_URL = "http://earthquake.usgs.gov/earthquakes/feed/v1.0/summary/all_day.geojson";
+    // queries of the monitored regions, fetched at once and merged in regions mode
+    private static final List<String> REGION_URLS = Arrays.asList(
+            "http://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&eventtype=earthquake&orderby=time&minmag=4&limit=50&minlatitude=30&maxlatitude=46&minlongitude=128&maxlongitude=148",
+            "http://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&eventtype=earthquake&orderby=time&minmag=4&limit=50&minlatitude=-56&maxlatitude=-17&minlongitude=-80&maxlongitude=-66",
+            "http://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&eventtype=earthquake&orderby=time&minmag=4&limit=50&minlatitude=51&maxlatitude=72&minlongitude=-170&maxlongitude=-130");
+    // modes of the list, each one is also the id of its loader
+    private static final int MODE_QUERY = 0;
+    private static final int MODE_FEED = 1;
+    private static final int MODE_REGIONS = 2;
+    private static final int MODE_SYNC = 3;
+    private static final int MODE_CATALOG = 4;
+    // time range and minimum magnitude of the catalog imported in catalog mode
+    private static final long CATALOG_RANGE_MILLIS = 365L * 24 * 60 * 60 * 1000;
+    private static final double CATALOG_MIN_MAGNITUDE = 5;
+    // time between two syncs of the query in sync mode
+    private static final long SYNC_INTERVAL_MILLIS = 60 * 1000;
+    // key of the mode in the saved instance state
+    private static final String STATE_MODE = "mode";
+    // key of the visibility of the metrics overlay in the saved instance state
+    private static final String STATE_SHOW_METRICS = "show_metrics";
+    // time between two refreshes of the metrics overlay
+    private static final long METRICS_REFRESH_INTERVAL_MILLIS = 1000;
+    private EarthquakeAdapter mAdapter;
+    private TextView mEmptyTextView;
+    private ProgressBar mProgressBar;
+    // what the list shows, one of the MODE_ constants
+    private int mMode = MODE_QUERY;
+    // debug overlay of the metrics and true while it is shown
+    private TextView mMetricsOverlay;
+    private boolean mShowMetrics;
+    private final Handler mHandler = new Handler();
+    private final Runnable mRefreshMetrics = new Runnable() {
+        @Override
+        public void run() {
+            mMetricsOverlay.setText(Metrics.dump());
+            mHandler.postDelayed(this, METRICS_REFRESH_INTERVAL_MILLIS);
+        }
+    };
+    // asks the loader of sync mode for the changes of the query, every SYNC_INTERVAL_MILLIS
+    private final Runnable mSyncQuery = new Runnable() {
+        @Override
+        public void run() {
+            Loader<EarthquakeStore> loader = getLoaderManager().getLoader(MODE_SYNC);
+            if (loader != null) {
+                loader.onContentChanged();
+            }
+            mHandler.postDelayed(this, SYNC_INTERVAL_MILLIS);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.earthquake_activity);
 
-        /** Find a reference to the {@link ListView} in the layout*/
-        ListView earthquakeListView = (ListView) findViewById(R.id.list);
+        /** Find a reference to the {@link RecyclerView} in the layout*/
+        RecyclerView earthquakeListView = (RecyclerView) findViewById(R.id.list);
 
         /** Create a new {@link EarthquakeAdapter} EarthquakeAdapter object to set on
-         * ListView {@link ListView
+         * RecyclerView {@link RecyclerView}
          */
-        mAdapter = new EarthquakeAdapter(this, new ArrayList<Earthquake>());
+        mAdapter = new EarthquakeAdapter(this, new EarthquakeStore());
+
+        // set a listener to the adapter to listen for click events
+        mAdapter.setOnItemClickListener(new EarthquakeAdapter.OnItemClickListener() {
+            @Override
+            public void onItemClick(int position) {
+                // uri for the url stored in current earthquake object
+                Earthquake currentEarthquake = mAdapter.getItem(position);
+
+                Uri urlUri = Uri.parse(currentEarthquake.getUrl());
+
+                // build an implicit intent to open the url in a web browser on the device
+                Intent implicitIntent = new Intent(Intent.ACTION_VIEW, urlUri);
+                if (implicitIntent.resolveActivity(getPackageManager()) != null) {
+                    startActivity(implicitIntent);
+                } else {
+                    Log.e(LOG_TAG, getString(R.string.no_browser));
+                    Toast.makeText(EarthquakeActivity.this, getString(R.string.no_browser),
+                            Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+
+        // show the empty view whenever the list becomes empty
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                updateEmptyView();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
 
-        /** Set the adapter on the {@link ListView}
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+        });
+
+        /** Set the layout manager and the adapter on the {@link RecyclerView}
          * so the list can be populated in the user interface
          */
         if (earthquakeListView != null) {
+            final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+            earthquakeListView.setLayoutManager(layoutManager);
+            earthquakeListView.setHasFixedSize(true);
             earthquakeListView.setAdapter(mAdapter);
-        } else {
-            Log.e(LOG_TAG, "earthquakeListView null");
-        }
 
-        // set a listener to the list view to listen for click events
-        if (earthquakeListView != null) {
-            earthquakeListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            // request the next page when the list is scrolled near its end
+            earthquakeListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
                 @Override
-                public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
-                    // uri for the url stored in current earthquake object
-                    Earthquake currentEarthquake = mAdapter.getItem(position);
-
-                    Uri urlUri = Uri.parse(currentEarthquake.getUrl());
-
-                    // build an implicit intent to open the url in a web browser on the device
-                    Intent implicitIntent = new Intent(Intent.ACTION_VIEW, urlUri);
-                    if (implicitIntent.resolveActivity(getPackageManager()) != null) {
-                        startActivity(implicitIntent);
-                    } else {
-                        Log.e(LOG_TAG, getString(R.string.no_browser));
-                        Toast.makeText(EarthquakeActivity.this, getString(R.string.no_browser),
-                                Toast.LENGTH_SHORT).show();
+                public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                    int totalItemCount = layoutManager.getItemCount();
+                    if (totalItemCount > 0 && layoutManager.findLastVisibleItemPosition() + 1
+                            >= totalItemCount - PAGE_PREFETCH_THRESHOLD) {
+                        loadNextPage();
                     }
                 }
             });
         } else {
-            Log.e(LOG_TAG, "ListView instance null");
+            Log.e(LOG_TAG, "earthquakeListView null");
         }
 
         // find progress bar
         mProgressBar = (ProgressBar) findViewById(R.id.progress_bar);
 
-        // set empty view on list view
+        // find the view shown while the list is empty
         mEmptyTextView = (TextView) findViewById(R.id.empty_view);
-        if (earthquakeListView != null) {
-            earthquakeListView.setEmptyView(mEmptyTextView);
+        updateEmptyView();
+
+        // initialize the loader of the mode, without network connectivity it can still deliver
+        // the earthquakes cached by a previous request
+        if (savedInstanceState != null) {
+            mMode = savedInstanceState.getInt(STATE_MODE, MODE_QUERY);
+            mShowMetrics = savedInstanceState.getBoolean(STATE_SHOW_METRICS);
         }
+        getLoaderManager().initLoader(mMode, null, this);
 
-        // initialize a loader to request mUsgsUrl only if there is network connectivity
-        ConnectivityManager connectivityManager = (ConnectivityManager)
-                getSystemService(Context.CONNECTIVITY_SERVICE);
-        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
-        if (networkInfo != null && networkInfo.isConnected()) {
-            getLoaderManager().initLoader(0, null, this);
+        mMetricsOverlay = (TextView) findViewById(R.id.metrics_overlay);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        showMetrics(mShowMetrics);
+        scheduleSync();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // stop refreshing the overlay and syncing while they cannot be seen
+        mHandler.removeCallbacks(mRefreshMetrics);
+        mHandler.removeCallbacks(mSyncQuery);
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putInt(STATE_MODE, mMode);
+        outState.putBoolean(STATE_SHOW_METRICS, mShowMetrics);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main, menu);
+        menu.findItem(getModeItemId(mMode)).setChecked(true);
+        menu.findItem(R.id.action_metrics).setVisible(BuildConfig.DEBUG).setChecked(mShowMetrics);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int mode = getItemMode(item.getItemId());
+        if (mode >= 0) {
+            // switch to the mode, the loader of the previous one stops
+            if (mode != mMode) {
+                getLoaderManager().destroyLoader(mMode);
+                mMode = mode;
+                mProgressBar.setVisibility(View.VISIBLE);
+                getLoaderManager().initLoader(mMode, null, this);
+                scheduleSync();
+            }
+            item.setChecked(true);
+            return true;
         }
-        // else display no internet connection message
-        else {
-            mEmptyTextView.setText(R.string.no_iternet_message);
-            mProgressBar.setVisibility(View.GONE);
+        if (item.getItemId() == R.id.action_metrics) {
+            showMetrics(!mShowMetrics);
+            item.setChecked(mShowMetrics);
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Shows the metrics overlay, refreshed every {@link #METRICS_REFRESH_INTERVAL_MILLIS}, or
+     * hides it
+     *
+     * @param show true to show the overlay
+     */
+    private void showMetrics(boolean show) {
+        mShowMetrics = show;
+        mHandler.removeCallbacks(mRefreshMetrics);
+        mMetricsOverlay.setVisibility(show ? View.VISIBLE : View.GONE);
+        if (show) {
+            mRefreshMetrics.run();
         }
+    }
 
+    /**
+     * Syncs the query every {@link #SYNC_INTERVAL_MILLIS} in sync mode, the first sync being
+     * made by the loader when it starts
+     */
+    private void scheduleSync() {
+        mHandler.removeCallbacks(mSyncQuery);
+        if (mMode == MODE_SYNC) {
+            mHandler.postDelayed(mSyncQuery, SYNC_INTERVAL_MILLIS);
+        }
     }
 
     /**
-     * Function which updates the UI with earthquake data
+     * Returns the mode selected by a menu item
      *
-     * @param earthquakes earhtquake {@link Earthquake} data
+     * @param itemId id of the menu item
+     * @return mode, -1 if the item does not select a mode
      */
-    private void updateUI(List<Earthquake> earthquakes) {
-        // clear previous data in adapter
-        mAdapter.clear();
+    private static int getItemMode(int itemId) {
+        switch (itemId) {
+            case R.id.action_query:
+                return MODE_QUERY;
+            case R.id.action_sync:
+                return MODE_SYNC;
+            case R.id.action_regions:
+                return MODE_REGIONS;
+            case R.id.action_live_feed:
+                return MODE_FEED;
+            case R.id.action_catalog:
+                return MODE_CATALOG;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Returns the menu item selecting a mode
+     *
+     * @param mode mode
+     * @return id of the menu item
+     */
+    private static int getModeItemId(int mode) {
+        switch (mode) {
+            case MODE_SYNC:
+                return R.id.action_sync;
+            case MODE_REGIONS:
+                return R.id.action_regions;
+            case MODE_FEED:
+                return R.id.action_live_feed;
+            case MODE_CATALOG:
+                return R.id.action_catalog;
+            default:
+                return R.id.action_query;
+        }
+    }
+
+    /**
+     * Shows the empty view if the list is empty, hides it otherwise
+     */
+    private void updateEmptyView() {
+        if (mEmptyTextView != null) {
+            mEmptyTextView.setVisibility(
+                    mAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+        }
+    }
 
-        // add new earthquake data
-        mAdapter.addAll(earthquakes);
+    /**
+     * Function which updates the UI with earthquake data, the list keeps its scroll position
+     * and only the rows that changed are bound again
+     *
+     * @param earthquakes earhtquake {@link EarthquakeStore} data
+     */
+    private void updateUI(EarthquakeStore earthquakes) {
+        mAdapter.setEarthquakes(earthquakes);
+    }
+
+    /**
+     * Asks the earthquake loader {@link EarthquakeLoader} for the next page of earthquakes
+     */
+    private void loadNextPage() {
+        Loader<EarthquakeStore> loader = getLoaderManager().getLoader(MODE_QUERY);
+        if (loader instanceof EarthquakeLoader) {
+            ((EarthquakeLoader) loader).loadNextPage();
+        }
     }
 
     /**
      * Loader callback onCreateLoader to create and return a EarthquakeLoader
-     * {@link EarthquakeLoader}
+     * {@link EarthquakeLoader}, paging or syncing the query or fetching the monitored regions,
+     * a EarthquakeFeedLoader {@link EarthquakeFeedLoader} in live mode or a CatalogLoader
+     * {@link CatalogLoader} in catalog mode
      *
-     * @param i id of loader
+     * @param i id of loader, the mode it loads
      * @param bundle bundle passed in initLoader of LoaderManager
-     * @return EarthquakeLoader {@link EarthquakeLoader}
+     * @return EarthquakeLoader {@link EarthquakeLoader}, {@link EarthquakeFeedLoader} or
+     * {@link CatalogLoader}
      */
     @Override
-    public Loader<List<Earthquake>> onCreateLoader(int i, Bundle bundle) {
-        return new EarthquakeLoader(EarthquakeActivity.this, mUsgsUrl);
+    public Loader<EarthquakeStore> onCreateLoader(int i, Bundle bundle) {
+        switch (i) {
+            case MODE_FEED:
+                return new EarthquakeFeedLoader(EarthquakeActivity.this, FEED_URL);
+            case MODE_SYNC:
+                return new EarthquakeLoader(EarthquakeActivity.this, mUsgsUrl);
+            case MODE_REGIONS:
+                return new EarthquakeLoader(EarthquakeActivity.this, REGION_URLS);
+            case MODE_CATALOG:
+                return new CatalogLoader(EarthquakeActivity.this, CATALOG_RANGE_MILLIS,
+                        CATALOG_MIN_MAGNITUDE);
+            default:
+                return new EarthquakeLoader(EarthquakeActivity.this, mUsgsUrl, true);
+        }
     }
 
     /**
      * Loader callback onLoadFinished called with loader has finished loading
      *
-     * @param loader      {@link Loader<List<Earthquake>>}
-     * @param earthquakes {@link List<Earthquake>}
+     * @param loader      {@link Loader<EarthquakeStore>}
+     * @param earthquakes {@link EarthquakeStore}
      */
     @Override
-    public void onLoadFinished(Loader<List<Earthquake>> loader, List<Earthquake> earthquakes) {
+    public void onLoadFinished(Loader<EarthquakeStore> loader, EarthquakeStore earthquakes) {
 
         // hide progress bar
         mProgressBar.setVisibility(View.GONE);
 
 
-        // set text for empty textView
-        mEmptyTextView.setText(R.string.empty_view_string);
+        // set text for empty textView, display no internet connection message if nothing could
+        // be loaded because there is no connectivity
+        ConnectivityManager connectivityManager = (ConnectivityManager)
+                getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        if (networkInfo != null && networkInfo.isConnected()) {
+            mEmptyTextView.setText(R.string.empty_view_string);
+        } else {
+            mEmptyTextView.setText(R.string.no_iternet_message);
+        }
 
-        if (earthquakes == null || earthquakes.isEmpty())
+        // nothing could be loaded, the earthquakes displayed are kept
+        if (earthquakes == null)
             return;
 
-        // update the ui with earthquakes data
+        // update the ui with earthquakes data, an empty list clears it and shows the empty view
         updateUI(earthquakes);
     }
 
@@ -167,10 +407,10 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderCallb
      * Loader callback onLoaderReset called with the data source is no longer valid and the
      * loader resets
      *
-     * @param loader {@link Loader<List<Earthquake>>}
+     * @param loader {@link Loader<EarthquakeStore>}
      */
     @Override
-    public void onLoaderReset(Loader<List<Earthquake>> loader) {
+    public void onLoaderReset(Loader<EarthquakeStore> loader) {
         mAdapter.clear();
     }
 
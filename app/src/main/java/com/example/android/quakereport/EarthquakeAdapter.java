@@ -2,98 +2,259 @@ package com.example.android.quakereport;
 
 import android.content.Context;
 import android.graphics.drawable.GradientDrawable;
+import android.os.Handler;
 import android.support.v4.content.ContextCompat;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.TextView;
 
-import java.sql.Date;
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * Custom adapter to list earthquake data in list view {@link android.widget.ListView}
+ * Custom adapter to list earthquake data in a {@link RecyclerView}.
+ * Rows are read by index from an {@link EarthquakeStore}.
+ *
+ * Items have stable ids computed from the event ids. A new list replacing a non-empty one is
+ * compared to it by an {@link EarthquakeDiff} on a background thread, and only the removed,
+ * inserted and changed rows are notified, so a refresh keeps the scroll position and rebinds
+ * only what changed.
+ *
+ * The texts of an item are display fields of the store, computed once when the earthquakes are
+ * loaded, so binding an item only reads them by index and allocates nothing.
  */
-public class EarthquakeAdapter extends ArrayAdapter<Earthquake> {
+public class EarthquakeAdapter extends RecyclerView.Adapter<EarthquakeAdapter.ViewHolder> {
 
     /**
-     * Context is used to inflate the layout file and the list is data we want to populate.
+     * Listener of clicks on the earthquakes of the list
+     */
+    public interface OnItemClickListener {
+
+        /**
+         * @param position position of the clicked earthquake in the adapter
+         */
+        void onItemClick(int position);
+    }
+
+    // thread computing the diffs between lists, shared by all adapters
+    private static final ExecutorService DIFF_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    // formats the rows a loader left unformatted, only used on the diff thread
+    private static final EarthquakeFormatter DIFF_FORMATTER = new EarthquakeFormatter();
+
+    private Context mContext;
+
+    private OnItemClickListener mOnItemClickListener;
+
+    // earthquakes to display
+    private EarthquakeStore mEarthquakes;
+
+    // list being compared to the displayed one, null if none
+    private EarthquakeStore mPendingEarthquakes;
+
+    // incremented by every list set, a diff of an older list is not applied
+    private int mGeneration;
+
+    // color of the magnitude circle for each magnitude band, resolved once
+    private int[] mMagnitudeColors = new int[EarthquakeFormatter.MAGNITUDE_BAND_COUNT];
+
+    private Handler mHandler = new Handler();
+
+    // time spent binding rows since the last frame was recorded
+    private long mFrameBindTime;
+
+    // records the bind time of a frame, posted by its first bind so it runs once the layout
+    // pass binding the rows is over
+    private final Runnable mRecordFrameBindTime = new Runnable() {
+        @Override
+        public void run() {
+            Metrics.record(Metrics.BIND_FRAME, Histogram.Unit.NANOSECONDS, mFrameBindTime);
+            mFrameBindTime = 0;
+        }
+    };
+
+    /**
+     * Context is used to inflate the layout file and the store is data we want to populate.
      * @param context {@link Context}
-     * @param earthquakes array list of earthquake {@link Earthquake} objects
+     * @param earthquakes store of earthquakes {@link EarthquakeStore}
      */
-    public EarthquakeAdapter(Context context, ArrayList<Earthquake> earthquakes) {
-        super(context, 0, earthquakes);
+    public EarthquakeAdapter(Context context, EarthquakeStore earthquakes) {
+        mContext = context;
+        for (int band = 0; band < mMagnitudeColors.length; band++) {
+            mMagnitudeColors[band] = getMagnitudeColor(band);
+        }
+        setHasStableIds(true);
+        mEarthquakes = new EarthquakeStore();
+        setEarthquakes(earthquakes);
     }
 
     /**
-     * Provides a view for the ListView {@link android.widget.ListView}
-     * @param position position of data in the list of data that should be displayed
-     * @param convertView recycled view to populate with data
+     * Sets the listener of clicks on the earthquakes
+     * @param onItemClickListener listener {@link OnItemClickListener}, null to remove it
+     */
+    public void setOnItemClickListener(OnItemClickListener onItemClickListener) {
+        mOnItemClickListener = onItemClickListener;
+    }
+
+    /**
+     * Replaces the displayed earthquakes. Stores are expected to be formatted off the UI thread
+     * by the loader, any row left unformatted is formatted once on the diff thread, never on
+     * the UI thread. The new earthquakes are displayed once they are formatted and their diff
+     * with the displayed ones is computed.
+     * @param earthquakes store of earthquakes {@link EarthquakeStore}
+     */
+    public void setEarthquakes(final EarthquakeStore earthquakes) {
+        // stores are never modified once handed out, the same store means nothing changed
+        if ((earthquakes == mEarthquakes && mPendingEarthquakes == null)
+                || earthquakes == mPendingEarthquakes) {
+            return;
+        }
+        final int generation = ++mGeneration;
+        final EarthquakeStore displayed = mEarthquakes;
+        // nothing to compare
+        final boolean replaceAll = displayed.isEmpty() || earthquakes.isEmpty();
+        if (replaceAll && earthquakes.isFormatted()) {
+            mPendingEarthquakes = null;
+            mEarthquakes = earthquakes;
+            notifyDataSetChanged();
+            return;
+        }
+
+        mPendingEarthquakes = earthquakes;
+        DIFF_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                earthquakes.formatDisplayFields(DIFF_FORMATTER);
+                final EarthquakeDiff diff =
+                        replaceAll ? null : EarthquakeDiff.compute(displayed, earthquakes);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // a newer list was set meanwhile
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        mPendingEarthquakes = null;
+                        mEarthquakes = earthquakes;
+                        if (diff == null) {
+                            notifyDataSetChanged();
+                        } else {
+                            diff.dispatchTo(mDiffCallback);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    // notifies the updates of a diff to the recycler view
+    private final EarthquakeDiff.Callback mDiffCallback = new EarthquakeDiff.Callback() {
+        @Override
+        public void onRemoved(int position, int count) {
+            notifyItemRangeRemoved(position, count);
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            notifyItemRangeInserted(position, count);
+        }
+
+        @Override
+        public void onChanged(int position, int count) {
+            notifyItemRangeChanged(position, count);
+        }
+    };
+
+    /**
+     * Removes all displayed earthquakes
+     */
+    public void clear() {
+        setEarthquakes(new EarthquakeStore());
+    }
+
+    public Context getContext() {
+        return mContext;
+    }
+
+    @Override
+    public int getItemCount() {
+        return mEarthquakes.size();
+    }
+
+    /**
+     * Returns a new {@link Earthquake} holding the row at the position
+     */
+    public Earthquake getItem(int position) {
+        return mEarthquakes.get(position);
+    }
+
+    /**
+     * Returns the stable id of the earthquake at the position, computed from its event id
+     */
+    @Override
+    public long getItemId(int position) {
+        return mEarthquakes.getStableId(position);
+    }
+
+    /**
+     * Inflates a list item and keeps its child views in a view holder
      * @param parent parent ViewGroup used for inflation
-     * @return the view for the given position in the ListView {@link android.widget.ListView}
+     * @param viewType type of the view, there is only one
+     * @return view holder {@link ViewHolder} of the new item
      */
     @Override
-    public View getView(int position, View convertView, ViewGroup parent) {
-        // check if existing view is being used, otherwise inflate new view
-        if (convertView == null) {
-            convertView = LayoutInflater.from(getContext()).inflate(
-                    R.layout.list_item, parent, false);
-        }
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View itemView = LayoutInflater.from(getContext()).inflate(
+                R.layout.list_item, parent, false);
+        return new ViewHolder(itemView);
+    }
 
-        // get earthquake object at current position
-        Earthquake currentEarthquake = getItem(position);
+    /**
+     * Populates an item with the earthquake at the position
+     * @param viewHolder view holder {@link ViewHolder} of the item
+     * @param position position of data in the list of data that should be displayed
+     */
+    @Override
+    public void onBindViewHolder(ViewHolder viewHolder, int position) {
+        long bindStart = Metrics.startTime();
+
+        // get earthquake store holding the current position, its display fields were computed
+        // when it was loaded
+        EarthquakeStore earthquakes = mEarthquakes;
 
-        // set value for View with id magnitude in list_item.xml for the convertView
-        TextView magnitudeTextView = (TextView) convertView.findViewById(R.id.magnitude);
-        // format the double value to display magnitude only up to 1 decimal place
-        DecimalFormat decimalFormat = new DecimalFormat("0.0");
-        magnitudeTextView.setText(decimalFormat.format(currentEarthquake.getMagnitude()));
+        // set value for View with id magnitude in list_item.xml for the item
+        viewHolder.magnitudeTextView.setText(earthquakes.getMagnitudeText(position));
 
         // set color of magnitude TextView background depending on its value
-        GradientDrawable gradientDrawable = (GradientDrawable) magnitudeTextView.getBackground();
-        int magnitudeColor = getMagnitudeColor(currentEarthquake.getMagnitude());
-        gradientDrawable.setColor(magnitudeColor);
-
-        // logic for splitting primary and secondary text
-        String place = currentEarthquake.getPlace();
-        String primary = place;
-        String secondary = "Near the";
-        if (Character.isDigit(place.charAt(0))) {
-            int index = place.indexOf(" of ");
-            secondary = place.substring(0, index) + " of";
-            primary = place.substring(index + 4);
-        }
+        viewHolder.magnitudeCircle.setColor(
+                mMagnitudeColors[earthquakes.getMagnitudeBand(position)]);
 
         // set value for primary place
-        TextView primaryPlace = (TextView) convertView.findViewById(R.id.primary_location);
-        primaryPlace.setText(primary);
+        viewHolder.primaryPlace.setText(earthquakes.getPrimaryLocation(position));
 
         // set value for secondary place
-        TextView secondaryPlace = (TextView) convertView.findViewById(R.id.location_offset);
-        secondaryPlace.setText(secondary);
-
-        // set value for View with id date in list_item.xml for the convertView
-        TextView dateTextView = (TextView) convertView.findViewById(R.id.date);
-        Date date = new Date(currentEarthquake.getDateInMillis());
-        SimpleDateFormat dateFormat = new SimpleDateFormat("MMM dd, yyyy");
-        dateTextView.setText(dateFormat.format(date));
-
-        // set value for View with id time in list_item.xml for the convertView
-        TextView timeTextView = (TextView) convertView.findViewById(R.id.time);
-        dateFormat.applyPattern("h:mm a");
-        timeTextView.setText(dateFormat.format(date));
-
-        // return the updated view for the current position
-        return convertView;
+        viewHolder.secondaryPlace.setText(earthquakes.getLocationOffset(position));
+
+        // set value for View with id date in list_item.xml for the item
+        viewHolder.dateTextView.setText(earthquakes.getDateText(position));
+
+        // set value for View with id time in list_item.xml for the item
+        viewHolder.timeTextView.setText(earthquakes.getTimeText(position));
+
+        long bindTime = Metrics.recordTime(Metrics.BIND, bindStart);
+        if (bindTime > 0) {
+            if (mFrameBindTime == 0) {
+                mHandler.post(mRecordFrameBindTime);
+            }
+            mFrameBindTime += bindTime;
+        }
     }
 
-    private int getMagnitudeColor(double magnitude) {
-        // convert the decimal values to nearest integer values and return color according to the
-        // integer
-        switch ((int) Math.floor(magnitude)) {
+    private int getMagnitudeColor(int magnitudeBand) {
+        // return color according to the magnitude band, see EarthquakeFormatter#getMagnitudeBand
+        switch (magnitudeBand) {
             case 0:
             case 1:
                 return ContextCompat.getColor(getContext(), R.color.magnitude1);
@@ -117,4 +278,37 @@ public class EarthquakeAdapter extends ArrayAdapter<Earthquake> {
                 return ContextCompat.getColor(getContext(), R.color.magnitude10plus);
         }
     }
+
+    /**
+     * Child views of a list item, looked up once when the item is inflated
+     */
+    class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+        final TextView magnitudeTextView;
+        final GradientDrawable magnitudeCircle;
+        final TextView primaryPlace;
+        final TextView secondaryPlace;
+        final TextView dateTextView;
+        final TextView timeTextView;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            itemView.setOnClickListener(this);
+            magnitudeTextView = (TextView) itemView.findViewById(R.id.magnitude);
+            // mutate so setting the color does not change the circle of the other items
+            magnitudeCircle = (GradientDrawable) magnitudeTextView.getBackground().mutate();
+            primaryPlace = (TextView) itemView.findViewById(R.id.primary_location);
+            secondaryPlace = (TextView) itemView.findViewById(R.id.location_offset);
+            dateTextView = (TextView) itemView.findViewById(R.id.date);
+            timeTextView = (TextView) itemView.findViewById(R.id.time);
+        }
+
+        @Override
+        public void onClick(View view) {
+            // the position is unknown while the item is being removed
+            int position = getAdapterPosition();
+            if (mOnItemClickListener != null && position != RecyclerView.NO_POSITION) {
+                mOnItemClickListener.onItemClick(position);
+            }
+        }
+    }
 }
@@ -0,0 +1,50 @@
+package com.example.android.quakereport;
+
+import android.provider.BaseColumns;
+
+/**
+ * Schema of the local earthquake database {@link EarthquakeDbHelper}
+ */
+public final class EarthquakeContract {
+
+    /**
+     * Create a private constructor because no one should ever create a
+     * {@link EarthquakeContract} object.
+     */
+    private EarthquakeContract() {
+    }
+
+    /**
+     * Table of the earthquakes accumulated from every query, one row per usgs event
+     */
+    public static final class EarthquakeEntry implements BaseColumns {
+
+        public static final String TABLE_NAME = "earthquakes";
+
+        // usgs event id, unique
+        public static final String COLUMN_EVENT_ID = "event_id";
+
+        public static final String COLUMN_MAGNITUDE = "magnitude";
+
+        public static final String COLUMN_PLACE = "place";
+
+        // date of occurrence in milliseconds
+        public static final String COLUMN_TIME = "time";
+
+        public static final String COLUMN_URL = "url";
+
+        // latitude and longitude of the epicenter in degrees, null if not known
+        public static final String COLUMN_LATITUDE = "latitude";
+        public static final String COLUMN_LONGITUDE = "longitude";
+
+        // cell of the epicenter in the GeoGrid, GeoGrid.UNKNOWN_CELL if not known
+        public static final String COLUMN_GRID_CELL = "grid_cell";
+
+        /**
+         * Create a private constructor because no one should ever create a
+         * {@link EarthquakeEntry} object.
+         */
+        private EarthquakeEntry() {
+        }
+    }
+}
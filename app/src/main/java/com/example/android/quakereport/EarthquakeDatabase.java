@@ -0,0 +1,396 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.quakereport.EarthquakeContract.EarthquakeEntry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Local persistent store of every earthquake fetched, so earthquakes can be filtered by time,
+ * magnitude and area and sorted without a network round trip. Queries return an
+ * {@link EarthquakeStore}, ready to be formatted and shown like a usgs response.
+ *
+ * The numbers of stored earthquakes per day and magnitude band are kept by a
+ * {@link MagnitudeAggregator}, built from the table on first use and then updated with every
+ * write, for summaries that do not read the rows.
+ *
+ * All methods access the disk and must be called off the UI thread.
+ */
+public class EarthquakeDatabase {
+
+    // sort orders of the queries
+    public static final String ORDER_BY_TIME = EarthquakeEntry.COLUMN_TIME + " DESC";
+    public static final String ORDER_BY_MAGNITUDE = EarthquakeEntry.COLUMN_MAGNITUDE + " DESC";
+
+    // above this number of grid cells a box query filters on the coordinates only
+    private static final int MAX_GRID_CELLS = 1000;
+
+    private static final String[] PROJECTION = {
+            EarthquakeEntry.COLUMN_EVENT_ID,
+            EarthquakeEntry.COLUMN_MAGNITUDE,
+            EarthquakeEntry.COLUMN_PLACE,
+            EarthquakeEntry.COLUMN_TIME,
+            EarthquakeEntry.COLUMN_URL,
+            EarthquakeEntry.COLUMN_LATITUDE,
+            EarthquakeEntry.COLUMN_LONGITUDE
+    };
+
+    private static final String SQL_INSERT_EARTHQUAKE = "INSERT OR REPLACE INTO "
+            + EarthquakeEntry.TABLE_NAME + " ("
+            + EarthquakeEntry.COLUMN_EVENT_ID + ", "
+            + EarthquakeEntry.COLUMN_MAGNITUDE + ", "
+            + EarthquakeEntry.COLUMN_PLACE + ", "
+            + EarthquakeEntry.COLUMN_TIME + ", "
+            + EarthquakeEntry.COLUMN_URL + ", "
+            + EarthquakeEntry.COLUMN_LATITUDE + ", "
+            + EarthquakeEntry.COLUMN_LONGITUDE + ", "
+            + EarthquakeEntry.COLUMN_GRID_CELL + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static EarthquakeDatabase sInstance;
+
+    private final EarthquakeDbHelper mDbHelper;
+
+    // counts by day and magnitude band of the stored earthquakes, null until first used
+    private MagnitudeAggregator mAggregator;
+
+    private EarthquakeDatabase(Context context) {
+        mDbHelper = new EarthquakeDbHelper(context);
+    }
+
+    /**
+     * Returns the database of the application, shared so all threads use the same connection
+     *
+     * @param context {@link Context}
+     * @return {@link EarthquakeDatabase}
+     */
+    public static synchronized EarthquakeDatabase getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new EarthquakeDatabase(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Inserts the earthquakes, replacing the stored rows of the same events, in one transaction
+     *
+     * @param earthquakes earthquakes {@link EarthquakeStore} to store
+     */
+    public synchronized void insert(EarthquakeStore earthquakes) {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        SQLiteStatement statement = db.compileStatement(SQL_INSERT_EARTHQUAKE);
+        db.beginTransaction();
+        try {
+            for (int i = 0, n = earthquakes.size(); i < n; i++) {
+                double magnitude = earthquakes.getMagnitude(i);
+                double latitude = earthquakes.getLatitude(i);
+                double longitude = earthquakes.getLongitude(i);
+
+                statement.bindString(1, earthquakes.getId(i));
+                bindDouble(statement, 2, magnitude);
+                statement.bindString(3, earthquakes.getPlace(i));
+                statement.bindLong(4, earthquakes.getDateInMillis(i));
+                statement.bindString(5, earthquakes.getUrl(i));
+                bindDouble(statement, 6, latitude);
+                bindDouble(statement, 7, longitude);
+                statement.bindLong(8, GeoGrid.getCell(latitude, longitude));
+                statement.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+
+        if (mAggregator != null) {
+            mAggregator.add(earthquakes);
+        }
+    }
+
+    /**
+     * Downloads a query that may return more earthquakes than fit in memory and stores them,
+     * a chunk at a time as the response is parsed, see {@link CatalogDownload}
+     *
+     * @param requestUrl string usgs url
+     * @param download   download {@link CatalogDownload} setting the heap ceiling
+     * @return number of earthquakes stored
+     * @throws IOException if the response cannot be downloaded, the chunks stored before the
+     *                     error are kept
+     */
+    public int importCatalog(String requestUrl, CatalogDownload download) throws IOException {
+        return download.download(requestUrl, new QueryUtils.ChunkListener() {
+            @Override
+            public void onChunk(EarthquakeStore earthquakes) {
+                insert(earthquakes);
+            }
+        });
+    }
+
+    /**
+     * Applies changes fetched by an {@link EarthquakeSync}
+     *
+     * @param changes changes {@link EarthquakeChanges} to apply
+     */
+    public synchronized void apply(EarthquakeChanges changes) {
+        delete(changes.getDeletedIds());
+        insert(changes.getUpserts());
+    }
+
+    /**
+     * Deletes the rows of the given events
+     *
+     * @param eventIds usgs event ids
+     */
+    public synchronized void delete(Collection<String> eventIds) {
+        if (eventIds.isEmpty()) {
+            return;
+        }
+
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (String eventId : eventIds) {
+                db.delete(EarthquakeEntry.TABLE_NAME, EarthquakeEntry.COLUMN_EVENT_ID + " = ?",
+                        new String[]{eventId});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (mAggregator != null) {
+            mAggregator.remove(eventIds);
+        }
+    }
+
+    /**
+     * Returns the stored earthquakes of a time range and minimum magnitude
+     *
+     * @param startMillis  earliest date in milliseconds, inclusive
+     * @param endMillis    latest date in milliseconds, inclusive
+     * @param minMagnitude minimum magnitude, earthquakes without magnitude are left out if it is
+     *                     not negative infinity
+     * @param orderBy      {@link #ORDER_BY_TIME} or {@link #ORDER_BY_MAGNITUDE}
+     * @param limit        maximum number of earthquakes
+     * @return earthquakes {@link EarthquakeStore}, empty if the minimum magnitude is NaN
+     */
+    public EarthquakeStore query(long startMillis, long endMillis, double minMagnitude,
+                                 String orderBy, int limit) {
+        StringBuilder selection = new StringBuilder();
+        List<String> selectionArgs = new ArrayList<>();
+        selection.append(EarthquakeEntry.COLUMN_TIME).append(" BETWEEN ? AND ?");
+        selectionArgs.add(String.valueOf(startMillis));
+        selectionArgs.add(String.valueOf(endMillis));
+        if (minMagnitude != Double.NEGATIVE_INFINITY) {
+            if (Double.isNaN(minMagnitude)) {
+                return new EarthquakeStore();
+            }
+            selection.append(" AND ").append(EarthquakeEntry.COLUMN_MAGNITUDE).append(" >= ?");
+            selectionArgs.add(String.valueOf(minMagnitude));
+        }
+        Cursor cursor = query(selection.toString(), selectionArgs, orderBy, limit);
+        try {
+            return readEarthquakes(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the stored earthquakes of a time range whose epicenter is in a box, newest first.
+     * A box whose west longitude is greater than its east longitude crosses the antimeridian.
+     *
+     * @param south       southern latitude in degrees
+     * @param west        western longitude in degrees
+     * @param north       northern latitude in degrees
+     * @param east        eastern longitude in degrees
+     * @param startMillis earliest date in milliseconds, inclusive
+     * @param endMillis   latest date in milliseconds, inclusive
+     * @param limit       maximum number of earthquakes
+     * @return earthquakes {@link EarthquakeStore}, empty if a coordinate is NaN
+     */
+    public EarthquakeStore queryBox(double south, double west, double north, double east,
+                                    long startMillis, long endMillis, int limit) {
+        if (Double.isNaN(south) || Double.isNaN(west) || Double.isNaN(north)
+                || Double.isNaN(east)) {
+            return new EarthquakeStore();
+        }
+        Cursor cursor = queryBoxRows(south, west, north, east, startMillis, endMillis, limit);
+        try {
+            return readEarthquakes(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the stored earthquakes of a time range within a distance of a point, newest first.
+     * The rows of the bounding box of the circle are read through the grid cell index, newest
+     * first, and only the ones within the distance are kept until the limit is reached.
+     *
+     * @param latitude    latitude of the point in degrees
+     * @param longitude   longitude of the point in degrees
+     * @param radiusKm    distance in km
+     * @param startMillis earliest date in milliseconds, inclusive
+     * @param endMillis   latest date in milliseconds, inclusive
+     * @param limit       maximum number of earthquakes
+     * @return earthquakes {@link EarthquakeStore}, empty if an argument is NaN
+     */
+    public EarthquakeStore queryNear(double latitude, double longitude, double radiusKm,
+                                     long startMillis, long endMillis, int limit) {
+        EarthquakeStore earthquakes = new EarthquakeStore();
+        if (Double.isNaN(latitude) || Double.isNaN(longitude) || Double.isNaN(radiusKm)) {
+            return earthquakes;
+        }
+
+        // the rows of the box are streamed, the ones of the corners are skipped
+        double[] box = GeoGrid.getBoundingBox(latitude, longitude, radiusKm);
+        Cursor cursor = queryBoxRows(box[0], box[1], box[2], box[3], startMillis, endMillis,
+                Integer.MAX_VALUE);
+        try {
+            while (earthquakes.size() < limit && cursor.moveToNext()) {
+                double rowLatitude = getDouble(cursor, 5);
+                double rowLongitude = getDouble(cursor, 6);
+                if (GeoGrid.getDistanceKm(latitude, longitude, rowLatitude, rowLongitude)
+                        <= radiusKm) {
+                    addEarthquake(earthquakes, cursor);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return earthquakes;
+    }
+
+    /**
+     * Returns the counts by day and magnitude band of the stored earthquakes, kept up to date
+     * by the following writes. The first call reads the table.
+     *
+     * @return aggregator {@link MagnitudeAggregator}
+     */
+    public synchronized MagnitudeAggregator getAggregator() {
+        if (mAggregator == null) {
+            MagnitudeAggregator aggregator = new MagnitudeAggregator();
+            SQLiteDatabase db = mDbHelper.getReadableDatabase();
+            Cursor cursor = db.query(EarthquakeEntry.TABLE_NAME, new String[]{
+                    EarthquakeEntry.COLUMN_EVENT_ID,
+                    EarthquakeEntry.COLUMN_MAGNITUDE,
+                    EarthquakeEntry.COLUMN_TIME}, null, null, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    aggregator.add(cursor.getString(0), getDouble(cursor, 1), cursor.getLong(2));
+                }
+            } finally {
+                cursor.close();
+            }
+            mAggregator = aggregator;
+        }
+        return mAggregator;
+    }
+
+    /**
+     * Returns the number of stored earthquakes
+     *
+     * @return number of rows
+     */
+    public long count() {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        return DatabaseUtils.queryNumEntries(db, EarthquakeEntry.TABLE_NAME);
+    }
+
+    /**
+     * Returns a cursor over the rows of a time range whose epicenter is in a box, newest first
+     */
+    private Cursor queryBoxRows(double south, double west, double north, double east,
+                                long startMillis, long endMillis, int limit) {
+        StringBuilder selection = new StringBuilder();
+        List<String> selectionArgs = new ArrayList<>();
+
+        // narrow down to the grid cells of the box through the index first, the cells are ints
+        // computed here so they are written in the statement
+        int[] cells = GeoGrid.getCells(south, west, north, east);
+        if (cells.length <= MAX_GRID_CELLS) {
+            selection.append(EarthquakeEntry.COLUMN_GRID_CELL).append(" IN (");
+            for (int i = 0; i < cells.length; i++) {
+                if (i > 0) {
+                    selection.append(',');
+                }
+                selection.append(cells[i]);
+            }
+            selection.append(") AND ");
+        }
+
+        selection.append(EarthquakeEntry.COLUMN_LATITUDE).append(" BETWEEN ? AND ?");
+        selectionArgs.add(String.valueOf(Math.min(south, north)));
+        selectionArgs.add(String.valueOf(Math.max(south, north)));
+        if (west <= east) {
+            selection.append(" AND ").append(EarthquakeEntry.COLUMN_LONGITUDE)
+                    .append(" BETWEEN ? AND ?");
+        } else {
+            selection.append(" AND (").append(EarthquakeEntry.COLUMN_LONGITUDE).append(" >= ? OR ")
+                    .append(EarthquakeEntry.COLUMN_LONGITUDE).append(" <= ?)");
+        }
+        selectionArgs.add(String.valueOf(west));
+        selectionArgs.add(String.valueOf(east));
+        selection.append(" AND ").append(EarthquakeEntry.COLUMN_TIME).append(" BETWEEN ? AND ?");
+        selectionArgs.add(String.valueOf(startMillis));
+        selectionArgs.add(String.valueOf(endMillis));
+
+        return query(selection.toString(), selectionArgs, ORDER_BY_TIME, limit);
+    }
+
+    /**
+     * Queries the table, the values of the selection being bound as arguments
+     */
+    private Cursor query(String selection, List<String> selectionArgs, String orderBy,
+                         int limit) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        return db.query(EarthquakeEntry.TABLE_NAME, PROJECTION, selection,
+                selectionArgs.toArray(new String[selectionArgs.size()]), null, null, orderBy,
+                String.valueOf(limit));
+    }
+
+    /**
+     * Reads the rows of a cursor over {@link #PROJECTION} into a store, without creating an
+     * {@link Earthquake} per row
+     *
+     * @param cursor {@link Cursor}
+     * @return earthquakes {@link EarthquakeStore}
+     */
+    private static EarthquakeStore readEarthquakes(Cursor cursor) {
+        EarthquakeStore earthquakes = new EarthquakeStore(cursor.getCount());
+        while (cursor.moveToNext()) {
+            addEarthquake(earthquakes, cursor);
+        }
+        return earthquakes;
+    }
+
+    /**
+     * Appends the current row of a cursor over {@link #PROJECTION} to a store
+     */
+    private static void addEarthquake(EarthquakeStore earthquakes, Cursor cursor) {
+        earthquakes.add(cursor.getString(0), getDouble(cursor, 1), cursor.getString(2),
+                cursor.getLong(3), cursor.getString(4), getDouble(cursor, 5),
+                getDouble(cursor, 6));
+    }
+
+    private static double getDouble(Cursor cursor, int column) {
+        return cursor.isNull(column) ? Double.NaN : cursor.getDouble(column);
+    }
+
+    private static void bindDouble(SQLiteStatement statement, int index, double value) {
+        // NaN is stored as null
+        if (Double.isNaN(value)) {
+            statement.bindNull(index);
+        } else {
+            statement.bindDouble(index, value);
+        }
+    }
+}
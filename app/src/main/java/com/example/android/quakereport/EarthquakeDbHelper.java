@@ -0,0 +1,64 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.example.android.quakereport.EarthquakeContract.EarthquakeEntry;
+
+/**
+ * Creates and upgrades the local earthquake database. Besides the unique event id the table is
+ * indexed on time, magnitude and grid cell, the columns the earthquakes are filtered and sorted
+ * by, so queries over hundreds of thousands of rows do not scan the table.
+ */
+public class EarthquakeDbHelper extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "earthquakes.db";
+
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String SQL_CREATE_EARTHQUAKES_TABLE = "CREATE TABLE "
+            + EarthquakeEntry.TABLE_NAME + " ("
+            + EarthquakeEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + EarthquakeEntry.COLUMN_EVENT_ID + " TEXT NOT NULL UNIQUE, "
+            + EarthquakeEntry.COLUMN_MAGNITUDE + " REAL, "
+            + EarthquakeEntry.COLUMN_PLACE + " TEXT NOT NULL, "
+            + EarthquakeEntry.COLUMN_TIME + " INTEGER NOT NULL, "
+            + EarthquakeEntry.COLUMN_URL + " TEXT NOT NULL, "
+            + EarthquakeEntry.COLUMN_LATITUDE + " REAL, "
+            + EarthquakeEntry.COLUMN_LONGITUDE + " REAL, "
+            + EarthquakeEntry.COLUMN_GRID_CELL + " INTEGER NOT NULL);";
+
+    private static final String SQL_CREATE_TIME_INDEX = "CREATE INDEX "
+            + EarthquakeEntry.TABLE_NAME + "_time ON " + EarthquakeEntry.TABLE_NAME
+            + " (" + EarthquakeEntry.COLUMN_TIME + ");";
+
+    private static final String SQL_CREATE_MAGNITUDE_INDEX = "CREATE INDEX "
+            + EarthquakeEntry.TABLE_NAME + "_magnitude ON " + EarthquakeEntry.TABLE_NAME
+            + " (" + EarthquakeEntry.COLUMN_MAGNITUDE + ");";
+
+    // the time makes the rows of a cell come out in date order
+    private static final String SQL_CREATE_GRID_CELL_INDEX = "CREATE INDEX "
+            + EarthquakeEntry.TABLE_NAME + "_grid_cell ON " + EarthquakeEntry.TABLE_NAME
+            + " (" + EarthquakeEntry.COLUMN_GRID_CELL + ", " + EarthquakeEntry.COLUMN_TIME
+            + ");";
+
+    public EarthquakeDbHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_EARTHQUAKES_TABLE);
+        db.execSQL(SQL_CREATE_TIME_INDEX);
+        db.execSQL(SQL_CREATE_MAGNITUDE_INDEX);
+        db.execSQL(SQL_CREATE_GRID_CELL_INDEX);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // the database only holds copies of usgs data, it is filled again by the next queries
+        db.execSQL("DROP TABLE IF EXISTS " + EarthquakeEntry.TABLE_NAME);
+        onCreate(db);
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.content.Loader;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Long running loader following a usgs real-time summary feed through a {@link FeedPoller}.
+ * It keeps polling while started, on the adaptive schedule of the poller, and the changes of
+ * each poll are applied to the delivered list: new earthquakes are added, updated ones replaced
+ * and removed ones dropped. Only the new and updated earthquakes of a poll are formatted, the
+ * rows kept keep their display fields. Polls are at least
+ * {@link FeedPoller#MIN_INTERVAL_MILLIS} apart, so every changed list is delivered.
+ */
+public class EarthquakeFeedLoader extends Loader<EarthquakeStore> {
+
+    // maximum number of earthquakes kept, the oldest ones are dropped
+    private static final int MAX_EARTHQUAKES = 2000;
+
+    private final String mFeedUrl;
+
+    private final EarthquakeCache mCache;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // runs the polls and applies their changes, created when the loader starts
+    private ScheduledExecutorService mScheduler;
+
+    private FeedPoller mPoller;
+
+    // earthquakes merged so far, only used by the scheduler thread
+    private EarthquakeStore mMerged = new EarthquakeStore();
+
+    // computes the display fields of the polled earthquakes, only used by the scheduler thread
+    private final EarthquakeFormatter mFormatter = new EarthquakeFormatter();
+
+    // last list posted, only used by the UI thread
+    private EarthquakeStore mEarthquakes;
+
+    /**
+     * @param context {@link Context}
+     * @param feedUrl string url of a usgs GeoJSON summary feed
+     */
+    public EarthquakeFeedLoader(Context context, String feedUrl) {
+        super(context);
+        mFeedUrl = feedUrl;
+        mCache = QuakeReportApplication.getFeedCache(context);
+    }
+
+    @Override
+    protected void onStartLoading() {
+        // the list merged so far is shown again at once
+        if (mEarthquakes != null) {
+            deliverResult(mEarthquakes);
+        }
+
+        if (mScheduler == null) {
+            mScheduler = Executors.newSingleThreadScheduledExecutor();
+            mPoller = new FeedPoller(mFeedUrl, mCache, mScheduler, new FeedPoller.Listener() {
+                @Override
+                public void onChanges(EarthquakeChanges changes) {
+                    post(merge(changes));
+                }
+            });
+        }
+        mPoller.start();
+    }
+
+    @Override
+    protected void onForceLoad() {
+        // poll as soon as the minimum interval allows instead of waiting for the schedule, a
+        // restart would lose the schedule
+        if (mPoller != null) {
+            mPoller.refresh();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        if (mPoller != null) {
+            mPoller.stop();
+        }
+    }
+
+    @Override
+    protected void onReset() {
+        onStopLoading();
+        mHandler.removeCallbacksAndMessages(null);
+        if (mScheduler != null) {
+            mScheduler.shutdownNow();
+            mScheduler = null;
+            mPoller = null;
+        }
+        mEarthquakes = null;
+    }
+
+    /**
+     * Formats the new and updated earthquakes of a poll and applies the changes to a new list,
+     * on the scheduler thread
+     *
+     * @param changes changes {@link EarthquakeChanges} of a poll
+     * @return new list {@link EarthquakeStore} holding all earthquakes, newest first
+     */
+    private EarthquakeStore merge(EarthquakeChanges changes) {
+        changes.getUpserts().formatDisplayFields(mFormatter);
+        // the oldest earthquakes are dropped past the maximum, there is no other time limit
+        mMerged = EarthquakeSync.apply(mMerged, changes, Long.MIN_VALUE, MAX_EARTHQUAKES);
+        return mMerged;
+    }
+
+    /**
+     * Hands a list to the UI thread, a stopped loader delivers it when it is started again
+     *
+     * @param earthquakes list {@link EarthquakeStore} to deliver
+     */
+    private void post(final EarthquakeStore earthquakes) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mEarthquakes = earthquakes;
+                if (isStarted()) {
+                    deliverResult(earthquakes);
+                }
+            }
+        });
+    }
+}
@@ -2,39 +2,419 @@ package com.example.android.quakereport;
 
 import android.content.AsyncTaskLoader;
 import android.content.Context;
+import android.os.SystemClock;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * Implementation of AsyncTaskLoader {@link AsyncTaskLoader} which queries the USQS api for latest
- * 10 earthquakes above a magnitude of 6
+ * Implementation of AsyncTaskLoader {@link AsyncTaskLoader} which queries the USQS api for the
+ * earthquakes of a query, ordered from the latest
+ *
+ * In paging mode the query is split into pages of {@link EarthquakeLoader#PAGE_SIZE} events using
+ * the FDSN offset and limit parameters. Every page is delivered as soon as it has been parsed and
+ * the next one is only requested through {@link EarthquakeLoader#loadNextPage()}. Events added to
+ * the query while it is paged shift the following pages, the events found again are skipped by
+ * id. A page that cannot be fetched is asked for again by the next call. The offset and limit of
+ * the query itself are kept, see {@link QueryUtils#buildPageUrl(String, int, int)}.
+ *
+ * Otherwise the query is kept up to date by an {@link EarthquakeSync}: the first load fetches
+ * the whole query and every following load only the events changed since. A load that finds no
+ * change delivers the same store again, which the LoaderManager does not pass on.
+ *
+ * In fan-out mode several queries, for example one per monitored region, are fetched at once
+ * by {@link QueryFanOut} and merged into one list.
+ *
+ * Every earthquake fetched is also accumulated in the {@link EarthquakeDatabase}, written on a
+ * background thread of its own so the load is not delayed.
+ *
+ * Responses are kept in an {@link EarthquakeCache} on disk. The cached earthquakes are delivered
+ * first when the loader starts and are then revalidated with a conditional request.
+ *
+ * The loader is retained by the LoaderManager across configuration changes and keeps its last
+ * result: a restarted loader, for example after a rotation, delivers it again at once instead
+ * of fetching and parsing the query again, and only reloads once the result is older than
+ * {@link #MAX_RESULT_AGE_MILLIS}. A load still running when the activity is recreated is
+ * delivered to the new activity.
  */
-public class EarthquakeLoader extends AsyncTaskLoader<List<Earthquake>> {
+public class EarthquakeLoader extends AsyncTaskLoader<EarthquakeStore> {
+
+    // number of earthquakes requested per page in paging mode
+    public static final int PAGE_SIZE = 20;
+
+    // age after which the kept result is reloaded when the loader starts, 5 minutes
+    private static final long MAX_RESULT_AGE_MILLIS = 5 * 60 * 1000;
+
+    // number of threads computing display fields of large results, the loader thread included
+    private static final int FORMAT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    // threads computing display fields next to the loader thread, shared by all loaders
+    private static final ExecutorService FORMAT_EXECUTOR =
+            Executors.newFixedThreadPool(Math.max(FORMAT_PARALLELISM - 1, 1));
+
+    // maximum number of queries fetched at the same time in fan-out mode
+    private static final int MAX_CONCURRENT_QUERIES = 4;
+
+    // threads fetching the queries of fan-out mode, shared by all loaders
+    private static final ExecutorService FETCH_EXECUTOR =
+            Executors.newFixedThreadPool(MAX_CONCURRENT_QUERIES);
+
+    // thread writing fetched earthquakes to the database, shared by all loaders
+    private static final ExecutorService DATABASE_EXECUTOR = Executors.newSingleThreadExecutor();
 
     private String mUrl;
 
+    // local database accumulating every earthquake fetched
+    private EarthquakeDatabase mDatabase;
+
+    // queries fetched at once in fan-out mode, null otherwise
+    private List<String> mFanOutUrls;
+
+    // changes of the query fetched since the first load, when not paging
+    private EarthquakeSync mSync;
+
+    // persistent cache of parsed responses
+    private EarthquakeCache mCache;
+
+    // true once the cached earthquakes have been looked up
+    private boolean mCacheChecked;
+
+    // true if the delivered earthquakes came from the cache and still need a revalidation
+    private boolean mRevalidatePending;
+
+    // true if the query is fetched page by page
+    private boolean mPaging;
+
+    // earthquakes of all pages loaded so far
+    private EarthquakeStore mEarthquakes = new EarthquakeStore();
+
+    // event ids of mEarthquakes
+    private Set<String> mLoadedIds = new HashSet<>();
+
+    // number of events fetched in all pages so far, duplicates included, offset of the next page
+    private int mFetchedCount;
+
+    // true once a page came back with less than PAGE_SIZE features, or the limit of the query
+    // is reached
+    private boolean mEndReached;
+
+    // true while a page is being fetched
+    private boolean mLoading;
+
+    // time the last load was asked for, see Metrics#LOADER_QUEUE
+    private volatile long mForceLoadTime;
+
+    // last result, delivered again when the loader starts
+    private EarthquakeStore mResult;
+
+    // elapsed realtime of the last result
+    private long mResultTime;
+
     public EarthquakeLoader(Context context, String url) {
+        this(context, url, false);
+    }
+
+    /**
+     * Creates a loader in fan-out mode
+     *
+     * @param context {@link Context}
+     * @param urls    usgs query urls, ordered by time, fetched at once and merged
+     */
+    public EarthquakeLoader(Context context, List<String> urls) {
+        this(context, urls.isEmpty() ? null : urls.get(0), false, new ArrayList<>(urls));
+    }
+
+    /**
+     * @param context {@link Context}
+     * @param url     usgs query url
+     * @param paging  true to fetch the query page by page
+     */
+    public EarthquakeLoader(Context context, String url, boolean paging) {
+        this(context, url, paging, null);
+    }
+
+    /**
+     * @param context    {@link Context}
+     * @param url        usgs query url, the first query in fan-out mode
+     * @param paging     true to fetch the query page by page
+     * @param fanOutUrls queries fetched at once in fan-out mode, null otherwise
+     */
+    private EarthquakeLoader(Context context, String url, boolean paging,
+                             List<String> fanOutUrls) {
         super(context);
         mUrl = url;
+        mPaging = paging;
+        mFanOutUrls = fanOutUrls;
+        mCache = QuakeReportApplication.getQueryCache(context);
+        mDatabase = EarthquakeDatabase.getInstance(context);
+        // fan-out queries are fetched whole on every load, only a single query is synced
+        if (!paging && fanOutUrls == null && url != null) {
+            mSync = new EarthquakeSync(url);
+        }
     }
 
     @Override
-    public List<Earthquake> loadInBackground() {
+    public EarthquakeStore loadInBackground() {
+        Metrics.recordTime(Metrics.LOADER_QUEUE, mForceLoadTime);
+
         // check if url is not null or empty string
         if (mUrl == null || mUrl.isEmpty())
             return null;
 
-        // fetch and return earthquake data
-        List<Earthquake> earthquakes = QueryUtils.fetchEarthquakesData(mUrl);
+        // deliver the cached earthquakes of the first request at once, they are revalidated by
+        // the load started from deliverResult
+        if (!mCacheChecked) {
+            mCacheChecked = true;
+            EarthquakeStore cached = getCachedEarthquakes();
+            if (cached != null && !cached.isEmpty()) {
+                mRevalidatePending = true;
+                return formatDisplayFields(cached);
+            }
+        }
+
+        if (mFanOutUrls != null) {
+            // fetch all queries at once and merge them
+            try {
+                EarthquakeStore earthquakes =
+                        QueryFanOut.fetchAll(mFanOutUrls, FETCH_EXECUTOR, mCache);
+                storeInDatabase(earthquakes);
+                return formatDisplayFields(earthquakes);
+            } catch (InterruptedException e) {
+                // the load was cancelled, its result is not delivered
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        if (!mPaging) {
+            // fetch the changes since the last load, the cached earthquakes are returned if
+            // nothing could be fetched yet
+            if (mSync.sync()) {
+                EarthquakeStore earthquakes = mSync.getEarthquakes();
+                // cache the synced earthquakes for the next start, the delta query replaces
+                // revalidation so no validators are kept
+                mCache.put(mUrl, earthquakes, null, 0);
+                final EarthquakeChanges changes = mSync.getLastChanges();
+                DATABASE_EXECUTOR.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        mDatabase.apply(changes);
+                    }
+                });
+                return formatDisplayFields(earthquakes);
+            }
+            if (mSync.getNewestUpdate() == 0) {
+                EarthquakeCache.Entry cacheEntry = mCache.get(mUrl);
+                return cacheEntry == null ? null : formatDisplayFields(cacheEntry.getEarthquakes());
+            }
+            return formatDisplayFields(mSync.getEarthquakes());
+        }
+
+        // fetch the page following the earthquakes already loaded
+        String pageUrl = getRequestUrl();
+        if (pageUrl == null) {
+            mEndReached = true;
+            return mEarthquakes;
+        }
+        EarthquakeStore page = QueryUtils.fetchEarthquakesData(pageUrl, mCache);
+        if (page == null) {
+            // the page is asked for again by the next loadNextPage
+            return mEarthquakes;
+        }
+        // deleted and malformed features are not in the page but still take their place in the
+        // query, the features of the response tell where the next page starts
+        int featureCount = page.getResponseFeatureCount();
+        mFetchedCount += featureCount;
+        if (featureCount < PAGE_SIZE || getRequestUrl() == null) {
+            mEndReached = true;
+        }
+        storeInDatabase(page);
+
+        // hand out a new store so the one held by the adapter is never modified in the background
+        int[] newRows = new int[page.size()];
+        int newRowCount = 0;
+        for (int i = 0; i < page.size(); i++) {
+            // events added since the previous page push the events already loaded into this one
+            String id = page.getId(i);
+            if (id.isEmpty() || mLoadedIds.add(id)) {
+                newRows[newRowCount++] = i;
+            }
+        }
+        EarthquakeStore earthquakes = new EarthquakeStore(mEarthquakes.size() + newRowCount);
+        earthquakes.addAll(mEarthquakes);
+        earthquakes.addAll(page.select(Arrays.copyOf(newRows, newRowCount)));
+        mEarthquakes = formatDisplayFields(earthquakes);
         return earthquakes;
+    }
+
+    /**
+     * Accumulates fetched earthquakes in the database on its own thread
+     *
+     * @param earthquakes fetched earthquakes {@link EarthquakeStore}, may be null
+     */
+    private void storeInDatabase(final EarthquakeStore earthquakes) {
+        if (earthquakes == null || earthquakes.isEmpty()) {
+            return;
+        }
+        DATABASE_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                mDatabase.insert(earthquakes);
+            }
+        });
+    }
+
+    /**
+     * Returns the earthquakes cached for the next request, merged from the cached responses of
+     * every query in fan-out mode
+     *
+     * @return cached earthquakes {@link EarthquakeStore} or null if nothing is cached
+     */
+    private EarthquakeStore getCachedEarthquakes() {
+        if (mFanOutUrls == null) {
+            String requestUrl = getRequestUrl();
+            EarthquakeCache.Entry cacheEntry = requestUrl == null ? null
+                    : mCache.get(requestUrl);
+            return cacheEntry == null ? null : cacheEntry.getEarthquakes();
+        }
+
+        List<EarthquakeStore> cached = new ArrayList<>(mFanOutUrls.size());
+        for (String url : mFanOutUrls) {
+            EarthquakeCache.Entry cacheEntry = mCache.get(url);
+            if (cacheEntry != null) {
+                cached.add(cacheEntry.getEarthquakes());
+            }
+        }
+        return cached.isEmpty() ? null : EarthquakeStore.merge(cached);
+    }
 
+    /**
+     * Computes the display fields of the earthquakes in the background, so the adapter only has
+     * to read them when binding a row. Large results are formatted on all cores.
+     *
+     * @param earthquakes loaded earthquakes {@link EarthquakeStore}, may be null
+     * @return the same earthquakes
+     */
+    private EarthquakeStore formatDisplayFields(EarthquakeStore earthquakes) {
+        if (earthquakes != null) {
+            try {
+                earthquakes.formatDisplayFields(FORMAT_EXECUTOR, FORMAT_PARALLELISM);
+            } catch (InterruptedException e) {
+                // the load was cancelled, the adapter formats anything left if it is delivered
+                Thread.currentThread().interrupt();
+            }
+        }
+        return earthquakes;
     }
 
     @Override
     protected void onStartLoading() {
-        // start loading process
-        forceLoad();
+        // the result kept is delivered again instead of being fetched twice
+        if (mResult != null) {
+            super.deliverResult(mResult);
+        }
+
+        // pages are only fetched when asked for, other queries once their result gets old, and
+        // cached earthquakes delivered while stopped still need their revalidation
+        boolean stale = !mPaging
+                && SystemClock.elapsedRealtime() - mResultTime > MAX_RESULT_AGE_MILLIS;
+        if (mResult == null || takeContentChanged() || stale || mRevalidatePending) {
+            mRevalidatePending = false;
+            // start loading process
+            forceLoad();
+        }
 
         super.onStartLoading();
     }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        cancelLoad();
+        mResult = null;
+        mLoading = false;
+    }
+
+    @Override
+    public void onCanceled(EarthquakeStore data) {
+        super.onCanceled(data);
+        // a cancelled page is not delivered, the next one can be asked for
+        mLoading = false;
+    }
+
+    @Override
+    protected void onForceLoad() {
+        mLoading = true;
+        mForceLoadTime = Metrics.startTime();
+        super.onForceLoad();
+    }
+
+    @Override
+    public void deliverResult(EarthquakeStore data) {
+        mLoading = false;
+        if (isReset()) {
+            // the loader is no longer used
+            return;
+        }
+        if (data != null) {
+            mResult = data;
+            mResultTime = SystemClock.elapsedRealtime();
+        }
+        // a stopped loader delivers its result when it is started again
+        if (isStarted()) {
+            super.deliverResult(data);
+        }
+
+        // the cached earthquakes are on screen, now check if they are still up to date
+        if (mRevalidatePending && isStarted()) {
+            mRevalidatePending = false;
+            forceLoad();
+        }
+    }
+
+    /**
+     * Returns the url of the next request, the url of the page following the earthquakes already
+     * loaded in paging mode, offset starts at 1
+     *
+     * @return string usgs url, null if the pages reached the limit of the query
+     */
+    private String getRequestUrl() {
+        if (!mPaging) {
+            return mUrl;
+        }
+        return QueryUtils.buildPageUrl(mUrl, mFetchedCount + 1, PAGE_SIZE);
+    }
+
+    /**
+     * Starts fetching the next page unless a page is already being fetched or the last page has
+     * been loaded. Does nothing if the loader is not in paging mode.
+     */
+    public void loadNextPage() {
+        if (mPaging && !mLoading && !mEndReached) {
+            forceLoad();
+        }
+    }
+
+    /**
+     * Returns true if a page is being fetched
+     *
+     * @return {@link EarthquakeLoader#mLoading}
+     */
+    public boolean isLoading() {
+        return mLoading;
+    }
+
+    /**
+     * Returns true if there are more pages to fetch
+     *
+     * @return true if the last page has not been loaded yet
+     */
+    public boolean hasMorePages() {
+        return mPaging && !mEndReached;
+    }
 }
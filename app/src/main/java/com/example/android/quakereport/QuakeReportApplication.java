@@ -0,0 +1,101 @@
+package com.example.android.quakereport;
+
+import android.app.Application;
+import android.content.Context;
+import android.os.Debug;
+import android.util.Log;
+
+import java.io.File;
+
+/**
+ * Application of QuakeReport, routes the logging of the core module to {@link Log}, holds the
+ * response caches shared by every loader and, in debug builds, measures the allocations of the
+ * parsers for the {@link Metrics}
+ */
+public class QuakeReportApplication extends Application {
+
+    // name of the query cache directory inside the application cache directory
+    private static final String QUERY_CACHE_DIRECTORY = "earthquakes";
+
+    // maximum size of the query cache, 8 MB, room for the snapshot of a wide query of 20000
+    // events, the usgs maximum, next to the smaller ones
+    private static final long QUERY_CACHE_MAX_SIZE_BYTES = 8 * 1024 * 1024;
+
+    // maximum age of a cached query response, 7 days
+    private static final long QUERY_CACHE_MAX_AGE_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+    // name of the feed cache directory inside the application cache directory
+    private static final String FEED_CACHE_DIRECTORY = "feed";
+
+    // maximum size of the feed cache, 1 MB
+    private static final long FEED_CACHE_MAX_SIZE_BYTES = 1024 * 1024;
+
+    // maximum age of a cached feed response, 1 day
+    private static final long FEED_CACHE_MAX_AGE_MILLIS = 24L * 60 * 60 * 1000;
+
+    // one cache per directory so its writes and evictions are serialized across loaders
+    private EarthquakeCache mQueryCache;
+
+    private EarthquakeCache mFeedCache;
+
+    /**
+     * Returns the cache of the usgs query responses, shared by every {@link EarthquakeLoader}
+     *
+     * @param context {@link Context}
+     * @return query cache {@link EarthquakeCache}
+     */
+    public static EarthquakeCache getQueryCache(Context context) {
+        return ((QuakeReportApplication) context.getApplicationContext()).mQueryCache;
+    }
+
+    /**
+     * Returns the cache of the feed responses, shared by every {@link EarthquakeFeedLoader}
+     *
+     * @param context {@link Context}
+     * @return feed cache {@link EarthquakeCache}
+     */
+    public static EarthquakeCache getFeedCache(Context context) {
+        return ((QuakeReportApplication) context.getApplicationContext()).mFeedCache;
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        mQueryCache = new EarthquakeCache(new File(getCacheDir(), QUERY_CACHE_DIRECTORY),
+                QUERY_CACHE_MAX_SIZE_BYTES, QUERY_CACHE_MAX_AGE_MILLIS);
+        mFeedCache = new EarthquakeCache(new File(getCacheDir(), FEED_CACHE_DIRECTORY),
+                FEED_CACHE_MAX_SIZE_BYTES, FEED_CACHE_MAX_AGE_MILLIS);
+
+        QueryLog.setBackend(new QueryLog.Backend() {
+            @Override
+            public void e(String tag, String message, Throwable throwable) {
+                Log.e(tag, message, throwable);
+            }
+        });
+
+        // allocation counting slows the runtime down, it is left off in release builds
+        if (BuildConfig.DEBUG) {
+            installAllocationCounter();
+        }
+    }
+
+    /**
+     * Measures the allocations of the parse stage with the allocation counters of the runtime.
+     * They are deprecated, but they are the only counters of the allocations of a single thread:
+     * the heap size read through {@link Runtime} or {@link Debug#getNativeHeapAllocatedSize()}
+     * also moves with the other threads and the collections, which would hide the bytes of a
+     * single parse.
+     */
+    @SuppressWarnings("deprecation")
+    private static void installAllocationCounter() {
+        Debug.startAllocCounting();
+        Metrics.setAllocationCounter(new Metrics.AllocationCounter() {
+            @Override
+            @SuppressWarnings("deprecation")
+            public long getAllocatedBytes() {
+                return Debug.getThreadAllocSize();
+            }
+        });
+    }
+}
@@ -1,184 +0,0 @@
-
-package com.example.android.quakereport;
-
-import android.util.Log;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.nio.charset.Charset;
-import java.util.ArrayList;
-
-/**
- * Helper methods related to requesting and receiving earthquake data from USGS.
- */
-public final class QueryUtils {
-
-    private static final String LOG_TAG = QueryUtils.class.getSimpleName();
-
-    /**
-     * Create a private constructor because no one should ever create a {@link QueryUtils} object.
-     * This class is only meant to hold static variables and methods, which can be accessed
-     * directly from the class name QueryUtils (and an object instance of QueryUtils is not needed).
-     */
-    private QueryUtils() {
-    }
-
-    /**
-     * Return a list of {@link Earthquake} objects that has been built up from
-     * parsing a JSON response.
-     */
-    public static ArrayList<Earthquake> extractEarthquakes(String jsonString) {
-
-        // Create an empty ArrayList that we can start adding earthquakes to
-        ArrayList<Earthquake> earthquakes = new ArrayList<>();
-
-        // Try to parse the SAMPLE_JSON_RESPONSE. If there's a problem with the way the JSON
-        // is formatted, a JSONException exception object will be thrown.
-        // Catch the exception so the app doesn't crash, and print the error message to the logs.
-        try {
-
-            // Parse the response given by the SAMPLE_JSON_RESPONSE string and
-            // build up a list of Earthquake objects with the corresponding data.
-
-            // get root JSON object
-            JSONObject rootJSONObject = new JSONObject(jsonString);
-
-            // get features JSON array
-            JSONArray features = rootJSONObject.optJSONArray("features");
-
-            // loop through the array to get magnitude, location and time of occurrence of each
-            // earthquake
-            for (int i = 0, n = features.length() ; i < n ; i++) {
-                // get current JSON object
-                JSONObject earthquake = features.optJSONObject(i);
-
-                // get properties of current earthquake
-                JSONObject properties = earthquake.optJSONObject("properties");
-
-                // get magnitude, location and time of occurrence of earthquake at current position
-                // and give this value to earthquake object
-                double magnitude = properties.optDouble("mag");
-                String place = properties.optString("place");
-                long timeInMillis = properties.optLong("time");
-                String url = properties.optString("url");
-
-                earthquakes.add(new Earthquake(magnitude, place, timeInMillis, url));
-            }
-        } catch (JSONException e) {
-            // If an error is thrown when executing any of the above statements in the "try" block,
-            // catch the exception here, so the app doesn't crash. Print a log message
-            // with the message from the exception.
-            Log.e("QueryUtils", "Problem parsing the earthquake JSON results", e);
-        }
-
-        // Return the list of earthquakes
-        return earthquakes;
-    }
-
-    public static ArrayList<Earthquake> fetchEarthquakesData(String requestUrl) {
-        // Create a URL object
-        URL url = createUrl(requestUrl);
-
-        // Perform HTTP request to the URL and receive a JSON string
-        String jsonResponse = null;
-        try {
-            jsonResponse = makeHttpRequest(url);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Error closing input stream", e);
-        }
-
-        if (jsonResponse == null || jsonResponse.isEmpty()) {
-            return null;
-        }
-
-        // extract earthquake data
-        ArrayList<Earthquake> earthquakes = extractEarthquakes(jsonResponse);
-        return earthquakes;
-    }
-
-    /**
-     * Creates a url object from input string
-     *
-     * @param stringUrl string usgs url
-     * @return URL object {@link URL}
-     */
-    private static URL createUrl(String stringUrl) {
-        URL url = null;
-        try {
-            url = new URL(stringUrl);
-        } catch (MalformedURLException e) {
-            e.printStackTrace();
-        }
-        return url;
-    }
-
-    private static String makeHttpRequest(URL url) throws IOException {
-        String jsonResponse = "";
-
-        // if url is null return early
-        if (url == null)
-            return jsonResponse;
-
-        HttpURLConnection httpURLConnection = null;
-        InputStream inputStream = null;
-
-        try {
-            httpURLConnection = (HttpURLConnection) url.openConnection();
-            httpURLConnection.setReadTimeout(10000/*millisecs*/);
-            httpURLConnection.setConnectTimeout(15000/*millisecs*/);
-            httpURLConnection.setRequestMethod("GET");
-            httpURLConnection.connect();
-
-            // check the response code
-            if (httpURLConnection.getResponseCode() == 200) {
-                inputStream = httpURLConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
-            } else {
-                Log.e(LOG_TAG, "Error response code: " + httpURLConnection.getResponseCode());
-            }
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Problem retrieving data from usgs", e);
-        } finally {
-            if (httpURLConnection != null) {
-                httpURLConnection.disconnect();
-            }
-
-            if (inputStream != null) {
-                inputStream.close();
-            }
-        }
-        return jsonResponse;
-    }
-
-    /**
-     * Reads json string from inputStream
-     *
-     * @param inputStream {@link InputStream}
-     * @return json string
-     * @throws IOException
-     */
-    private static String readFromStream(InputStream inputStream) throws IOException {
-        StringBuilder output = new StringBuilder();
-        if (inputStream != null) {
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream,
-                    Charset.forName("UTF-8"));
-            BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
-            String line = bufferedReader.readLine();
-            while (line != null) {
-                output.append(line);
-                line = bufferedReader.readLine();
-            }
-        }
-
-        return output.toString();
-    }
-}
@@ -0,0 +1,80 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.sql.Date;
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UI thread cost of binding one row, without the view calls: the work getView did on every
+ * bind before display fields were precomputed, against reading the precomputed fields
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BindBenchmark {
+
+    // rows bound per invocation
+    private static final int ROWS = 1000;
+
+    private EarthquakeStore mEarthquakes;
+
+    @Setup
+    public void setUp() throws Exception {
+        mEarthquakes = QueryUtils.extractEarthquakes(
+                new ByteArrayInputStream(GeoJsonFixtures.load(ROWS)));
+        mEarthquakes.formatDisplayFields(new EarthquakeFormatter());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void bindFormattingOnUiThread(Blackhole blackhole) {
+        for (int position = 0; position < ROWS; position++) {
+            double magnitude = mEarthquakes.getMagnitude(position);
+            DecimalFormat decimalFormat = new DecimalFormat("0.0");
+            blackhole.consume(decimalFormat.format(magnitude));
+            blackhole.consume(EarthquakeFormatter.getMagnitudeBand(magnitude));
+
+            String place = mEarthquakes.getPlace(position);
+            String primary = place;
+            String secondary = "Near the";
+            if (Character.isDigit(place.charAt(0))) {
+                int index = place.indexOf(" of ");
+                secondary = place.substring(0, index) + " of";
+                primary = place.substring(index + 4);
+            }
+            blackhole.consume(primary);
+            blackhole.consume(secondary);
+
+            Date date = new Date(mEarthquakes.getDateInMillis(position));
+            SimpleDateFormat dateFormat = new SimpleDateFormat("MMM dd, yyyy");
+            blackhole.consume(dateFormat.format(date));
+            dateFormat.applyPattern("h:mm a");
+            blackhole.consume(dateFormat.format(date));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void bindPrecomputed(Blackhole blackhole) {
+        for (int position = 0; position < ROWS; position++) {
+            blackhole.consume(mEarthquakes.getMagnitudeText(position));
+            blackhole.consume(mEarthquakes.getMagnitudeBand(position));
+            blackhole.consume(mEarthquakes.getPrimaryLocation(position));
+            blackhole.consume(mEarthquakes.getLocationOffset(position));
+            blackhole.consume(mEarthquakes.getDateText(position));
+            blackhole.consume(mEarthquakes.getTimeText(position));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Diff of a list refresh as delivered by a reload: new earthquakes at the top, a few deleted,
+ * about one in a hundred updated and the rest unchanged.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DiffBenchmark {
+
+    // earthquakes added at the top of the refreshed list
+    private static final int NEW_EARTHQUAKES = 100;
+
+    @Param({"1000", "50000"})
+    public int events;
+
+    private EarthquakeStore mOldList;
+
+    private EarthquakeStore mNewList;
+
+    @Setup
+    public void setUp() throws Exception {
+        EarthquakeStore recorded = QueryUtils.extractEarthquakes(
+                new ByteArrayInputStream(GeoJsonFixtures.load(10)));
+        long newest = recorded.getDateInMillis(0);
+
+        mOldList = new EarthquakeStore(events);
+        mNewList = new EarthquakeStore(events + NEW_EARTHQUAKES);
+        for (int i = 0; i < NEW_EARTHQUAKES; i++) {
+            add(mNewList, recorded, "new" + i, 0, newest + (NEW_EARTHQUAKES - i) * 60000L);
+        }
+        for (int i = 0; i < events; i++) {
+            long date = newest - i * 60000L;
+            add(mOldList, recorded, "bm" + i, 0, date);
+            if (i % 500 != 0) {
+                add(mNewList, recorded, "bm" + i, i % 97 == 0 ? 0.1 : 0, date);
+            }
+        }
+    }
+
+    @Benchmark
+    public EarthquakeDiff refresh() {
+        return EarthquakeDiff.compute(mOldList, mNewList);
+    }
+
+    @Benchmark
+    public EarthquakeDiff unchanged() {
+        return EarthquakeDiff.compute(mOldList, mOldList);
+    }
+
+    private static void add(EarthquakeStore earthquakes, EarthquakeStore recorded, String id,
+                            double magnitudeChange, long date) {
+        int source = Math.abs(id.hashCode()) % recorded.size();
+        earthquakes.add(id, recorded.getMagnitude(source) + magnitudeChange,
+                recorded.getPlace(source), date, recorded.getUrl(source),
+                recorded.getLatitude(source), recorded.getLongitude(source));
+    }
+}
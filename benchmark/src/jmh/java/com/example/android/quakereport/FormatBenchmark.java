@@ -0,0 +1,99 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Place splitting and tokenizing, magnitude color mapping and the display field stage of the loader
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FormatBenchmark {
+
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    @Param({"10", "1000", "20000", "100000"})
+    public int features;
+
+    // parsed earthquakes, never formatted
+    private EarthquakeStore mParsed;
+
+    // places of mParsed as parsed
+    private String[] mPlaces;
+
+    // copy of mParsed formatted by each invocation
+    private EarthquakeStore mToFormat;
+
+    private ExecutorService mExecutor;
+
+    @Setup
+    public void setUp() throws Exception {
+        mParsed = QueryUtils.extractEarthquakes(
+                new ByteArrayInputStream(GeoJsonFixtures.load(features)));
+        mPlaces = new String[mParsed.size()];
+        for (int i = 0; i < mPlaces.length; i++) {
+            mPlaces[i] = mParsed.getPlace(i);
+        }
+        mExecutor = Executors.newFixedThreadPool(Math.max(PARALLELISM - 1, 1));
+    }
+
+    @Setup(Level.Invocation)
+    public void copyParsed() {
+        mToFormat = new EarthquakeStore(mParsed.size());
+        mToFormat.addAll(mParsed);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mExecutor.shutdown();
+    }
+
+    @Benchmark
+    public void splitPlaces(Blackhole blackhole) {
+        for (String place : mPlaces) {
+            blackhole.consume(EarthquakeFormatter.getLocationOffset(place));
+            blackhole.consume(EarthquakeFormatter.getPrimaryLocation(place));
+        }
+    }
+
+    @Benchmark
+    public void tokenizePlaces(Blackhole blackhole) {
+        for (String place : mPlaces) {
+            blackhole.consume(PlaceDictionary.tokenize(place));
+        }
+    }
+
+    @Benchmark
+    public void magnitudeBands(Blackhole blackhole) {
+        for (int i = 0, n = mParsed.size(); i < n; i++) {
+            blackhole.consume(EarthquakeFormatter.getMagnitudeBand(mParsed.getMagnitude(i)));
+        }
+    }
+
+    @Benchmark
+    public EarthquakeStore formatDisplayFieldsSequential() {
+        mToFormat.formatDisplayFields(new EarthquakeFormatter());
+        return mToFormat;
+    }
+
+    @Benchmark
+    public EarthquakeStore formatDisplayFieldsParallel() throws InterruptedException {
+        mToFormat.formatDisplayFields(mExecutor, PARALLELISM);
+        return mToFormat;
+    }
+}
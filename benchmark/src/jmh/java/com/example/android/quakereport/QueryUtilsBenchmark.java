@@ -0,0 +1,62 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and parsing of USGS responses: the tree based path reading the whole response into a
+ * String first, and the streaming parser reading the response stream directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class QueryUtilsBenchmark {
+
+    @Param({"10", "1000", "20000", "100000"})
+    public int features;
+
+    // response as received from the connection
+    private byte[] mResponse;
+
+    // response already read into a String
+    private String mJsonResponse;
+
+    @Setup
+    public void setUp() throws Exception {
+        mResponse = GeoJsonFixtures.load(features);
+        mJsonResponse = new String(mResponse, Charset.forName("UTF-8"));
+    }
+
+    @Benchmark
+    public String readFromStream() throws IOException {
+        return QueryUtils.readFromStream(new ByteArrayInputStream(mResponse));
+    }
+
+    @Benchmark
+    public ArrayList<Earthquake> extractEarthquakesTree() {
+        return QueryUtils.extractEarthquakes(mJsonResponse);
+    }
+
+    @Benchmark
+    public ArrayList<Earthquake> readAndExtractEarthquakesTree() throws IOException {
+        return QueryUtils.extractEarthquakes(
+                QueryUtils.readFromStream(new ByteArrayInputStream(mResponse)));
+    }
+
+    @Benchmark
+    public EarthquakeStore extractEarthquakesStreaming() throws IOException {
+        return QueryUtils.extractEarthquakes(new ByteArrayInputStream(mResponse));
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Radius and viewport queries through the spatial index against scanning every epicenter.
+ * Epicenters are scattered around the ones of the recorded response, so they cluster like real
+ * earthquakes do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpatialIndexBenchmark {
+
+    // distance of the radius queries
+    private static final double RADIUS_KM = 200;
+
+    // size of the viewport queries in degrees
+    private static final double VIEWPORT_DEGREES = 5;
+
+    @Param({"1000", "100000", "500000"})
+    public int events;
+
+    private EarthquakeStore mEarthquakes;
+
+    private SpatialIndex mIndex;
+
+    // query centers, cycled through by the invocations
+    private double[] mLatitudes;
+    private double[] mLongitudes;
+    private int mNext;
+
+    @Setup
+    public void setUp() throws Exception {
+        EarthquakeStore recorded = QueryUtils.extractEarthquakes(
+                new ByteArrayInputStream(GeoJsonFixtures.load(10)));
+        Random random = new Random(42);
+
+        mEarthquakes = new EarthquakeStore(events);
+        for (int i = 0; i < events; i++) {
+            int source = i % recorded.size();
+            mEarthquakes.add("bm" + Integer.toString(i, 36), recorded.getMagnitude(source),
+                    recorded.getPlace(source), recorded.getDateInMillis(source) - i * 60000L,
+                    recorded.getUrl(source),
+                    clamp(recorded.getLatitude(source) + random.nextGaussian() * 5, 89),
+                    GeoGrid.normalizeLongitude(
+                            recorded.getLongitude(source) + random.nextGaussian() * 5));
+        }
+        mIndex = new SpatialIndex(mEarthquakes);
+
+        mLatitudes = new double[256];
+        mLongitudes = new double[256];
+        for (int i = 0; i < mLatitudes.length; i++) {
+            int source = i % recorded.size();
+            mLatitudes[i] = clamp(recorded.getLatitude(source) + random.nextGaussian() * 5, 80);
+            mLongitudes[i] = GeoGrid.normalizeLongitude(
+                    recorded.getLongitude(source) + random.nextGaussian() * 5);
+        }
+    }
+
+    @Benchmark
+    public int[] radiusIndexed() {
+        int i = nextCenter();
+        return mIndex.queryRadius(mLatitudes[i], mLongitudes[i], RADIUS_KM);
+    }
+
+    @Benchmark
+    public void radiusScan(Blackhole blackhole) {
+        int i = nextCenter();
+        for (int row = 0, n = mEarthquakes.size(); row < n; row++) {
+            if (GeoGrid.getDistanceKm(mLatitudes[i], mLongitudes[i],
+                    mEarthquakes.getLatitude(row), mEarthquakes.getLongitude(row)) <= RADIUS_KM) {
+                blackhole.consume(row);
+            }
+        }
+    }
+
+    @Benchmark
+    public int[] viewportIndexed() {
+        int i = nextCenter();
+        return mIndex.queryBox(mLatitudes[i], mLongitudes[i],
+                mLatitudes[i] + VIEWPORT_DEGREES, mLongitudes[i] + VIEWPORT_DEGREES);
+    }
+
+    @Benchmark
+    public SpatialIndex build() {
+        return new SpatialIndex(mEarthquakes);
+    }
+
+    private int nextCenter() {
+        mNext = (mNext + 1) & (mLatitudes.length - 1);
+        return mNext;
+    }
+
+    private static double clamp(double latitude, double limit) {
+        return Math.max(-limit, Math.min(limit, latitude));
+    }
+}
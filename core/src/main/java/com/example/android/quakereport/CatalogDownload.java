@@ -0,0 +1,154 @@
+package com.example.android.quakereport;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Download of a query whose response may be too large to hold in memory, for example years of
+ * the usgs catalog, which can be tens of megabytes of GeoJSON.
+ *
+ * The response is first written to a temporary file through NIO channels, a fixed size buffer
+ * at a time, which also frees the connection as fast as the network allows. The file is then
+ * parsed by the streaming parser through a fixed size buffer and the earthquakes are handed to
+ * a {@link QueryUtils.ChunkListener} in chunks sized from a heap ceiling, so the memory used by
+ * a download does not depend on the size of its response. The ceiling is given by the caller or
+ * taken as a share of the maximum heap of the runtime, and a chunk is sized from the columns a
+ * store allocates up front for its capacity plus the strings of its rows.
+ */
+public final class CatalogDownload {
+
+    private static final String LOG_TAG = CatalogDownload.class.getSimpleName();
+
+    // bytes copied at once from the network to the file and read at once by the parser
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    // estimate of the heap used by the strings of a row that are not shared with other rows,
+    // the url suffix which is usually the event id
+    private static final int ESTIMATED_STRING_BYTES_PER_ROW = 64;
+
+    // share of the maximum heap of the runtime used by a download without a ceiling of its own
+    private static final int DEFAULT_HEAP_SHARE = 8;
+
+    // largest share of the maximum heap of the runtime a ceiling may grant
+    private static final int MAX_HEAP_SHARE = 2;
+
+    private final File mSpillDirectory;
+
+    private final long mMaxHeapBytes;
+
+    /**
+     * Creates a download using an eighth of the maximum heap of the runtime
+     *
+     * @param spillDirectory directory of the temporary files, for example the cache directory
+     */
+    public CatalogDownload(File spillDirectory) {
+        this(spillDirectory, Runtime.getRuntime().maxMemory() / DEFAULT_HEAP_SHARE);
+    }
+
+    /**
+     * @param spillDirectory directory of the temporary files, for example the cache directory
+     * @param maxHeapBytes   heap a download may use for its buffers and the earthquakes of a
+     *                       chunk, capped to half the maximum heap of the runtime
+     */
+    public CatalogDownload(File spillDirectory, long maxHeapBytes) {
+        mSpillDirectory = spillDirectory;
+        mMaxHeapBytes = maxHeapBytes;
+    }
+
+    /**
+     * Returns the number of earthquakes per chunk fitting under the heap ceiling
+     *
+     * @return number of earthquakes, at least 1
+     */
+    public int getChunkSize() {
+        long maxHeapBytes = Math.min(mMaxHeapBytes,
+                Runtime.getRuntime().maxMemory() / MAX_HEAP_SHARE);
+        long rowBytes = EarthquakeStore.COLUMN_BYTES_PER_ROW + ESTIMATED_STRING_BYTES_PER_ROW;
+        long chunkSize = (maxHeapBytes - 2 * BUFFER_BYTES) / rowBytes;
+        return (int) Math.max(1, Math.min(chunkSize, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Downloads a query and hands its earthquakes to the listener in chunks of at most
+     * {@link #getChunkSize()} earthquakes, on the calling thread
+     *
+     * @param requestUrl string usgs url
+     * @param listener   listener {@link QueryUtils.ChunkListener} of the chunks
+     * @return number of earthquakes downloaded
+     * @throws IOException if the response cannot be downloaded or stored, or the server answered
+     *                     with an error
+     */
+    public int download(String requestUrl, QueryUtils.ChunkListener listener)
+            throws IOException {
+        URL url = new URL(requestUrl);
+        if (!mSpillDirectory.exists() && !mSpillDirectory.mkdirs()) {
+            throw new IOException("Cannot create spill directory " + mSpillDirectory);
+        }
+
+        final File file = File.createTempFile("download", ".geojson", mSpillDirectory);
+        try {
+            int responseCode = QueryUtils.getHttpClient().get(url, null,
+                    new HttpClient.ResponseHandler<Integer>() {
+                        @Override
+                        public Integer onResponse(HttpURLConnection connection,
+                                                  int responseCode, InputStream body)
+                                throws IOException {
+                            if (responseCode == HttpURLConnection.HTTP_OK) {
+                                spill(body, file);
+                            }
+                            return responseCode;
+                        }
+                    });
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Error response code: " + responseCode);
+            }
+            return parse(file, listener);
+        } finally {
+            if (!file.delete()) {
+                QueryLog.e(LOG_TAG, "Cannot delete " + file);
+            }
+        }
+    }
+
+    /**
+     * Writes a body to a file, replacing what an earlier attempt wrote
+     */
+    private static void spill(InputStream body, File file) throws IOException {
+        ReadableByteChannel source = Channels.newChannel(body);
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            FileChannel target = outputStream.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+                buffer.clear();
+            }
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private int parse(File file, QueryUtils.ChunkListener listener) throws IOException {
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            InputStream chunks = new BufferedInputStream(
+                    Channels.newInputStream(inputStream.getChannel()), BUFFER_BYTES);
+            return QueryUtils.extractEarthquakes(chunks, getChunkSize(), listener);
+        } finally {
+            inputStream.close();
+        }
+    }
+}
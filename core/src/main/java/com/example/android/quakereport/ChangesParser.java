@@ -0,0 +1,30 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Parser keeping the deletions and update times of a response next to its earthquakes, see
+ * {@link QueryUtils#extractChanges(InputStream)}. An instance parses a single response.
+ */
+final class ChangesParser implements EarthquakeParser {
+
+    // changes of the response, null until a response has been parsed
+    private EarthquakeChanges mChanges;
+
+    @Override
+    public EarthquakeStore parse(InputStream inputStream) throws IOException {
+        mChanges = QueryUtils.extractChanges(inputStream);
+        return mChanges.getUpserts();
+    }
+
+    /**
+     * Returns the changes of the parsed response
+     *
+     * @return changes {@link EarthquakeChanges} or null if no response was parsed, when the
+     * request failed or a cached response was returned
+     */
+    EarthquakeChanges getChanges() {
+        return mChanges;
+    }
+}
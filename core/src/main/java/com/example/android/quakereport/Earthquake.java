@@ -0,0 +1,132 @@
+package com.example.android.quakereport;
+
+/**
+ * {@link Earthquake} clas to store data for each earthquake like
+ * location {@link Earthquake#mPlace}, date {@link Earthquake#mDateInMillis} and
+ * magnitude {@link Earthquake#mMagnitude}
+ */
+public class Earthquake {
+    // to store place
+    private String mPlace;
+
+    // to store date
+    private long mDateInMillis;
+
+    // to store magnitude
+    private double mMagnitude;
+
+    // to store url of usgs website for the earthquake
+    private String mUrl;
+
+    // to store usgs event id, may be null
+    private String mId;
+
+    // to store latitude of the epicenter in degrees, NaN if not known
+    private double mLatitude;
+
+    // to store longitude of the epicenter in degrees, NaN if not known
+    private double mLongitude;
+
+    /**
+     * Constructor to initialize fields
+     * @param magnitude magnitude {@link Earthquake#mMagnitude}
+     * @param place place {@link Earthquake#mPlace}
+     * @param dateInMillis date {@link Earthquake#mDateInMillis}
+     */
+    public Earthquake(double magnitude, String place, long dateInMillis, String url) {
+        this(null, magnitude, place, dateInMillis, url);
+    }
+
+    /**
+     * Constructor to initialize fields including the usgs event id
+     * @param id event id {@link Earthquake#mId}
+     * @param magnitude magnitude {@link Earthquake#mMagnitude}
+     * @param place place {@link Earthquake#mPlace}
+     * @param dateInMillis date {@link Earthquake#mDateInMillis}
+     * @param url url {@link Earthquake#mUrl}
+     */
+    public Earthquake(String id, double magnitude, String place, long dateInMillis, String url) {
+        this(id, magnitude, place, dateInMillis, url, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Constructor to initialize fields including the usgs event id and the epicenter
+     * @param id event id {@link Earthquake#mId}
+     * @param magnitude magnitude {@link Earthquake#mMagnitude}
+     * @param place place {@link Earthquake#mPlace}
+     * @param dateInMillis date {@link Earthquake#mDateInMillis}
+     * @param url url {@link Earthquake#mUrl}
+     * @param latitude latitude {@link Earthquake#mLatitude}
+     * @param longitude longitude {@link Earthquake#mLongitude}
+     */
+    public Earthquake(String id, double magnitude, String place, long dateInMillis, String url,
+                      double latitude, double longitude) {
+        mId = id;
+        mMagnitude = magnitude;
+        mPlace = place;
+        mDateInMillis = dateInMillis;
+        mUrl = url;
+        mLatitude = latitude;
+        mLongitude = longitude;
+    }
+
+    /**
+     * Returns the usgs event id of earthquake
+     * @return id {@link Earthquake#mId}, null if not known
+     */
+    public String getId() {
+        return mId;
+    }
+
+    /**
+     * Returns the magnitude of earthquake
+     * @return magnitude {@link Earthquake#mMagnitude}
+     */
+    public double getMagnitude() {
+        return mMagnitude;
+    }
+
+
+    /**
+     * Returns the date of occurrence of earthquake
+     * @return date {@link Earthquake#mDateInMillis}
+     */
+    public long getDateInMillis() {
+        return mDateInMillis;
+    }
+
+    /**
+     * Returns the location of earthquake
+     * @return location {@link Earthquake#mPlace}
+     */
+    public String getPlace() {
+        return mPlace;
+    }
+
+    /**
+     * Returns the url of earthquake on usgs site
+     *
+     * @return url {@link Earthquake#mUrl}
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * Returns the latitude of the epicenter of earthquake
+     *
+     * @return latitude {@link Earthquake#mLatitude}
+     */
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    /**
+     * Returns the longitude of the epicenter of earthquake
+     *
+     * @return longitude {@link Earthquake#mLongitude}
+     */
+    public double getLongitude() {
+        return mLongitude;
+    }
+}
@@ -0,0 +1,393 @@
+package com.example.android.quakereport;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Persistent cache of parsed earthquake lists keyed by request url. Every entry keeps the
+ * validators (ETag and Last-Modified) of the response it was parsed from so it can be revalidated
+ * with a conditional request. Entries stored or revalidated longer ago than the maximum age are
+ * dropped and the least recently used entries are evicted once the cache grows over its maximum
+ * size. An entry larger than the maximum size on its own is not stored at all.
+ *
+ * The time an entry was stored is kept in the entry, the modification time of its file is the
+ * time it was last used and orders the evictions.
+ *
+ * The earthquakes of an entry are stored in the {@link EarthquakeSnapshot} format and read back
+ * through a memory mapping of the entry file.
+ *
+ * Reads, writes and evictions are serialized by the instance, so only one instance should manage
+ * a directory: create it once per directory and share it, for example from the application. An
+ * entry is written to its own temporary file and renamed over the previous one, so a reader never
+ * maps a partly written entry.
+ */
+public final class EarthquakeCache {
+
+    private static final String LOG_TAG = EarthquakeCache.class.getSimpleName();
+
+    // version of the entry file layout, entries with another version are ignored
+    private static final int ENTRY_VERSION = 3;
+
+    // position of the time the entry was stored in an entry file, after the version
+    private static final int STORED_TIME_POSITION = 4;
+
+    // suffix of entries being written, renamed once complete
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // directory holding one file per entry
+    private final File mDirectory;
+
+    // maximum size of all entries in bytes
+    private final long mMaxSizeBytes;
+
+    // maximum age of an entry in milliseconds
+    private final long mMaxAgeMillis;
+
+    /**
+     * @param directory    directory to store the entries in, created if needed
+     * @param maxSizeBytes maximum size of all entries in bytes
+     * @param maxAgeMillis maximum age of an entry in milliseconds
+     */
+    public EarthquakeCache(File directory, long maxSizeBytes, long maxAgeMillis) {
+        mDirectory = directory;
+        mMaxSizeBytes = maxSizeBytes;
+        mMaxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Returns the directory of the entries, which identifies the cache
+     *
+     * @return directory {@link File}
+     */
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * Returns the entry stored for the given url
+     *
+     * @param requestUrl string usgs url
+     * @return entry {@link Entry} or null if there is none or it is older than the maximum age
+     */
+    public synchronized Entry get(String requestUrl) {
+        File file = getFile(requestUrl);
+        if (!file.exists()) {
+            return null;
+        }
+
+        RandomAccessFile randomAccessFile = null;
+        try {
+            // map the entry instead of streaming it, the earthquakes are decoded straight from
+            // the mapped pages
+            randomAccessFile = new RandomAccessFile(file, "r");
+            FileChannel channel = randomAccessFile.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            long now = System.currentTimeMillis();
+            if (now - readStoredTime(buffer) > mMaxAgeMillis) {
+                closeQuietly(randomAccessFile);
+                randomAccessFile = null;
+                deleteFile(file);
+                return null;
+            }
+            Entry entry = readEntry(buffer, requestUrl);
+
+            // the entry is now the most recently used one
+            file.setLastModified(now);
+            return entry;
+        } catch (IOException e) {
+            QueryLog.e(LOG_TAG, "Problem reading cache entry for " + requestUrl, e);
+            deleteFile(file);
+            return null;
+        } finally {
+            closeQuietly(randomAccessFile);
+        }
+    }
+
+    /**
+     * Stores the earthquakes parsed from a response, replacing any previous entry for the url
+     *
+     * @param requestUrl   string usgs url
+     * @param earthquakes  earthquakes parsed from the response
+     * @param eTag         ETag header of the response or null
+     * @param lastModified Last-Modified header of the response in milliseconds or 0
+     */
+    public synchronized void put(String requestUrl, EarthquakeStore earthquakes, String eTag,
+                                 long lastModified) {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            QueryLog.e(LOG_TAG, "Cannot create cache directory " + mDirectory);
+            return;
+        }
+
+        File file = getFile(requestUrl);
+        File tempFile = null;
+
+        DataOutputStream outputStream = null;
+        try {
+            // a temporary file of its own, never shared with another write of the same url
+            tempFile = File.createTempFile(file.getName(), TEMP_SUFFIX, mDirectory);
+            outputStream = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tempFile)));
+            writeEntry(outputStream, requestUrl, earthquakes, eTag, lastModified);
+            outputStream.close();
+            outputStream = null;
+
+            // evicting it right away would only cost the write, the previous entry is outdated
+            if (tempFile.length() > mMaxSizeBytes) {
+                QueryLog.e(LOG_TAG, "Cache entry for " + requestUrl + " is larger than the cache");
+                deleteFile(tempFile);
+                if (file.exists()) {
+                    deleteFile(file);
+                }
+                return;
+            }
+
+            // replace the previous entry only once the new one is complete
+            if (!tempFile.renameTo(file)) {
+                QueryLog.e(LOG_TAG, "Cannot store cache entry for " + requestUrl);
+                deleteFile(tempFile);
+                return;
+            }
+        } catch (IOException e) {
+            QueryLog.e(LOG_TAG, "Problem writing cache entry for " + requestUrl, e);
+            closeQuietly(outputStream);
+            if (tempFile != null) {
+                deleteFile(tempFile);
+            }
+            return;
+        }
+
+        evict();
+    }
+
+    /**
+     * Marks the entry for the url as just stored, after the server confirmed it is still valid
+     *
+     * @param requestUrl string usgs url
+     */
+    public synchronized void touch(String requestUrl) {
+        File file = getFile(requestUrl);
+        if (!file.exists()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            randomAccessFile.seek(STORED_TIME_POSITION);
+            randomAccessFile.writeLong(now);
+        } catch (IOException e) {
+            QueryLog.e(LOG_TAG, "Cannot refresh cache entry for " + requestUrl, e);
+        } finally {
+            closeQuietly(randomAccessFile);
+        }
+        file.setLastModified(now);
+    }
+
+    /**
+     * Deletes entries older than the maximum age, then the least recently used entries until
+     * the cache fits in its maximum size
+     */
+    private void evict() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        // least recently used entries first
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                long firstModified = first.lastModified();
+                long secondModified = second.lastModified();
+                return firstModified < secondModified ? -1
+                        : (firstModified == secondModified ? 0 : 1);
+            }
+        });
+
+        long now = System.currentTimeMillis();
+        long totalSize = 0;
+        for (File file : files) {
+            totalSize += file.length();
+        }
+
+        for (File file : files) {
+            boolean expired;
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                // temporary files are only left behind by a crash during a write, unless they
+                // are recent and may still be written by another process
+                expired = now - file.lastModified() > mMaxAgeMillis;
+                if (!expired) {
+                    continue;
+                }
+            } else {
+                expired = now - readStoredTime(file) > mMaxAgeMillis;
+            }
+            if (expired || totalSize > mMaxSizeBytes) {
+                totalSize -= file.length();
+                deleteFile(file);
+            }
+        }
+    }
+
+    /**
+     * Returns the time an entry was stored, read from its file
+     *
+     * @param file entry file {@link File}
+     * @return time in milliseconds, 0 if the file is not a valid entry
+     */
+    private static long readStoredTime(File file) {
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            ByteBuffer buffer = ByteBuffer.allocate(STORED_TIME_POSITION + 8);
+            randomAccessFile.getChannel().read(buffer, 0);
+            buffer.flip();
+            return readStoredTime(buffer);
+        } catch (IOException e) {
+            return 0;
+        } finally {
+            closeQuietly(randomAccessFile);
+        }
+    }
+
+    /**
+     * Returns the time an entry was stored, from the start of the entry
+     *
+     * @param buffer buffer {@link ByteBuffer} holding the entry
+     * @return time in milliseconds, 0 if the buffer does not hold a valid entry
+     */
+    private static long readStoredTime(ByteBuffer buffer) {
+        if (buffer.limit() < STORED_TIME_POSITION + 8
+                || buffer.getInt(0) != ENTRY_VERSION) {
+            return 0;
+        }
+        return buffer.getLong(STORED_TIME_POSITION);
+    }
+
+    /**
+     * Returns the file of the entry for the url, named after the SHA-1 of the url
+     *
+     * @param requestUrl string usgs url
+     * @return entry file {@link File}
+     */
+    private File getFile(String requestUrl) {
+        String name;
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+            byte[] digest = messageDigest.digest(requestUrl.getBytes(Charset.forName("UTF-8")));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(b & 0xf, 16));
+            }
+            name = hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // the url itself is stored in the entry, so a colliding hash is detected on read
+            name = Integer.toHexString(requestUrl.hashCode());
+        }
+        return new File(mDirectory, name);
+    }
+
+    private static void writeEntry(DataOutputStream outputStream, String requestUrl,
+                                   EarthquakeStore earthquakes, String eTag, long lastModified)
+            throws IOException {
+        outputStream.writeInt(ENTRY_VERSION);
+        outputStream.writeLong(System.currentTimeMillis());
+        EarthquakeSnapshot.writeString(outputStream, requestUrl);
+        EarthquakeSnapshot.writeString(outputStream, eTag == null ? "" : eTag);
+        outputStream.writeLong(lastModified);
+
+        EarthquakeSnapshot.write(earthquakes, outputStream);
+    }
+
+    private static Entry readEntry(ByteBuffer buffer, String requestUrl) throws IOException {
+        try {
+            if (buffer.getInt() != ENTRY_VERSION) {
+                throw new IOException("Unknown cache entry version");
+            }
+            // time the entry was stored, checked by the caller
+            buffer.getLong();
+            if (!EarthquakeSnapshot.readString(buffer).equals(requestUrl)) {
+                throw new IOException("Cache entry stored for another url");
+            }
+
+            String eTag = EarthquakeSnapshot.readString(buffer);
+            long lastModified = buffer.getLong();
+
+            EarthquakeStore earthquakes = EarthquakeSnapshot.read(buffer);
+
+            return new Entry(earthquakes, eTag.isEmpty() ? null : eTag, lastModified);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Truncated cache entry", e);
+        }
+    }
+
+    private static void deleteFile(File file) {
+        if (!file.delete()) {
+            QueryLog.e(LOG_TAG, "Cannot delete cache file " + file);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            QueryLog.e(LOG_TAG, "Error closing cache file", e);
+        }
+    }
+
+    /**
+     * A cached earthquake list together with the validators of the response it came from
+     */
+    public static final class Entry {
+
+        private final EarthquakeStore mEarthquakes;
+
+        private final String mETag;
+
+        private final long mLastModified;
+
+        private Entry(EarthquakeStore earthquakes, String eTag, long lastModified) {
+            mEarthquakes = earthquakes;
+            mETag = eTag;
+            mLastModified = lastModified;
+        }
+
+        /**
+         * @return earthquakes {@link Entry#mEarthquakes}
+         */
+        public EarthquakeStore getEarthquakes() {
+            return mEarthquakes;
+        }
+
+        /**
+         * @return ETag of the cached response or null {@link Entry#mETag}
+         */
+        public String getETag() {
+            return mETag;
+        }
+
+        /**
+         * @return Last-Modified time of the cached response or 0 {@link Entry#mLastModified}
+         */
+        public long getLastModified() {
+            return mLastModified;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.android.quakereport;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Events added, updated or deleted since a given time, decoded from a usgs query with the
+ * updatedafter and includedeleted parameters by {@link QueryUtils#extractChanges}
+ */
+public final class EarthquakeChanges {
+
+    // earthquakes added or updated, ordered like the response
+    private final EarthquakeStore mUpserts = new EarthquakeStore();
+
+    // update time in milliseconds of each row of mUpserts
+    private long[] mUpdateTimes = new long[16];
+
+    // ids of the deleted events
+    private final Set<String> mDeletedIds = new HashSet<>();
+
+    // newest update time in milliseconds of all events of the response
+    private long mNewestUpdate;
+
+    // true once the whole response has been read
+    private boolean mComplete;
+
+    /**
+     * Returns the earthquakes added or updated
+     *
+     * @return earthquakes {@link EarthquakeStore}
+     */
+    public EarthquakeStore getUpserts() {
+        return mUpserts;
+    }
+
+    /**
+     * Returns the update time of an earthquake added or updated
+     *
+     * @param index index of the row in {@link #getUpserts()}
+     * @return time in milliseconds, 0 if unknown
+     */
+    public long getUpdateTime(int index) {
+        if (index < 0 || index >= mUpserts.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+                    + mUpserts.size());
+        }
+        // rows added to the store directly have no update time
+        return index < mUpdateTimes.length ? mUpdateTimes[index] : 0;
+    }
+
+    /**
+     * Returns the ids of the deleted events
+     *
+     * @return event ids
+     */
+    public Set<String> getDeletedIds() {
+        return mDeletedIds;
+    }
+
+    /**
+     * Returns the newest update time of all events of the response, to ask for the following
+     * changes
+     *
+     * @return time in milliseconds, 0 if the response had no event
+     */
+    public long getNewestUpdate() {
+        return mNewestUpdate;
+    }
+
+    /**
+     * Returns true if nothing changed
+     *
+     * @return true if no event was added, updated or deleted
+     */
+    public boolean isEmpty() {
+        return mUpserts.isEmpty() && mDeletedIds.isEmpty();
+    }
+
+    /**
+     * Returns true if the whole response was read, a response cut by a parse error only holds
+     * some of the changes
+     *
+     * @return true if every change of the response is held
+     */
+    public boolean isComplete() {
+        return mComplete;
+    }
+
+    void setComplete() {
+        mComplete = true;
+    }
+
+    /**
+     * Records the update time of the row just appended to {@link #getUpserts()}
+     */
+    void addUpsertUpdateTime(long updatedInMillis) {
+        int index = mUpserts.size() - 1;
+        if (index >= mUpdateTimes.length) {
+            mUpdateTimes = Arrays.copyOf(mUpdateTimes, Math.max(index + 1,
+                    mUpdateTimes.length * 2));
+        }
+        mUpdateTimes[index] = updatedInMillis;
+        addUpdateTime(updatedInMillis);
+    }
+
+    /**
+     * Appends a row of another store as an upsert
+     */
+    void addUpsert(EarthquakeStore earthquakes, int index, long updatedInMillis) {
+        mUpserts.add(earthquakes, index);
+        addUpsertUpdateTime(updatedInMillis);
+    }
+
+    void addDeletion(String id) {
+        mDeletedIds.add(id);
+    }
+
+    void addUpdateTime(long updatedInMillis) {
+        mNewestUpdate = Math.max(mNewestUpdate, updatedInMillis);
+    }
+}
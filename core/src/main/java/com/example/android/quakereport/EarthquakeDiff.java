@@ -0,0 +1,226 @@
+package com.example.android.quakereport;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Differences between two lists of earthquakes, as the insertions, removals and changes turning
+ * the old list into the new one, so a list view only rebinds the rows that changed.
+ *
+ * Rows are matched by event id. The matched rows kept in place are the longest sequence found in
+ * the same order in both lists, found in O(n log n); a matched row out of that order, for
+ * example one whose time was updated, is removed and inserted again. Computing a diff only reads
+ * the stores, it can run on any thread as long as they are not modified.
+ */
+public final class EarthquakeDiff {
+
+    /**
+     * Receives the updates of a diff, in an order in which they can be applied one after the
+     * other: removals from the end of the old list, then insertions and changes at their
+     * positions in the new list
+     */
+    public interface Callback {
+
+        /**
+         * @param position position of the first removed row
+         * @param count    number of rows removed
+         */
+        void onRemoved(int position, int count);
+
+        /**
+         * @param position position of the first inserted row
+         * @param count    number of rows inserted
+         */
+        void onInserted(int position, int count);
+
+        /**
+         * @param position position of the first changed row
+         * @param count    number of rows changed
+         */
+        void onChanged(int position, int count);
+    }
+
+    private static final int REMOVE = 0;
+    private static final int INSERT = 1;
+    private static final int CHANGE = 2;
+
+    // updates as triples of type, position and count
+    private int[] mUpdates = new int[3 * 16];
+
+    private int mUpdateCount;
+
+    // number of rows removed, inserted and changed
+    private int mAffectedRows;
+
+    private EarthquakeDiff() {
+    }
+
+    /**
+     * Computes the differences between two lists
+     *
+     * @param oldList old list {@link EarthquakeStore}
+     * @param newList new list {@link EarthquakeStore}
+     * @return diff {@link EarthquakeDiff}
+     */
+    public static EarthquakeDiff compute(EarthquakeStore oldList, EarthquakeStore newList) {
+        int oldSize = oldList.size();
+        int newSize = newList.size();
+
+        // old position of every new row, -1 for the new events
+        Map<String, Integer> oldPositions = new HashMap<>(oldSize * 2);
+        for (int i = 0; i < oldSize; i++) {
+            oldPositions.put(oldList.getId(i), i);
+        }
+        int[] oldPositionOfNew = new int[newSize];
+        for (int j = 0; j < newSize; j++) {
+            // removed once matched, so an id found twice in the new list is matched once
+            Integer oldPosition = oldPositions.remove(newList.getId(j));
+            oldPositionOfNew[j] = oldPosition == null ? -1 : oldPosition;
+        }
+
+        boolean[] keptNew = findLongestIncreasingSequence(oldPositionOfNew);
+        boolean[] keptOld = new boolean[oldSize];
+        for (int j = 0; j < newSize; j++) {
+            if (keptNew[j]) {
+                keptOld[oldPositionOfNew[j]] = true;
+            }
+        }
+
+        EarthquakeDiff diff = new EarthquakeDiff();
+
+        // removals from the end, so the positions of the rows before stay valid
+        for (int i = oldSize - 1; i >= 0; ) {
+            if (keptOld[i]) {
+                i--;
+                continue;
+            }
+            int end = i;
+            while (i >= 0 && !keptOld[i]) {
+                i--;
+            }
+            diff.add(REMOVE, i + 1, end - i);
+        }
+
+        // once removed, the kept rows are in their new order and the new rows go in between
+        for (int j = 0; j < newSize; ) {
+            if (keptNew[j]) {
+                j++;
+                continue;
+            }
+            int start = j;
+            while (j < newSize && !keptNew[j]) {
+                j++;
+            }
+            diff.add(INSERT, start, j - start);
+        }
+
+        for (int j = 0; j < newSize; ) {
+            if (!keptNew[j] || oldList.hasSameContents(oldPositionOfNew[j], newList, j)) {
+                j++;
+                continue;
+            }
+            int start = j;
+            while (j < newSize && keptNew[j]
+                    && !oldList.hasSameContents(oldPositionOfNew[j], newList, j)) {
+                j++;
+            }
+            diff.add(CHANGE, start, j - start);
+        }
+
+        return diff;
+    }
+
+    /**
+     * Returns the number of rows removed, inserted or changed
+     *
+     * @return number of rows
+     */
+    public int getAffectedRowCount() {
+        return mAffectedRows;
+    }
+
+    /**
+     * Returns true if the lists hold the same rows
+     *
+     * @return true if there is no update
+     */
+    public boolean isEmpty() {
+        return mUpdateCount == 0;
+    }
+
+    /**
+     * Hands the updates to a callback, in the order described by {@link Callback}
+     *
+     * @param callback callback {@link Callback}
+     */
+    public void dispatchTo(Callback callback) {
+        for (int u = 0; u < mUpdateCount; u++) {
+            int position = mUpdates[3 * u + 1];
+            int count = mUpdates[3 * u + 2];
+            switch (mUpdates[3 * u]) {
+                case REMOVE:
+                    callback.onRemoved(position, count);
+                    break;
+                case INSERT:
+                    callback.onInserted(position, count);
+                    break;
+                default:
+                    callback.onChanged(position, count);
+                    break;
+            }
+        }
+    }
+
+    private void add(int type, int position, int count) {
+        if (3 * (mUpdateCount + 1) > mUpdates.length) {
+            mUpdates = Arrays.copyOf(mUpdates, mUpdates.length * 2);
+        }
+        mUpdates[3 * mUpdateCount] = type;
+        mUpdates[3 * mUpdateCount + 1] = position;
+        mUpdates[3 * mUpdateCount + 2] = count;
+        mUpdateCount++;
+        mAffectedRows += count;
+    }
+
+    /**
+     * Finds a longest strictly increasing subsequence of the values, ignoring negative values
+     *
+     * @param values values
+     * @return true for the values in the subsequence
+     */
+    private static boolean[] findLongestIncreasingSequence(int[] values) {
+        int n = values.length;
+        // tails[k] is the index of the smallest value ending an increasing sequence of k + 1
+        int[] tails = new int[n];
+        int[] previous = new int[n];
+        int length = 0;
+        for (int j = 0; j < n; j++) {
+            if (values[j] < 0) {
+                continue;
+            }
+            // binary search of the first tail not below the value
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (values[tails[middle]] < values[j]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[j] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = j;
+            if (low == length) {
+                length++;
+            }
+        }
+
+        boolean[] kept = new boolean[n];
+        for (int j = length > 0 ? tails[length - 1] : -1; j >= 0; j = previous[j]) {
+            kept[j] = true;
+        }
+        return kept;
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.android.quakereport;
+
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+
+/**
+ * Formats the fields of an earthquake the way they are displayed in a list item. The formats are
+ * created once and reused, and equal results are returned as the same String instance, so an
+ * instance must only be used by one thread at a time.
+ */
+public final class EarthquakeFormatter {
+
+    // number of magnitude bands returned by getMagnitudeBand
+    public static final int MAGNITUDE_BAND_COUNT = 11;
+
+    // secondary text of places without a distance to a location
+    private static final String NEAR_THE = "Near the";
+
+    // separator between the distance and the location of a place
+    private static final String OF = " of ";
+
+    // format the double value to display magnitude only up to 1 decimal place
+    private final DecimalFormat mMagnitudeFormat = new DecimalFormat("0.0");
+
+    private final SimpleDateFormat mDateFormat = new SimpleDateFormat("MMM dd, yyyy");
+
+    private final SimpleDateFormat mTimeFormat = new SimpleDateFormat("h:mm a");
+
+    // reused for every date and time formatted
+    private final Date mDate = new Date();
+
+    // single instance of every string returned so far
+    private final HashMap<String, String> mStrings = new HashMap<>();
+
+    // location offset and primary location of every place split so far
+    private final HashMap<String, String[]> mPlaceSplits = new HashMap<>();
+
+    // location offset of every offset token formatted so far
+    private final HashMap<Integer, String> mLocationOffsets = new HashMap<>();
+
+    /**
+     * Returns the magnitude with one decimal place
+     *
+     * @param magnitude magnitude of the earthquake
+     * @return formatted magnitude
+     */
+    public String formatMagnitude(double magnitude) {
+        return intern(mMagnitudeFormat.format(magnitude));
+    }
+
+    /**
+     * Returns the date of the earthquake like "Mar 06, 2010"
+     *
+     * @param dateInMillis date of the earthquake in milliseconds
+     * @return formatted date
+     */
+    public String formatDate(long dateInMillis) {
+        mDate.setTime(dateInMillis);
+        return intern(mDateFormat.format(mDate));
+    }
+
+    /**
+     * Returns the time of the earthquake like "3:00 PM"
+     *
+     * @param dateInMillis date of the earthquake in milliseconds
+     * @return formatted time
+     */
+    public String formatTime(long dateInMillis) {
+        mDate.setTime(dateInMillis);
+        return intern(mTimeFormat.format(mDate));
+    }
+
+    /**
+     * Splits a place into its location offset and primary location, each place is only split
+     * once
+     *
+     * @param place place of the earthquake
+     * @return array of the location offset and the primary location
+     */
+    public String[] splitPlace(String place) {
+        String[] split = mPlaceSplits.get(place);
+        if (split == null) {
+            split = new String[]{intern(getLocationOffset(place)),
+                    intern(getPrimaryLocation(place))};
+            mPlaceSplits.put(place, split);
+        }
+        return split;
+    }
+
+    /**
+     * Returns the location offset of a place tokenized by {@link PlaceDictionary}, each offset
+     * token is only formatted once
+     *
+     * @param offset offset token of the place
+     * @return location offset, "N km SSW of" or "Near the"
+     */
+    public String formatLocationOffset(int offset) {
+        if (offset == PlaceDictionary.NO_OFFSET) {
+            return NEAR_THE;
+        }
+        String locationOffset = mLocationOffsets.get(offset);
+        if (locationOffset == null) {
+            locationOffset = intern(PlaceDictionary.formatOffset(offset));
+            mLocationOffsets.put(offset, locationOffset);
+        }
+        return locationOffset;
+    }
+
+    /**
+     * Returns the location offset of a row, "N km SSW of" or "Near the"
+     *
+     * @param earthquakes store {@link EarthquakeStore} holding the row
+     * @param index       index of the row
+     * @return location offset
+     */
+    public String formatLocationOffset(EarthquakeStore earthquakes, int index) {
+        int offset = earthquakes.getPlaceOffset(index);
+        if (offset != PlaceDictionary.NO_OFFSET) {
+            return formatLocationOffset(offset);
+        }
+        // a place that could not be tokenized is split as a whole
+        return splitPlace(PlaceDictionary.getRegion(earthquakes.getRegionId(index)))[0];
+    }
+
+    /**
+     * Returns the primary location of a row, its region or the place split as a whole
+     *
+     * @param earthquakes store {@link EarthquakeStore} holding the row
+     * @param index       index of the row
+     * @return primary location
+     */
+    public String formatPrimaryLocation(EarthquakeStore earthquakes, int index) {
+        String region = PlaceDictionary.getRegion(earthquakes.getRegionId(index));
+        if (earthquakes.getPlaceOffset(index) != PlaceDictionary.NO_OFFSET) {
+            return region;
+        }
+        return splitPlace(region)[1];
+    }
+
+    /**
+     * Returns the offset part of a place, "N km SSW of" for "N km SSW of X" and "Near the" for
+     * places without a distance
+     *
+     * @param place place of the earthquake
+     * @return location offset
+     */
+    public static String getLocationOffset(String place) {
+        int index = getOffsetEnd(place);
+        if (index < 0) {
+            return NEAR_THE;
+        }
+        return place.substring(0, index) + " of";
+    }
+
+    /**
+     * Returns the primary location of a place, "X" for "N km SSW of X" and the whole place for
+     * places without a distance
+     *
+     * @param place place of the earthquake
+     * @return primary location
+     */
+    public static String getPrimaryLocation(String place) {
+        int index = getOffsetEnd(place);
+        if (index < 0) {
+            return place;
+        }
+        return place.substring(index + OF.length());
+    }
+
+    /**
+     * Returns the magnitude band used to pick the color of the magnitude circle: the magnitude
+     * rounded down for magnitudes from 0 to 9 and 10 for any other magnitude
+     *
+     * @param magnitude magnitude of the earthquake
+     * @return band from 0 to {@link #MAGNITUDE_BAND_COUNT} - 1
+     */
+    public static int getMagnitudeBand(double magnitude) {
+        int band = (int) Math.floor(magnitude);
+        if (band < 0 || band >= MAGNITUDE_BAND_COUNT - 1) {
+            return MAGNITUDE_BAND_COUNT - 1;
+        }
+        return band;
+    }
+
+    private String intern(String string) {
+        String interned = mStrings.get(string);
+        if (interned == null) {
+            mStrings.put(string, string);
+            interned = string;
+        }
+        return interned;
+    }
+
+    /**
+     * Returns the index of " of " in places starting with a distance, -1 for other places
+     */
+    private static int getOffsetEnd(String place) {
+        if (place.isEmpty() || !Character.isDigit(place.charAt(0))) {
+            return -1;
+        }
+        return place.indexOf(OF);
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * JSON backend turning a USGS GeoJSON response into earthquakes. The built-in backends are
+ * {@link QueryUtils#STREAMING_PARSER} and {@link QueryUtils#TREE_PARSER}.
+ */
+public interface EarthquakeParser {
+
+    /**
+     * Parses a GeoJSON response
+     *
+     * @param inputStream response stream {@link InputStream}, not closed
+     * @return earthquakes of the response or null if the response is empty
+     * @throws IOException if the stream cannot be read or is not valid JSON
+     */
+    EarthquakeStore parse(InputStream inputStream) throws IOException;
+}
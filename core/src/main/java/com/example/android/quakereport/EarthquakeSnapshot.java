@@ -0,0 +1,300 @@
+package com.example.android.quakereport;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, versioned binary format for an {@link EarthquakeStore}, used to restore a result set
+ * without parsing JSON again.
+ *
+ * Layout, all integers big endian:
+ * <pre>
+ * int     magic "QKSN"
+ * byte    version
+ * varint  number of strings, followed by each string as varint byte length + UTF-8 bytes
+ * varint  number of features of the response the earthquakes were parsed from, see
+ *         {@link EarthquakeStore#getResponseFeatureCount()}
+ * varint  number of earthquakes, followed by each earthquake as
+ *         varlong  zigzag encoded difference to the time of the previous earthquake
+ *         short    magnitude in hundredths, {@link #UNKNOWN_MAGNITUDE} if not known
+ *         varint   index of the place in the string table
+ *         varint   index of the url prefix (up to the last '/') in the string table
+ *         varint   byte length + UTF-8 bytes of the rest of the url
+ *         varint   byte length + UTF-8 bytes of the event id, empty if it is the rest of the url
+ *         int      latitude in hundred thousandths of a degree, {@link #UNKNOWN_COORDINATE} if
+ *                  not known
+ *         int      longitude, same as the latitude
+ * </pre>
+ * Places and url prefixes repeat a lot, so each distinct value is stored once in the string
+ * table and shared by all earthquakes read back from it. Magnitudes and coordinates are stored
+ * at the precision an {@link EarthquakeStore} holds them, so an earthquake read back is equal to
+ * the one parsed again from the response and the {@link EarthquakeDiff} of the two is empty.
+ */
+public final class EarthquakeSnapshot {
+
+    // "QKSN"
+    private static final int MAGIC = 0x514b534e;
+
+    // version of the layout described above
+    private static final byte VERSION = 6;
+
+    // quantized value of a magnitude that is not a number
+    private static final short UNKNOWN_MAGNITUDE = Short.MIN_VALUE;
+
+    // quantized value of a coordinate that is not a number
+    private static final int UNKNOWN_COORDINATE = Integer.MIN_VALUE;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Create a private constructor because no one should ever create a
+     * {@link EarthquakeSnapshot} object.
+     */
+    private EarthquakeSnapshot() {
+    }
+
+    /**
+     * Writes the earthquakes to a snapshot file, replacing the file if it exists
+     *
+     * @param earthquakes earthquakes to write
+     * @param file        snapshot file {@link File}
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(EarthquakeStore earthquakes, File file) throws IOException {
+        DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+        try {
+            write(earthquakes, outputStream);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    /**
+     * Reads the earthquakes of a snapshot file through a memory mapping of the file
+     *
+     * @param file snapshot file {@link File}
+     * @return earthquakes stored in the snapshot
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    public static EarthquakeStore read(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            return read(buffer);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Writes the earthquakes in the snapshot format
+     *
+     * @param earthquakes  earthquakes to write
+     * @param outputStream stream to write to, not closed
+     * @throws IOException if the stream cannot be written
+     */
+    public static void write(EarthquakeStore earthquakes, DataOutputStream outputStream)
+            throws IOException {
+        // intern places and url prefixes into the string table
+        Map<String, Integer> stringIndexes = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        int size = earthquakes.size();
+        int[] placeIndexes = new int[size];
+        int[] urlPrefixIndexes = new int[size];
+        for (int i = 0; i < size; i++) {
+            placeIndexes[i] = intern(earthquakes.getPlace(i), stringIndexes, strings);
+            urlPrefixIndexes[i] = intern(earthquakes.getUrlPrefix(i), stringIndexes, strings);
+        }
+
+        outputStream.writeInt(MAGIC);
+        outputStream.writeByte(VERSION);
+
+        writeVarLong(outputStream, strings.size());
+        for (String string : strings) {
+            writeString(outputStream, string);
+        }
+
+        writeVarLong(outputStream, earthquakes.getResponseFeatureCount());
+        writeVarLong(outputStream, size);
+        long previousTime = 0;
+        for (int i = 0; i < size; i++) {
+            long time = earthquakes.getDateInMillis(i);
+            long delta = time - previousTime;
+            writeVarLong(outputStream, (delta << 1) ^ (delta >> 63));
+            previousTime = time;
+
+            outputStream.writeShort(quantizeMagnitude(earthquakes.getMagnitude(i)));
+
+            writeVarLong(outputStream, placeIndexes[i]);
+            writeVarLong(outputStream, urlPrefixIndexes[i]);
+            writeString(outputStream, earthquakes.getUrlSuffix(i));
+            String id = earthquakes.getIdIfNotUrlSuffix(i);
+            writeString(outputStream, id == null ? "" : id);
+
+            outputStream.writeInt(quantizeCoordinate(earthquakes.getLatitude(i)));
+            outputStream.writeInt(quantizeCoordinate(earthquakes.getLongitude(i)));
+        }
+    }
+
+    /**
+     * Reads the earthquakes of a snapshot from the buffer's position
+     *
+     * @param buffer buffer {@link ByteBuffer} holding a snapshot
+     * @return earthquakes stored in the snapshot
+     * @throws IOException if the buffer does not hold a valid snapshot
+     */
+    public static EarthquakeStore read(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not an earthquake snapshot");
+            }
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IOException("Unsupported earthquake snapshot version " + version);
+            }
+
+            String[] strings = new String[readVarInt(buffer)];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString(buffer);
+            }
+
+            int responseFeatureCount = readVarInt(buffer);
+            int size = readVarInt(buffer);
+            EarthquakeStore earthquakes = new EarthquakeStore(size);
+            earthquakes.setResponseFeatureCount(responseFeatureCount);
+            long time = 0;
+            for (int i = 0; i < size; i++) {
+                long zigzag = readVarLong(buffer);
+                time += (zigzag >>> 1) ^ -(zigzag & 1);
+
+                short quantizedMagnitude = buffer.getShort();
+                double magnitude = quantizedMagnitude == UNKNOWN_MAGNITUDE ? Double.NaN
+                        : quantizedMagnitude / EarthquakeStore.MAGNITUDE_SCALE;
+
+                String place = strings[readVarInt(buffer)];
+                String urlPrefix = strings[readVarInt(buffer)];
+                String urlSuffix = readString(buffer);
+                String id = readString(buffer);
+
+                double latitude = readCoordinate(buffer);
+                double longitude = readCoordinate(buffer);
+
+                earthquakes.add(id.isEmpty() ? null : id, magnitude, place, time, urlPrefix,
+                        urlSuffix, latitude, longitude);
+            }
+            return earthquakes;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Truncated earthquake snapshot", e);
+        }
+    }
+
+    /**
+     * Writes a string as varint byte length followed by its UTF-8 bytes
+     *
+     * @param outputStream stream to write to
+     * @param string       string to write
+     * @throws IOException if the stream cannot be written
+     */
+    static void writeString(DataOutputStream outputStream, String string) throws IOException {
+        byte[] bytes = string.getBytes(UTF_8);
+        writeVarLong(outputStream, bytes.length);
+        outputStream.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutputStream, String)}
+     *
+     * @param buffer buffer to read from
+     * @return string
+     */
+    static String readString(ByteBuffer buffer) {
+        int length = readVarInt(buffer);
+        if (buffer.hasArray()) {
+            String string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                    length, UTF_8);
+            buffer.position(buffer.position() + length);
+            return string;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static int intern(String string, Map<String, Integer> stringIndexes,
+                              List<String> strings) {
+        Integer index = stringIndexes.get(string);
+        if (index == null) {
+            index = strings.size();
+            stringIndexes.put(string, index);
+            strings.add(string);
+        }
+        return index;
+    }
+
+    private static short quantizeMagnitude(double magnitude) {
+        if (Double.isNaN(magnitude)) {
+            return UNKNOWN_MAGNITUDE;
+        }
+        long quantized = Math.round(magnitude * EarthquakeStore.MAGNITUDE_SCALE);
+        return (short) Math.max(Short.MIN_VALUE + 1, Math.min(Short.MAX_VALUE, quantized));
+    }
+
+    private static int quantizeCoordinate(double coordinate) {
+        if (Double.isNaN(coordinate)) {
+            return UNKNOWN_COORDINATE;
+        }
+        long quantized = Math.round(coordinate * EarthquakeStore.COORDINATE_SCALE);
+        return (int) Math.max(Integer.MIN_VALUE + 1, Math.min(Integer.MAX_VALUE, quantized));
+    }
+
+    private static double readCoordinate(ByteBuffer buffer) {
+        int quantizedCoordinate = buffer.getInt();
+        return quantizedCoordinate == UNKNOWN_COORDINATE ? Double.NaN
+                : quantizedCoordinate / EarthquakeStore.COORDINATE_SCALE;
+    }
+
+    private static void writeVarLong(DataOutputStream outputStream, long value)
+            throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            outputStream.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        outputStream.writeByte((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        long value = readVarLong(buffer);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IndexOutOfBoundsException("Invalid length " + value);
+        }
+        return (int) value;
+    }
+}
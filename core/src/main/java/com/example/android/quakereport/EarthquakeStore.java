@@ -0,0 +1,862 @@
+package com.example.android.quakereport;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Column oriented list of earthquakes. Every field is kept in its own primitive array, places
+ * are tokenized against the regions of the {@link PlaceDictionary} and url prefixes are interned
+ * in a {@link StringPool}, so a row costs a few array slots instead of an {@link Earthquake}
+ * object with its own strings.
+ *
+ * Magnitudes are held in hundredths and coordinates in hundred thousandths of a degree, about a
+ * meter, the precision of an {@link EarthquakeSnapshot}, so a row read back from a snapshot
+ * holds the same values as the row parsed from the response.
+ *
+ * Rows are read by index through the column getters. {@link EarthquakeStore#get(int)} is only
+ * there to satisfy {@link java.util.List} and creates a new {@link Earthquake} on every call.
+ *
+ * The texts and magnitude band a list item displays are computed ahead of time by
+ * {@link EarthquakeStore#formatDisplayFields(EarthquakeFormatter)}, off the UI thread, so binding
+ * a row only reads them. The formatter returns equal texts as one String instance, so the display
+ * columns only hold references to a few shared strings. Formatting is synchronized and only
+ * computes the rows not formatted yet, so a store shared by several loaders is formatted once.
+ */
+public final class EarthquakeStore extends AbstractList<Earthquake> implements RandomAccess {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // minimum number of rows to format before the work is split between threads
+    private static final int PARALLEL_FORMAT_THRESHOLD = 2000;
+
+    // magnitudes are held in hundredths
+    static final double MAGNITUDE_SCALE = 100.0;
+
+    // coordinates are held in hundred thousandths of a degree
+    static final double COORDINATE_SCALE = 100000.0;
+
+    // bytes of the column slots of a row, allocated up front for the capacity of a store: four
+    // 8 byte values, three ints, seven references counted as 8 bytes and the magnitude band
+    static final int COLUMN_BYTES_PER_ROW = 4 * 8 + 3 * 4 + 7 * 8 + 1;
+
+    // number of rows in the store
+    private int mSize;
+
+    // magnitude of each row
+    private double[] mMagnitudes;
+
+    // date in milliseconds of each row
+    private long[] mDatesInMillis;
+
+    // offset token of the place of each row, see PlaceDictionary
+    private int[] mPlaceOffsets;
+
+    // region id of the place of each row in the PlaceDictionary
+    private int[] mRegionIds;
+
+    // id of the url prefix, up to the last '/', of each row in mStrings
+    private int[] mUrlPrefixIds;
+
+    // rest of the url of each row, usually the event id
+    private String[] mUrlSuffixes;
+
+    // event id of each row, null if it is the url suffix or not known
+    private String[] mIds;
+
+    // latitude in degrees of each row, NaN if not known
+    private double[] mLatitudes;
+
+    // longitude in degrees of each row, NaN if not known
+    private double[] mLongitudes;
+
+    // url prefixes shared by the rows
+    private final StringPool mStrings = new StringPool();
+
+    // number of features of the response the rows were parsed from, -1 if not parsed
+    private int mResponseFeatureCount = -1;
+
+    // number of rows, from the first one, whose display fields have been computed
+    private int mFormattedSize;
+
+    // magnitude with one decimal place of each row
+    private String[] mMagnitudeTexts;
+
+    // magnitude band of each row, see EarthquakeFormatter#getMagnitudeBand
+    private byte[] mMagnitudeBands;
+
+    // location offset of each row, "N km SSW of" or "Near the"
+    private String[] mLocationOffsets;
+
+    // primary location of each row
+    private String[] mPrimaryLocations;
+
+    // formatted date of each row
+    private String[] mDateTexts;
+
+    // formatted time of each row
+    private String[] mTimeTexts;
+
+    public EarthquakeStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of rows to allocate room for
+     */
+    public EarthquakeStore(int capacity) {
+        capacity = Math.max(capacity, 1);
+        mMagnitudes = new double[capacity];
+        mDatesInMillis = new long[capacity];
+        mPlaceOffsets = new int[capacity];
+        mRegionIds = new int[capacity];
+        mUrlPrefixIds = new int[capacity];
+        mUrlSuffixes = new String[capacity];
+        mIds = new String[capacity];
+        mLatitudes = new double[capacity];
+        mLongitudes = new double[capacity];
+        mMagnitudeTexts = new String[capacity];
+        mMagnitudeBands = new byte[capacity];
+        mLocationOffsets = new String[capacity];
+        mPrimaryLocations = new String[capacity];
+        mDateTexts = new String[capacity];
+        mTimeTexts = new String[capacity];
+    }
+
+    /**
+     * Creates a store holding a copy of the given earthquakes
+     *
+     * @param earthquakes earthquakes to copy
+     */
+    public EarthquakeStore(Collection<? extends Earthquake> earthquakes) {
+        this(earthquakes.size());
+        addAll(earthquakes);
+    }
+
+    /**
+     * Appends a row
+     *
+     * @param magnitude    magnitude of the earthquake
+     * @param place        place of the earthquake
+     * @param dateInMillis date of the earthquake in milliseconds
+     * @param url          url of the earthquake on the usgs site
+     */
+    public void add(double magnitude, String place, long dateInMillis, String url) {
+        add(null, magnitude, place, dateInMillis, url);
+    }
+
+    /**
+     * Appends a row
+     *
+     * @param id           usgs event id of the earthquake, null if not known
+     * @param magnitude    magnitude of the earthquake
+     * @param place        place of the earthquake
+     * @param dateInMillis date of the earthquake in milliseconds
+     * @param url          url of the earthquake on the usgs site
+     */
+    public void add(String id, double magnitude, String place, long dateInMillis, String url) {
+        add(id, magnitude, place, dateInMillis, url, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Appends a row
+     *
+     * @param id           usgs event id of the earthquake, null if not known
+     * @param magnitude    magnitude of the earthquake
+     * @param place        place of the earthquake
+     * @param dateInMillis date of the earthquake in milliseconds
+     * @param url          url of the earthquake on the usgs site
+     * @param latitude     latitude of the epicenter in degrees, NaN if not known
+     * @param longitude    longitude of the epicenter in degrees, NaN if not known
+     */
+    public void add(String id, double magnitude, String place, long dateInMillis, String url,
+                    double latitude, double longitude) {
+        int urlSplit = url.lastIndexOf('/') + 1;
+        add(id, magnitude, place, dateInMillis, url.substring(0, urlSplit),
+                url.substring(urlSplit), latitude, longitude);
+    }
+
+    /**
+     * Appends a row whose url is already split after its last '/'
+     *
+     * @param id           usgs event id of the earthquake, null if not known
+     * @param magnitude    magnitude of the earthquake
+     * @param place        place of the earthquake
+     * @param dateInMillis date of the earthquake in milliseconds
+     * @param urlPrefix    url of the earthquake up to and including the last '/'
+     * @param urlSuffix    rest of the url
+     * @param latitude     latitude of the epicenter in degrees, NaN if not known
+     * @param longitude    longitude of the epicenter in degrees, NaN if not known
+     */
+    void add(String id, double magnitude, String place, long dateInMillis, String urlPrefix,
+             String urlSuffix, double latitude, double longitude) {
+        ensureCapacity(mSize + 1);
+
+        mMagnitudes[mSize] = round(magnitude, MAGNITUDE_SCALE);
+        mDatesInMillis[mSize] = dateInMillis;
+        long placeTokens = PlaceDictionary.tokenize(place);
+        mPlaceOffsets[mSize] = PlaceDictionary.getOffset(placeTokens);
+        mRegionIds[mSize] = PlaceDictionary.getRegionId(placeTokens);
+        mUrlPrefixIds[mSize] = mStrings.intern(urlPrefix);
+        mUrlSuffixes[mSize] = urlSuffix;
+        // the event page url usually ends with the id, it is then not kept twice
+        mIds[mSize] = id == null || id.equals(urlSuffix) ? null : id;
+        mLatitudes[mSize] = round(latitude, COORDINATE_SCALE);
+        mLongitudes[mSize] = round(longitude, COORDINATE_SCALE);
+        mSize++;
+        modCount++;
+    }
+
+    /**
+     * Rounds a value to the precision the rows hold, rounding a rounded value again gives the
+     * same value
+     *
+     * @param value value to round, NaN if not known
+     * @param scale {@link #MAGNITUDE_SCALE} or {@link #COORDINATE_SCALE}
+     * @return rounded value, NaN if not known
+     */
+    static double round(double value, double scale) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return value;
+        }
+        return Math.round(value * scale) / scale;
+    }
+
+    /**
+     * Appends all rows of another store
+     *
+     * @param store store {@link EarthquakeStore} to copy the rows of
+     * @return true if rows were appended
+     */
+    public boolean addAll(EarthquakeStore store) {
+        ensureCapacity(mSize + store.mSize);
+        for (int i = 0; i < store.mSize; i++) {
+            copyRow(store, i);
+        }
+        modCount++;
+        return store.mSize > 0;
+    }
+
+    /**
+     * Returns a new store holding the given rows, for example the result of a
+     * {@link SpatialIndex} query
+     *
+     * @param indexes indexes of the rows to copy, in the order they are copied
+     * @return new store holding the rows
+     */
+    public EarthquakeStore select(int[] indexes) {
+        EarthquakeStore selected = new EarthquakeStore(indexes.length);
+        for (int index : indexes) {
+            checkIndex(index);
+            selected.copyRow(this, index);
+        }
+        selected.modCount++;
+        return selected;
+    }
+
+    /**
+     * Merges stores holding earthquakes ordered from the newest to the oldest, as returned by
+     * usgs queries ordered by time, into one store ordered the same way. An earthquake found in
+     * several stores, for example by queries of overlapping regions, is only kept once.
+     *
+     * @param stores stores {@link EarthquakeStore} to merge, null elements are skipped
+     * @return new store holding the merged earthquakes
+     */
+    public static EarthquakeStore merge(List<EarthquakeStore> stores) {
+        int size = 0;
+        for (EarthquakeStore store : stores) {
+            if (store != null) {
+                size += store.mSize;
+            }
+        }
+
+        EarthquakeStore merged = new EarthquakeStore(size);
+        Set<String> ids = new HashSet<>(size * 2);
+        // next row to merge of each store
+        int[] positions = new int[stores.size()];
+        while (true) {
+            // pick the newest next row, there are only a few stores so a linear scan is enough
+            int newest = -1;
+            long newestDate = 0;
+            for (int s = 0; s < positions.length; s++) {
+                EarthquakeStore store = stores.get(s);
+                if (store == null || positions[s] >= store.mSize) {
+                    continue;
+                }
+                long date = store.mDatesInMillis[positions[s]];
+                if (newest < 0 || date > newestDate) {
+                    newest = s;
+                    newestDate = date;
+                }
+            }
+            if (newest < 0) {
+                break;
+            }
+
+            EarthquakeStore store = stores.get(newest);
+            int row = positions[newest]++;
+            // rows without an id cannot be told apart, they are all kept
+            String id = store.getId(row);
+            if (id.isEmpty() || ids.add(id)) {
+                merged.copyRow(store, row);
+            }
+        }
+        merged.modCount++;
+        return merged;
+    }
+
+    /**
+     * Appends a row copied from another store
+     *
+     * @param store store {@link EarthquakeStore} holding the row
+     * @param index index of the row in the store
+     */
+    void add(EarthquakeStore store, int index) {
+        store.checkIndex(index);
+        ensureCapacity(mSize + 1);
+        copyRow(store, index);
+        modCount++;
+    }
+
+    /**
+     * Appends a row copied from another store, the capacity must already be ensured
+     *
+     * @param store store {@link EarthquakeStore} holding the row
+     * @param index index of the row in the store
+     */
+    private void copyRow(EarthquakeStore store, int index) {
+        // display fields already computed are copied as long as no unformatted row precedes
+        if (mFormattedSize == mSize && index < store.mFormattedSize) {
+            mMagnitudeTexts[mSize] = store.mMagnitudeTexts[index];
+            mMagnitudeBands[mSize] = store.mMagnitudeBands[index];
+            mLocationOffsets[mSize] = store.mLocationOffsets[index];
+            mPrimaryLocations[mSize] = store.mPrimaryLocations[index];
+            mDateTexts[mSize] = store.mDateTexts[index];
+            mTimeTexts[mSize] = store.mTimeTexts[index];
+            mFormattedSize++;
+        }
+        mMagnitudes[mSize] = store.mMagnitudes[index];
+        mDatesInMillis[mSize] = store.mDatesInMillis[index];
+        mPlaceOffsets[mSize] = store.mPlaceOffsets[index];
+        mRegionIds[mSize] = store.mRegionIds[index];
+        mUrlPrefixIds[mSize] = mStrings.intern(store.mStrings.get(store.mUrlPrefixIds[index]));
+        mUrlSuffixes[mSize] = store.mUrlSuffixes[index];
+        mIds[mSize] = store.mIds[index];
+        mLatitudes[mSize] = store.mLatitudes[index];
+        mLongitudes[mSize] = store.mLongitudes[index];
+        mSize++;
+    }
+
+    /**
+     * Appends a row copied from the earthquake, only appending at the end is supported
+     */
+    @Override
+    public void add(int index, Earthquake earthquake) {
+        if (index != mSize) {
+            throw new UnsupportedOperationException("Rows can only be appended");
+        }
+        add(earthquake.getId(), earthquake.getMagnitude(), earthquake.getPlace(),
+                earthquake.getDateInMillis(), earthquake.getUrl(), earthquake.getLatitude(),
+                earthquake.getLongitude());
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(mUrlSuffixes, 0, mSize, null);
+        Arrays.fill(mIds, 0, mSize, null);
+        Arrays.fill(mMagnitudeTexts, 0, mSize, null);
+        Arrays.fill(mLocationOffsets, 0, mSize, null);
+        Arrays.fill(mPrimaryLocations, 0, mSize, null);
+        Arrays.fill(mDateTexts, 0, mSize, null);
+        Arrays.fill(mTimeTexts, 0, mSize, null);
+        mSize = 0;
+        mFormattedSize = 0;
+        modCount++;
+    }
+
+    /**
+     * Computes the display fields of every row that does not have them yet
+     *
+     * @param formatter formatter {@link EarthquakeFormatter} used by the calling thread
+     */
+    public synchronized void formatDisplayFields(EarthquakeFormatter formatter) {
+        formatRows(mFormattedSize, mSize, formatter, null);
+        mFormattedSize = mSize;
+    }
+
+    /**
+     * Computes the display fields of every row that does not have them yet. Large ranges are
+     * split in one slice per thread, each formatted with its own {@link EarthquakeFormatter},
+     * the calling thread formatting the last slice itself.
+     *
+     * @param executor    executor {@link ExecutorService} running the other slices
+     * @param parallelism number of slices, usually the number of cores
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the
+     *                              slices, the rows are then left unformatted and no slice is
+     *                              still writing them once this returns
+     */
+    public synchronized void formatDisplayFields(ExecutorService executor, int parallelism)
+            throws InterruptedException {
+        final int from = mFormattedSize;
+        final int to = mSize;
+        if (parallelism <= 1 || to - from < PARALLEL_FORMAT_THRESHOLD) {
+            formatDisplayFields(new EarthquakeFormatter());
+            return;
+        }
+
+        int sliceSize = (to - from + parallelism - 1) / parallelism;
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        List<Future<Void>> futures = new ArrayList<>(parallelism - 1);
+        int sliceStart = from;
+        try {
+            for (int i = 0; i < parallelism - 1; i++) {
+                final int start = sliceStart;
+                final int end = Math.min(start + sliceSize, to);
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        formatRows(start, end, new EarthquakeFormatter(), cancelled);
+                        return null;
+                    }
+                }));
+                sliceStart = end;
+            }
+            formatRows(sliceStart, to, new EarthquakeFormatter(), cancelled);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            // waiting on every slice also makes their writes visible to this thread
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            cancelled.set(true);
+            awaitSlices(futures);
+            throw new RuntimeException("Problem formatting earthquakes", e.getCause());
+        } catch (InterruptedException e) {
+            // the slices stop at their next row, they are waited for so none of them is still
+            // writing the rows once the load is cancelled
+            cancelled.set(true);
+            awaitSlices(futures);
+            throw e;
+        }
+
+        mFormattedSize = to;
+    }
+
+    /**
+     * Waits for the slices of a cancelled formatting to stop, without being interrupted
+     *
+     * @param futures futures {@link Future} of the slices
+     */
+    private static void awaitSlices(List<Future<Void>> futures) {
+        boolean interrupted = false;
+        for (Future<Void> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns true if the display fields of every row have been computed
+     *
+     * @return true if all rows are formatted
+     */
+    public synchronized boolean isFormatted() {
+        return mFormattedSize == mSize;
+    }
+
+    /**
+     * Computes the display fields of a range of rows
+     *
+     * @param from      index of the first row
+     * @param to        index after the last row
+     * @param formatter formatter {@link EarthquakeFormatter} used by the calling thread
+     * @param cancelled flag {@link AtomicBoolean} stopping the formatting before the next row
+     *                  once set, null if it cannot be cancelled
+     */
+    private void formatRows(int from, int to, EarthquakeFormatter formatter,
+                            AtomicBoolean cancelled) {
+        for (int i = from; i < to; i++) {
+            if (cancelled != null && cancelled.get()) {
+                return;
+            }
+            double magnitude = mMagnitudes[i];
+            mMagnitudeTexts[i] = formatter.formatMagnitude(magnitude);
+            mMagnitudeBands[i] = (byte) EarthquakeFormatter.getMagnitudeBand(magnitude);
+            mLocationOffsets[i] = formatter.formatLocationOffset(this, i);
+            mPrimaryLocations[i] = formatter.formatPrimaryLocation(this, i);
+            mDateTexts[i] = formatter.formatDate(mDatesInMillis[i]);
+            mTimeTexts[i] = formatter.formatTime(mDatesInMillis[i]);
+        }
+    }
+
+    /**
+     * Returns a new {@link Earthquake} holding the fields of the row
+     */
+    @Override
+    public Earthquake get(int index) {
+        checkIndex(index);
+        return new Earthquake(getId(index), getMagnitude(index), getPlace(index),
+                getDateInMillis(index), getUrl(index), getLatitude(index), getLongitude(index));
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the number of features of the response the rows were parsed from. Deleted and
+     * malformed features are left out of the rows but counted here, so it tells whether a page
+     * of a query was full and where the next page starts.
+     *
+     * @return number of features, the number of rows if the store was not parsed from a response
+     */
+    public int getResponseFeatureCount() {
+        return mResponseFeatureCount < 0 ? mSize : mResponseFeatureCount;
+    }
+
+    /**
+     * Sets the number of features of the response the rows were parsed from
+     *
+     * @param featureCount number of features, skipped ones included
+     */
+    void setResponseFeatureCount(int featureCount) {
+        mResponseFeatureCount = featureCount;
+    }
+
+    /**
+     * Returns the usgs event id of the row, the url suffix if the id is not known
+     *
+     * @param index index of the row
+     * @return event id
+     */
+    public String getId(int index) {
+        checkIndex(index);
+        return mIds[index] != null ? mIds[index] : mUrlSuffixes[index];
+    }
+
+    /**
+     * Returns a number identifying the event of the row, the same in every store, for example
+     * as the stable id of a list item. Computed from the event id, a 64 bit FNV-1a hash.
+     *
+     * @param index index of the row
+     * @return stable id
+     */
+    public long getStableId(int index) {
+        String id = getId(index);
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0, n = id.length(); i < n; i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns true if a row of another store holds the same values as a row of this store,
+     * display fields excepted
+     *
+     * @param index      index of the row
+     * @param other      other store {@link EarthquakeStore}
+     * @param otherIndex index of the row in the other store
+     * @return true if the rows are equal
+     */
+    boolean hasSameContents(int index, EarthquakeStore other, int otherIndex) {
+        checkIndex(index);
+        other.checkIndex(otherIndex);
+        return Double.compare(mMagnitudes[index], other.mMagnitudes[otherIndex]) == 0
+                && mDatesInMillis[index] == other.mDatesInMillis[otherIndex]
+                && Double.compare(mLatitudes[index], other.mLatitudes[otherIndex]) == 0
+                && Double.compare(mLongitudes[index], other.mLongitudes[otherIndex]) == 0
+                && equal(mUrlSuffixes[index], other.mUrlSuffixes[otherIndex])
+                && mPlaceOffsets[index] == other.mPlaceOffsets[otherIndex]
+                && mRegionIds[index] == other.mRegionIds[otherIndex]
+                && equal(mStrings.get(mUrlPrefixIds[index]),
+                other.mStrings.get(other.mUrlPrefixIds[otherIndex]));
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Returns the latitude of the epicenter of the row
+     *
+     * @param index index of the row
+     * @return latitude in degrees, NaN if not known
+     */
+    public double getLatitude(int index) {
+        checkIndex(index);
+        return mLatitudes[index];
+    }
+
+    /**
+     * Returns the longitude of the epicenter of the row
+     *
+     * @param index index of the row
+     * @return longitude in degrees, NaN if not known
+     */
+    public double getLongitude(int index) {
+        checkIndex(index);
+        return mLongitudes[index];
+    }
+
+    /**
+     * Returns the magnitude of the row
+     *
+     * @param index index of the row
+     * @return magnitude
+     */
+    public double getMagnitude(int index) {
+        checkIndex(index);
+        return mMagnitudes[index];
+    }
+
+    /**
+     * Returns the date of occurrence of the row
+     *
+     * @param index index of the row
+     * @return date in milliseconds
+     */
+    public long getDateInMillis(int index) {
+        checkIndex(index);
+        return mDatesInMillis[index];
+    }
+
+    /**
+     * Returns the place of the row, built on every call for places with a distance
+     *
+     * @param index index of the row
+     * @return place
+     */
+    public String getPlace(int index) {
+        checkIndex(index);
+        return PlaceDictionary.toPlace(mPlaceOffsets[index], mRegionIds[index]);
+    }
+
+    /**
+     * Returns the id of the region of the place of the row, the same in every store, see
+     * {@link PlaceDictionary#getRegion(int)}
+     *
+     * @param index index of the row
+     * @return region id
+     */
+    public int getRegionId(int index) {
+        checkIndex(index);
+        return mRegionIds[index];
+    }
+
+    /**
+     * Returns the offset token of the place of the row, see {@link PlaceDictionary}
+     *
+     * @param index index of the row
+     * @return offset token, {@link PlaceDictionary#NO_OFFSET} if the place has no distance
+     */
+    public int getPlaceOffset(int index) {
+        checkIndex(index);
+        return mPlaceOffsets[index];
+    }
+
+    /**
+     * Returns the distance of the epicenter of the row to its region
+     *
+     * @param index index of the row
+     * @return distance in km, -1 if the place has no distance
+     */
+    public int getPlaceDistance(int index) {
+        checkIndex(index);
+        return PlaceDictionary.getDistance(mPlaceOffsets[index]);
+    }
+
+    /**
+     * Returns the indexes of the rows of a region, for example to {@link #select(int[])} them
+     *
+     * @param regionId region id, see {@link PlaceDictionary#findRegion(String)}
+     * @return indexes of the rows in increasing order
+     */
+    public int[] getRowsOfRegion(int regionId) {
+        int count = 0;
+        for (int i = 0; i < mSize; i++) {
+            if (mRegionIds[i] == regionId) {
+                count++;
+            }
+        }
+        int[] rows = new int[count];
+        for (int i = 0, r = 0; r < count; i++) {
+            if (mRegionIds[i] == regionId) {
+                rows[r++] = i;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the url of the row on the usgs site, built on every call
+     *
+     * @param index index of the row
+     * @return url
+     */
+    public String getUrl(int index) {
+        checkIndex(index);
+        return mStrings.get(mUrlPrefixIds[index]) + mUrlSuffixes[index];
+    }
+
+    /**
+     * Returns the magnitude of the row with one decimal place
+     *
+     * @param index index of a formatted row
+     * @return formatted magnitude
+     */
+    public String getMagnitudeText(int index) {
+        checkFormatted(index);
+        return mMagnitudeTexts[index];
+    }
+
+    /**
+     * Returns the magnitude band of the row, see {@link EarthquakeFormatter#getMagnitudeBand}
+     *
+     * @param index index of a formatted row
+     * @return magnitude band
+     */
+    public int getMagnitudeBand(int index) {
+        checkFormatted(index);
+        return mMagnitudeBands[index];
+    }
+
+    /**
+     * Returns the location offset of the row, "N km SSW of" or "Near the"
+     *
+     * @param index index of a formatted row
+     * @return location offset
+     */
+    public String getLocationOffset(int index) {
+        checkFormatted(index);
+        return mLocationOffsets[index];
+    }
+
+    /**
+     * Returns the primary location of the row
+     *
+     * @param index index of a formatted row
+     * @return primary location
+     */
+    public String getPrimaryLocation(int index) {
+        checkFormatted(index);
+        return mPrimaryLocations[index];
+    }
+
+    /**
+     * Returns the formatted date of the row
+     *
+     * @param index index of a formatted row
+     * @return date text
+     */
+    public String getDateText(int index) {
+        checkFormatted(index);
+        return mDateTexts[index];
+    }
+
+    /**
+     * Returns the formatted time of the row
+     *
+     * @param index index of a formatted row
+     * @return time text
+     */
+    public String getTimeText(int index) {
+        checkFormatted(index);
+        return mTimeTexts[index];
+    }
+
+    /**
+     * Returns the url of the row up to and including its last '/'
+     *
+     * @param index index of the row
+     * @return url prefix
+     */
+    String getUrlPrefix(int index) {
+        checkIndex(index);
+        return mStrings.get(mUrlPrefixIds[index]);
+    }
+
+    /**
+     * Returns the url of the row after its last '/'
+     *
+     * @param index index of the row
+     * @return url suffix
+     */
+    String getUrlSuffix(int index) {
+        checkIndex(index);
+        return mUrlSuffixes[index];
+    }
+
+    /**
+     * Returns the event id of the row if it differs from its url suffix
+     *
+     * @param index index of the row
+     * @return event id or null
+     */
+    String getIdIfNotUrlSuffix(int index) {
+        checkIndex(index);
+        return mIds[index];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        }
+    }
+
+    private void checkFormatted(int index) {
+        checkIndex(index);
+        if (index >= mFormattedSize) {
+            throw new IllegalStateException("Display fields of row " + index
+                    + " have not been computed");
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mMagnitudes.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, mMagnitudes.length + (mMagnitudes.length >> 1));
+        mMagnitudes = Arrays.copyOf(mMagnitudes, newCapacity);
+        mDatesInMillis = Arrays.copyOf(mDatesInMillis, newCapacity);
+        mPlaceOffsets = Arrays.copyOf(mPlaceOffsets, newCapacity);
+        mRegionIds = Arrays.copyOf(mRegionIds, newCapacity);
+        mUrlPrefixIds = Arrays.copyOf(mUrlPrefixIds, newCapacity);
+        mUrlSuffixes = Arrays.copyOf(mUrlSuffixes, newCapacity);
+        mIds = Arrays.copyOf(mIds, newCapacity);
+        mLatitudes = Arrays.copyOf(mLatitudes, newCapacity);
+        mLongitudes = Arrays.copyOf(mLongitudes, newCapacity);
+        mMagnitudeTexts = Arrays.copyOf(mMagnitudeTexts, newCapacity);
+        mMagnitudeBands = Arrays.copyOf(mMagnitudeBands, newCapacity);
+        mLocationOffsets = Arrays.copyOf(mLocationOffsets, newCapacity);
+        mPrimaryLocations = Arrays.copyOf(mPrimaryLocations, newCapacity);
+        mDateTexts = Arrays.copyOf(mDateTexts, newCapacity);
+        mTimeTexts = Arrays.copyOf(mTimeTexts, newCapacity);
+    }
+}
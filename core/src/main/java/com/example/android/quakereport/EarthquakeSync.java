@@ -0,0 +1,172 @@
+package com.example.android.quakereport;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keeps the earthquakes of a usgs query up to date by only fetching what changed. The first
+ * {@link #sync()} fetches the whole query, every following one asks usgs for the events updated
+ * after the newest update already known, with the updatedafter parameter, and applies the
+ * inserts, updates and deletions to the earthquakes held so far. The delta query has no limit,
+ * so it returns every change, and a response that could not be read to the end is ignored: the
+ * newest update only moves forward once all changes up to it are applied.
+ *
+ * After the changes are applied the earthquakes are trimmed to the query again, to its limit and
+ * to its starttime, 30 days ago by default like on the usgs service, so the list holds what the
+ * query would return if it was fetched whole.
+ *
+ * A sync never modifies a store returned by {@link #getEarthquakes()}, a changed list is a new
+ * store, so the held store can be handed to the UI thread as is.
+ */
+public final class EarthquakeSync {
+
+    // time range of a usgs query without starttime
+    private static final long DEFAULT_QUERY_RANGE_MILLIS = 30L * 24 * 60 * 60 * 1000;
+
+    private final String mRequestUrl;
+
+    // starttime of the query in milliseconds, -1 for the default range before now
+    private final long mStartTime;
+
+    // limit of the query, Integer.MAX_VALUE if it has none
+    private final int mLimit;
+
+    // earthquakes of the query as of the last successful sync, ordered from the newest
+    private EarthquakeStore mEarthquakes = new EarthquakeStore();
+
+    // newest update time in milliseconds of the earthquakes held, 0 before the first sync
+    private long mNewestUpdate;
+
+    // changes applied by the last sync that changed the earthquakes
+    private EarthquakeChanges mLastChanges;
+
+    /**
+     * @param requestUrl string usgs url of the query, ordered by time
+     */
+    public EarthquakeSync(String requestUrl) {
+        mRequestUrl = requestUrl;
+
+        String startTime = QueryUtils.getParameter(requestUrl, "starttime");
+        mStartTime = startTime == null ? -1 : QueryUtils.parseQueryTime(startTime);
+
+        int limit = Integer.MAX_VALUE;
+        String limitParameter = QueryUtils.getParameter(requestUrl, "limit");
+        if (limitParameter != null) {
+            try {
+                limit = Integer.parseInt(limitParameter);
+            } catch (NumberFormatException e) {
+                // usgs rejects the query, there is nothing to trim
+            }
+        }
+        mLimit = limit;
+    }
+
+    /**
+     * Fetches the changes of the query and applies them. If the request fails the earthquakes
+     * are kept as they are and the same changes are asked for by the next sync.
+     *
+     * @return true if the earthquakes changed, {@link #getEarthquakes()} then returns a new store
+     */
+    public synchronized boolean sync() {
+        boolean initial = mNewestUpdate == 0;
+        String requestUrl = initial ? mRequestUrl
+                : QueryUtils.buildDeltaUrl(mRequestUrl, mNewestUpdate);
+
+        ChangesParser parser = new ChangesParser();
+        QueryUtils.fetchEarthquakesData(requestUrl, parser, null);
+        EarthquakeChanges changes = parser.getChanges();
+        if (changes == null || !changes.isComplete()) {
+            // the request failed or was cut, the same changes are asked for again
+            return false;
+        }
+
+        mNewestUpdate = Math.max(mNewestUpdate, changes.getNewestUpdate());
+        if (initial) {
+            mEarthquakes = changes.getUpserts();
+            mLastChanges = changes;
+            return true;
+        }
+        if (changes.isEmpty()) {
+            return false;
+        }
+
+        long startTime = mStartTime >= 0 ? mStartTime
+                : System.currentTimeMillis() - DEFAULT_QUERY_RANGE_MILLIS;
+        mEarthquakes = apply(mEarthquakes, changes, startTime, mLimit);
+        mLastChanges = changes;
+        return true;
+    }
+
+    /**
+     * Returns the earthquakes as of the last successful sync
+     *
+     * @return earthquakes {@link EarthquakeStore}, empty before the first sync
+     */
+    public synchronized EarthquakeStore getEarthquakes() {
+        return mEarthquakes;
+    }
+
+    /**
+     * Returns the changes applied by the last sync that changed the earthquakes, every
+     * earthquake fetched is an upsert for the first sync
+     *
+     * @return changes {@link EarthquakeChanges} or null before the first sync
+     */
+    public synchronized EarthquakeChanges getLastChanges() {
+        return mLastChanges;
+    }
+
+    /**
+     * Returns the newest update time of the earthquakes held
+     *
+     * @return time in milliseconds, 0 before the first sync
+     */
+    public synchronized long getNewestUpdate() {
+        return mNewestUpdate;
+    }
+
+    /**
+     * Applies changes to a list of earthquakes and trims it to a query, for example to merge
+     * the changes of a feed
+     *
+     * @param earthquakes earthquakes {@link EarthquakeStore} ordered from the newest, not modified
+     * @param changes     changes {@link EarthquakeChanges} to apply
+     * @param startTime   time in milliseconds of the oldest earthquake of the query
+     * @param limit       maximum number of earthquakes of the query
+     * @return new store holding the earthquakes with the changes applied
+     */
+    public static EarthquakeStore apply(EarthquakeStore earthquakes, EarthquakeChanges changes,
+                                        long startTime, int limit) {
+        EarthquakeStore upserts = changes.getUpserts();
+
+        // an updated event replaces its old row, which may have another time
+        Set<String> replacedIds = new HashSet<>(changes.getDeletedIds());
+        for (int i = 0; i < upserts.size(); i++) {
+            replacedIds.add(upserts.getId(i));
+        }
+
+        EarthquakeStore kept = new EarthquakeStore(earthquakes.size());
+        for (int i = 0; i < earthquakes.size(); i++) {
+            if (!replacedIds.contains(earthquakes.getId(i))) {
+                kept.add(earthquakes, i);
+            }
+        }
+
+        EarthquakeStore merged = EarthquakeStore.merge(Arrays.asList(kept, upserts));
+
+        // the earthquakes are ordered from the newest, the trimmed ones are at the end
+        int size = Math.min(merged.size(), limit);
+        while (size > 0 && merged.getDateInMillis(size - 1) < startTime) {
+            size--;
+        }
+        if (size == merged.size()) {
+            return merged;
+        }
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = i;
+        }
+        return merged.select(rows);
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.android.quakereport;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls a usgs real-time summary feed, for example
+ * https://earthquake.usgs.gov/earthquakes/feed/v1.0/summary/all_hour.geojson, and hands what
+ * changed since the previous response to a {@link Listener}: the earthquakes that are new or
+ * whose updated time changed, a revised magnitude or location, and the earthquakes that were
+ * removed from the feed. An earthquake missing from a response is only a removal if it is not
+ * older than the oldest earthquake of the response, an older one just left the time window of
+ * the feed.
+ *
+ * The feeds are regenerated about once a minute, so the poll interval adapts to them: it drops
+ * to {@link #MIN_INTERVAL_MILLIS} as soon as a poll finds changes, during an active
+ * sequence, and grows by {@link #BACKOFF_FACTOR} up to {@link #MAX_INTERVAL_MILLIS} while the
+ * feed is unchanged or cannot be fetched. Polls carry the validators of the previous response
+ * through the {@link EarthquakeCache}, so an unchanged feed costs a 304 response.
+ *
+ * Stopping and starting again keeps the schedule: the first poll after a start waits for what is
+ * left of the interval since the previous poll, so restarts never poll more often than the
+ * schedule does.
+ */
+public final class FeedPoller {
+
+    // shortest time between two polls, used while new earthquakes keep coming
+    public static final long MIN_INTERVAL_MILLIS = 30 * 1000;
+
+    // longest time between two polls of an unchanged feed
+    public static final long MAX_INTERVAL_MILLIS = 5 * 60 * 1000;
+
+    // growth of the interval after a poll without changes
+    public static final double BACKOFF_FACTOR = 1.5;
+
+    /**
+     * Receives the changes of each poll, on the thread of the scheduler
+     */
+    public interface Listener {
+
+        /**
+         * Called after a poll found changes since the previous response. The first poll reports
+         * every earthquake of the feed as an upsert.
+         *
+         * @param changes changes {@link EarthquakeChanges}, the upserts ordered like the feed
+         */
+        void onChanges(EarthquakeChanges changes);
+    }
+
+    private final String mFeedUrl;
+
+    private final EarthquakeCache mCache;
+
+    private final ScheduledExecutorService mScheduler;
+
+    private final Listener mListener;
+
+    // earthquakes and update times of the previous response, only used by the scheduler thread
+    private EarthquakeChanges mKnown;
+
+    // time to wait before the next poll
+    private volatile long mIntervalMillis = MIN_INTERVAL_MILLIS;
+
+    // next scheduled poll, null while stopped
+    private ScheduledFuture<?> mNextPoll;
+
+    // incremented by every start, a poll of an earlier start does not schedule another one
+    private int mGeneration;
+
+    // System#nanoTime of the start of the last poll, 0 before the first poll
+    private volatile long mLastPollNanos;
+
+    /**
+     * @param feedUrl   string url of a usgs GeoJSON summary feed
+     * @param cache     cache {@link EarthquakeCache} of the feed response, may be null
+     * @param scheduler single threaded scheduler {@link ScheduledExecutorService} running the
+     *                  polls and the listener
+     * @param listener  listener {@link Listener} of the changes
+     */
+    public FeedPoller(String feedUrl, EarthquakeCache cache, ScheduledExecutorService scheduler,
+                      Listener listener) {
+        mFeedUrl = feedUrl;
+        mCache = cache;
+        mScheduler = scheduler;
+        mListener = listener;
+    }
+
+    /**
+     * Polls the feed once the current interval since the previous poll has passed, at once the
+     * first time, and then on the adaptive schedule. Does nothing if already started.
+     */
+    public synchronized void start() {
+        if (mNextPoll == null) {
+            mGeneration++;
+            schedule(getRemainingMillis(mIntervalMillis), mGeneration);
+        }
+    }
+
+    /**
+     * Brings the next poll forward to {@link #MIN_INTERVAL_MILLIS} after the previous poll, at
+     * once if that has passed. A poll scheduled sooner is kept, and nothing happens while
+     * stopped.
+     */
+    public synchronized void refresh() {
+        if (mNextPoll == null) {
+            return;
+        }
+        long delayMillis = getRemainingMillis(MIN_INTERVAL_MILLIS);
+        if (delayMillis < mNextPoll.getDelay(TimeUnit.MILLISECONDS)) {
+            // a poll already running does not schedule another one
+            mNextPoll.cancel(false);
+            mGeneration++;
+            schedule(delayMillis, mGeneration);
+        }
+    }
+
+    /**
+     * Cancels the next poll, a poll already running still completes
+     */
+    public synchronized void stop() {
+        if (mNextPoll != null) {
+            mNextPoll.cancel(false);
+            mNextPoll = null;
+        }
+    }
+
+    /**
+     * Returns the time the poller waits between the current polls
+     *
+     * @return interval in milliseconds
+     */
+    public long getIntervalMillis() {
+        return mIntervalMillis;
+    }
+
+    /**
+     * Returns the time left before the next poll
+     *
+     * @return delay in milliseconds, -1 while stopped
+     */
+    synchronized long getNextPollDelayMillis() {
+        return mNextPoll == null ? -1 : Math.max(0, mNextPoll.getDelay(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Returns the time left of an interval since the start of the previous poll
+     *
+     * @param intervalMillis interval in milliseconds
+     * @return delay in milliseconds, 0 if there was no poll yet or the interval has passed
+     */
+    private long getRemainingMillis(long intervalMillis) {
+        long lastPollNanos = mLastPollNanos;
+        if (lastPollNanos == 0) {
+            return 0;
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastPollNanos);
+        return Math.max(0, intervalMillis - elapsedMillis);
+    }
+
+    private void poll(int generation) {
+        mLastPollNanos = System.nanoTime();
+        ChangesParser parser = new ChangesParser();
+        EarthquakeStore earthquakes = QueryUtils.fetchEarthquakesData(mFeedUrl, parser, mCache);
+        EarthquakeChanges response = parser.getChanges();
+
+        EarthquakeChanges changes = null;
+        if (response != null && response.isComplete()) {
+            changes = diff(mKnown == null ? new EarthquakeChanges() : mKnown, response);
+            mKnown = response;
+        } else if (response == null && earthquakes != null && mKnown == null) {
+            // the first poll was answered by the cache, the update times are unknown so the
+            // earthquakes are upserts again once the feed is fetched
+            response = new EarthquakeChanges();
+            for (int i = 0; i < earthquakes.size(); i++) {
+                response.addUpsert(earthquakes, i, 0);
+            }
+            changes = response;
+            mKnown = response;
+        }
+        // otherwise the feed is unchanged, a 304 response, or could not be fetched whole
+
+        // tighten the schedule while the feed keeps changing, back off otherwise
+        if (changes == null || changes.isEmpty()) {
+            mIntervalMillis = Math.min(MAX_INTERVAL_MILLIS,
+                    (long) (mIntervalMillis * BACKOFF_FACTOR));
+        } else {
+            mIntervalMillis = MIN_INTERVAL_MILLIS;
+            mListener.onChanges(changes);
+        }
+
+        synchronized (this) {
+            // unless stopped, or stopped and started again, while polling
+            if (mNextPoll != null && generation == mGeneration) {
+                schedule(mIntervalMillis, generation);
+            }
+        }
+    }
+
+    private void schedule(long delayMillis, final int generation) {
+        try {
+            mNextPoll = mScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    poll(generation);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the scheduler has been shut down
+            mNextPoll = null;
+        }
+    }
+
+    /**
+     * Returns the changes between two responses of a feed
+     *
+     * @param previous earthquakes and update times {@link EarthquakeChanges} of the previous
+     *                 response
+     * @param current  earthquakes and update times {@link EarthquakeChanges} of the new response
+     * @return the earthquakes new or updated in the new response, and the ids of the earthquakes
+     * deleted or removed from the feed
+     */
+    static EarthquakeChanges diff(EarthquakeChanges previous, EarthquakeChanges current) {
+        EarthquakeStore known = previous.getUpserts();
+        Map<String, Long> knownUpdates = new HashMap<>(known.size() * 2);
+        for (int i = 0; i < known.size(); i++) {
+            knownUpdates.put(known.getId(i), previous.getUpdateTime(i));
+        }
+
+        EarthquakeChanges changes = new EarthquakeChanges();
+        EarthquakeStore earthquakes = current.getUpserts();
+        Set<String> ids = new HashSet<>(earthquakes.size() * 2);
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < earthquakes.size(); i++) {
+            String id = earthquakes.getId(i);
+            ids.add(id);
+            oldest = Math.min(oldest, earthquakes.getDateInMillis(i));
+            Long knownUpdate = knownUpdates.get(id);
+            long updated = current.getUpdateTime(i);
+            if (knownUpdate == null || knownUpdate != updated) {
+                changes.addUpsert(earthquakes, i, updated);
+            }
+        }
+
+        for (String id : current.getDeletedIds()) {
+            if (knownUpdates.containsKey(id)) {
+                changes.addDeletion(id);
+            }
+        }
+        // the older earthquakes missing from the response left the time window of the feed
+        for (int i = 0; i < known.size(); i++) {
+            if (!ids.contains(known.getId(i)) && known.getDateInMillis(i) >= oldest) {
+                changes.addDeletion(known.getId(i));
+            }
+        }
+        return changes;
+    }
+}
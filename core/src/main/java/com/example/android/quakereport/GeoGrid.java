@@ -0,0 +1,143 @@
+package com.example.android.quakereport;
+
+/**
+ * Fixed grid of {@link #CELL_SIZE_DEGREES} degree cells over latitude and longitude, used to
+ * index earthquakes by the cell of their epicenter. Cells are numbered row by row from the south
+ * west corner, so a cell id fits in an int and the cells of a box are found by counting.
+ *
+ * Also holds the distance and bounding box math shared by the spatial queries.
+ */
+public final class GeoGrid {
+
+    // size of a cell in degrees of latitude and longitude
+    public static final double CELL_SIZE_DEGREES = 1.0;
+
+    // cell id of an earthquake without coordinates
+    public static final int UNKNOWN_CELL = -1;
+
+    // mean radius of the earth in km
+    public static final double EARTH_RADIUS_KM = 6371.0;
+
+    // number of cells around a circle of latitude
+    private static final int COLUMNS = (int) (360 / CELL_SIZE_DEGREES);
+
+    // number of cells from pole to pole
+    private static final int ROWS = (int) (180 / CELL_SIZE_DEGREES);
+
+    /**
+     * Create a private constructor because no one should ever create a {@link GeoGrid} object.
+     */
+    private GeoGrid() {
+    }
+
+    /**
+     * Returns the cell holding a point
+     *
+     * @param latitude  latitude in degrees
+     * @param longitude longitude in degrees
+     * @return cell id or {@link #UNKNOWN_CELL} if a coordinate is not a number
+     */
+    public static int getCell(double latitude, double longitude) {
+        if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+            return UNKNOWN_CELL;
+        }
+        return getRow(latitude) * COLUMNS + getColumn(longitude);
+    }
+
+    /**
+     * Returns the cells covering a box. A box whose west longitude is greater than its east
+     * longitude crosses the antimeridian.
+     *
+     * @param south southern latitude in degrees
+     * @param west  western longitude in degrees
+     * @param north northern latitude in degrees
+     * @param east  eastern longitude in degrees
+     * @return cell ids
+     */
+    public static int[] getCells(double south, double west, double north, double east) {
+        int firstRow = getRow(Math.min(south, north));
+        int lastRow = getRow(Math.max(south, north));
+        int firstColumn = getColumn(west);
+        int lastColumn = getColumn(east);
+        // number of columns from west to east, wrapping around the antimeridian
+        int columns = (lastColumn - firstColumn + COLUMNS) % COLUMNS + 1;
+        if (east - west >= 360 || (west > east && firstColumn == lastColumn)) {
+            columns = COLUMNS;
+        }
+
+        int[] cells = new int[(lastRow - firstRow + 1) * columns];
+        int i = 0;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = 0; column < columns; column++) {
+                cells[i++] = row * COLUMNS + (firstColumn + column) % COLUMNS;
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Returns the great circle distance between two points, computed with the haversine formula
+     *
+     * @param latitude1  latitude of the first point in degrees
+     * @param longitude1 longitude of the first point in degrees
+     * @param latitude2  latitude of the second point in degrees
+     * @param longitude2 longitude of the second point in degrees
+     * @return distance in km
+     */
+    public static double getDistanceKm(double latitude1, double longitude1, double latitude2,
+                                       double longitude2) {
+        double sinHalfLatitude = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+        double sinHalfLongitude = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinHalfLatitude * sinHalfLatitude + Math.cos(Math.toRadians(latitude1))
+                * Math.cos(Math.toRadians(latitude2)) * sinHalfLongitude * sinHalfLongitude;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Returns the smallest box holding every point within a distance of a center. The box
+     * crosses the antimeridian if its west longitude is greater than its east longitude, and
+     * spans all longitudes if it reaches a pole.
+     *
+     * @param latitude  latitude of the center in degrees
+     * @param longitude longitude of the center in degrees
+     * @param radiusKm  distance in km
+     * @return south, west, north and east of the box in degrees
+     */
+    public static double[] getBoundingBox(double latitude, double longitude, double radiusKm) {
+        double angularRadius = radiusKm / EARTH_RADIUS_KM;
+        double south = latitude - Math.toDegrees(angularRadius);
+        double north = latitude + Math.toDegrees(angularRadius);
+        if (south <= -90 || north >= 90 || angularRadius >= Math.PI / 2) {
+            return new double[]{Math.max(south, -90), -180, Math.min(north, 90), 180};
+        }
+
+        // widest longitude difference reached by the circle, at a latitude closer to the pole
+        double sinDeltaLongitude = Math.sin(angularRadius) / Math.cos(Math.toRadians(latitude));
+        if (sinDeltaLongitude >= 1) {
+            return new double[]{south, -180, north, 180};
+        }
+        double deltaLongitude = Math.toDegrees(Math.asin(sinDeltaLongitude));
+        return new double[]{south, normalizeLongitude(longitude - deltaLongitude), north,
+                normalizeLongitude(longitude + deltaLongitude)};
+    }
+
+    /**
+     * Returns the longitude in [-180, 180)
+     *
+     * @param longitude longitude in degrees
+     * @return normalized longitude
+     */
+    public static double normalizeLongitude(double longitude) {
+        return ((longitude + 180) % 360 + 360) % 360 - 180;
+    }
+
+    private static int getRow(double latitude) {
+        int row = (int) Math.floor((latitude + 90) / CELL_SIZE_DEGREES);
+        return Math.max(0, Math.min(ROWS - 1, row));
+    }
+
+    private static int getColumn(double longitude) {
+        double normalized = normalizeLongitude(longitude) + 180;
+        return Math.min(COLUMNS - 1, (int) Math.floor(normalized / CELL_SIZE_DEGREES));
+    }
+}
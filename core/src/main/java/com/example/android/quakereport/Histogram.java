@@ -0,0 +1,180 @@
+package com.example.android.quakereport;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of non-negative values, for example durations, safe to record into from any
+ * thread without locking.
+ *
+ * Values are counted in buckets of logarithmic size: every power of two is split in
+ * {@link #SUB_BUCKETS} buckets, so percentiles are known within 12.5% of the value whatever its
+ * magnitude, in a fixed amount of memory. Reads made while values are recorded may be slightly
+ * inconsistent with each other, which is fine for monitoring.
+ */
+public final class Histogram {
+
+    /**
+     * Unit of the recorded values, used to format them
+     */
+    public enum Unit {
+        NANOSECONDS,
+        BYTES,
+        COUNT
+    }
+
+    // number of bits of a value below its highest bit selecting its bucket
+    private static final int SUB_BUCKET_BITS = 3;
+
+    // number of buckets per power of two
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // enough buckets for every positive long
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final String mName;
+
+    private final Unit mUnit;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong mCount = new AtomicLong();
+
+    private final AtomicLong mSum = new AtomicLong();
+
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * @param name name of the measured value
+     * @param unit unit {@link Unit} of the values
+     */
+    public Histogram(String name, Unit unit) {
+        mName = name;
+        mUnit = unit;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public Unit getUnit() {
+        return mUnit;
+    }
+
+    /**
+     * Records a value, negative values are recorded as 0
+     *
+     * @param value value to record
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        mBuckets.incrementAndGet(getBucket(value));
+        mCount.incrementAndGet();
+        mSum.addAndGet(value);
+
+        long max = mMax.get();
+        while (value > max && !mMax.compareAndSet(max, value)) {
+            max = mMax.get();
+        }
+    }
+
+    /**
+     * Returns the number of recorded values
+     *
+     * @return count
+     */
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * Returns the sum of the recorded values
+     *
+     * @return sum
+     */
+    public long getSum() {
+        return mSum.get();
+    }
+
+    /**
+     * Returns the largest recorded value
+     *
+     * @return maximum, 0 if nothing was recorded
+     */
+    public long getMax() {
+        return mMax.get();
+    }
+
+    /**
+     * Returns the mean of the recorded values
+     *
+     * @return mean, 0 if nothing was recorded
+     */
+    public double getMean() {
+        long count = mCount.get();
+        return count == 0 ? 0 : (double) mSum.get() / count;
+    }
+
+    /**
+     * Returns an estimate of a percentile of the recorded values: the upper end of the bucket
+     * holding it, capped to the maximum
+     *
+     * @param percentile percentile between 0 and 100, for example 99 for the 99th percentile
+     * @return estimate of the percentile, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            total += mBuckets.get(bucket);
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += mBuckets.get(bucket);
+            if (seen >= rank) {
+                return Math.min(getBucketUpperBound(bucket), mMax.get());
+            }
+        }
+        return mMax.get();
+    }
+
+    /**
+     * Forgets every recorded value
+     */
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            mBuckets.set(bucket, 0);
+        }
+        mCount.set(0);
+        mSum.set(0);
+        mMax.set(0);
+    }
+
+    /**
+     * Returns the bucket of a value: the values below {@link #SUB_BUCKETS} have a bucket each,
+     * the larger ones share a bucket with the values of the same highest bits
+     */
+    private static int getBucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (highestBit - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long getBucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
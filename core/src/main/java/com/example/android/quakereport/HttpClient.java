@@ -0,0 +1,415 @@
+package com.example.android.quakereport;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Small HTTP GET client on top of {@link HttpURLConnection}, shared by every request of the app.
+ *
+ * Connections are kept alive and reused: the platform keeps a pool of idle connections per
+ * host, and a connection goes back to the pool once its response body has been read to the end
+ * and closed. The client therefore drains and closes every body, error bodies included, and
+ * only disconnects a connection that failed or whose body was too long to drain.
+ *
+ * Responses are requested gzip compressed and decompressed while they are read. Requests that
+ * fail with an {@link IOException} while connecting or reading, or get a 5xx or 429 response,
+ * are retried with an exponential backoff with full jitter, so clients retrying after the same
+ * outage do not all come back at the same time. A Retry-After header of the response extends
+ * the wait. A handler failing on a response that was read without error, a parse error for
+ * example, is not retried: the same response would fail the same way.
+ */
+public final class HttpClient {
+
+    private static final String LOG_TAG = HttpClient.class.getSimpleName();
+
+    // too many requests, sent by the usgs service when it throttles a client
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    // bytes read at most from a body nobody consumed before closing it, a longer body is not
+    // worth downloading to keep the connection
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    // longest Retry-After waited for, a response asking for more is handed to the handler
+    private static final long MAX_RETRY_AFTER_MILLIS = 60 * 1000;
+
+    /**
+     * Reads a response, called once per request with the final response
+     *
+     * @param <T> type of the result of the request
+     */
+    public interface ResponseHandler<T> {
+
+        /**
+         * Reads the response. The body does not have to be read to the end or closed, the
+         * client takes care of it.
+         *
+         * @param connection   connection {@link HttpURLConnection} to read the headers from
+         * @param responseCode status code of the response
+         * @param body         decompressed body {@link InputStream}, the error body for error
+         *                     responses, may be empty
+         * @return result of the request
+         * @throws IOException if the response cannot be handled, the request is only retried
+         *                     if reading the body failed
+         */
+        T onResponse(HttpURLConnection connection, int responseCode, InputStream body)
+                throws IOException;
+    }
+
+    private final int mConnectTimeoutMillis;
+
+    private final int mReadTimeoutMillis;
+
+    private final int mMaxRetries;
+
+    private final long mRetryBaseDelayMillis;
+
+    private final Random mRandom = new Random();
+
+    /**
+     * @param connectTimeoutMillis timeout of establishing a connection
+     * @param readTimeoutMillis    timeout of waiting for data on an established connection
+     * @param maxRetries           number of times a failed request is sent again
+     * @param retryBaseDelayMillis delay before the first retry, doubled for every following one
+     *                             and jittered
+     */
+    public HttpClient(int connectTimeoutMillis, int readTimeoutMillis, int maxRetries,
+                      long retryBaseDelayMillis) {
+        mConnectTimeoutMillis = connectTimeoutMillis;
+        mReadTimeoutMillis = readTimeoutMillis;
+        mMaxRetries = maxRetries;
+        mRetryBaseDelayMillis = retryBaseDelayMillis;
+    }
+
+    /**
+     * Sends a GET request, retrying it if it fails
+     *
+     * @param url            url {@link URL} to request
+     * @param requestHeaders headers {@link Map} to send, may be null
+     * @param handler        handler {@link ResponseHandler} reading the response
+     * @param <T>            type of the result
+     * @return result of the handler
+     * @throws IOException if the request still fails after the last retry, the handler fails,
+     *                     or the thread is interrupted while waiting to retry
+     */
+    public <T> T get(URL url, Map<String, String> requestHeaders, ResponseHandler<T> handler)
+            throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            boolean lastAttempt = attempt >= mMaxRetries;
+            try {
+                Attempt<T> result = attempt(url, requestHeaders, handler, lastAttempt);
+                if (result.done) {
+                    return result.value;
+                }
+                QueryLog.e(LOG_TAG, "Error response code: " + result.responseCode
+                        + ", retrying " + url);
+                Metrics.increment(Metrics.HTTP_RETRIES);
+                sleepBeforeRetry(attempt, result.retryAfterMillis);
+            } catch (HandlerException e) {
+                // the response was read, sending the request again would not handle it better
+                throw e.mCause;
+            } catch (IOException e) {
+                if (lastAttempt) {
+                    throw e;
+                }
+                QueryLog.e(LOG_TAG, "Problem requesting " + url + ", retrying", e);
+                Metrics.increment(Metrics.HTTP_RETRIES);
+                sleepBeforeRetry(attempt, 0);
+            }
+        }
+    }
+
+    /**
+     * Sends the request once
+     *
+     * @return the result of the handler, or not done if the response should be retried
+     * @throws HandlerException if the handler failed on a body read without error
+     */
+    private <T> Attempt<T> attempt(URL url, Map<String, String> requestHeaders,
+                                   ResponseHandler<T> handler, boolean lastAttempt)
+            throws IOException {
+        Metrics.increment(Metrics.HTTP_REQUESTS);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        InputStream body = null;
+        CountingInputStream received = null;
+        boolean failed = true;
+        try {
+            connection.setConnectTimeout(mConnectTimeoutMillis);
+            connection.setReadTimeout(mReadTimeoutMillis);
+            connection.setRequestMethod("GET");
+            // decompressed by the client so it works the same on every platform
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            if (requestHeaders != null) {
+                for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                    connection.setRequestProperty(header.getKey(), header.getValue());
+                }
+            }
+
+            long connectStart = Metrics.startTime();
+            connection.connect();
+            Metrics.recordTime(Metrics.HTTP_CONNECT, connectStart);
+
+            long requestStart = Metrics.startTime();
+            int responseCode = connection.getResponseCode();
+            Metrics.recordTime(Metrics.HTTP_TIME_TO_FIRST_BYTE, requestStart);
+
+            long downloadStart = Metrics.startTime();
+            received = new CountingInputStream(openBody(connection, responseCode));
+            body = decode(connection, received);
+
+            Attempt<T> result = new Attempt<>();
+            result.responseCode = responseCode;
+            if (!lastAttempt && isRetryable(responseCode)) {
+                result.retryAfterMillis = getRetryAfterMillis(connection);
+            }
+            if (!lastAttempt && isRetryable(responseCode)
+                    && result.retryAfterMillis <= MAX_RETRY_AFTER_MILLIS) {
+                result.done = false;
+            } else {
+                HandlerInputStream handlerBody = new HandlerInputStream(body);
+                try {
+                    result.value = handler.onResponse(connection, responseCode, handlerBody);
+                } catch (IOException e) {
+                    if (handlerBody.mFailed) {
+                        throw e;
+                    }
+                    throw new HandlerException(e);
+                }
+                result.done = true;
+            }
+
+            // a body left unread cannot be followed by another response on the connection
+            boolean drained = drain(body);
+            Metrics.recordTime(Metrics.HTTP_DOWNLOAD, downloadStart);
+            failed = !drained;
+            return result;
+        } finally {
+            if (body != null) {
+                try {
+                    body.close();
+                } catch (IOException e) {
+                    failed = true;
+                }
+            }
+            if (received != null) {
+                Metrics.record(Metrics.HTTP_BYTES, Histogram.Unit.BYTES, received.mCount);
+            }
+            // a connection that failed or was not read to the end cannot be reused, the others
+            // go back to the pool
+            if (failed) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Opens the body of the response as received
+     */
+    private static InputStream openBody(HttpURLConnection connection, int responseCode)
+            throws IOException {
+        InputStream body = responseCode >= HttpURLConnection.HTTP_BAD_REQUEST
+                ? connection.getErrorStream() : connection.getInputStream();
+        if (body == null) {
+            // no body, for example a 304 response
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        return body;
+    }
+
+    /**
+     * Decompresses the body if it is gzip encoded
+     */
+    private static InputStream decode(HttpURLConnection connection, InputStream body)
+            throws IOException {
+        if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+            // a 304 or a HEAD like answer may carry the encoding without a body, which has no
+            // gzip header to read
+            PushbackInputStream pushback = new PushbackInputStream(body);
+            int first = pushback.read();
+            if (first == -1) {
+                return pushback;
+            }
+            pushback.unread(first);
+            return new GZIPInputStream(pushback);
+        }
+        return body;
+    }
+
+    /**
+     * Returns the wait asked for by the Retry-After header of the response, in seconds or as an
+     * HTTP date
+     *
+     * @return delay in milliseconds, 0 if the header is missing or invalid
+     */
+    private static long getRetryAfterMillis(HttpURLConnection connection) {
+        String retryAfter = connection.getHeaderField("Retry-After");
+        if (retryAfter == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            long date = connection.getHeaderFieldDate("Retry-After", 0);
+            return date == 0 ? 0 : Math.max(0, date - System.currentTimeMillis());
+        }
+    }
+
+    private static boolean isRetryable(int responseCode) {
+        return responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR
+                || responseCode == HTTP_TOO_MANY_REQUESTS;
+    }
+
+    /**
+     * Reads what is left of a body, up to {@link #MAX_DRAIN_BYTES}, so the connection can be
+     * reused
+     *
+     * @return true if the body was read to the end
+     */
+    private static boolean drain(InputStream body) throws IOException {
+        byte[] buffer = new byte[4096];
+        int drained = 0;
+        while (drained < MAX_DRAIN_BYTES) {
+            int read = body.read(buffer);
+            if (read == -1) {
+                return true;
+            }
+            drained += read;
+        }
+        return false;
+    }
+
+    /**
+     * Waits a random time between zero and the base delay doubled for every retry, and at least
+     * the time asked for by the server
+     */
+    private void sleepBeforeRetry(int attempt, long retryAfterMillis) throws IOException {
+        long maxDelay = mRetryBaseDelayMillis << Math.min(attempt, 16);
+        long delay;
+        synchronized (mRandom) {
+            delay = (long) (mRandom.nextDouble() * maxDelay);
+        }
+        delay = Math.max(delay, retryAfterMillis);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+
+    /**
+     * Body handed to the handler, closing it is left to the client which drains it first.
+     * Remembers if reading failed, to tell a failed download from a failed handler.
+     */
+    private static final class HandlerInputStream extends FilterInputStream {
+        boolean mFailed;
+
+        HandlerInputStream(InputStream inputStream) {
+            super(inputStream);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException e) {
+                mFailed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            try {
+                return super.read(buffer, offset, length);
+            } catch (IOException e) {
+                mFailed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            try {
+                return super.skip(n);
+            } catch (IOException e) {
+                mFailed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Failure of a handler on a body that was read without error, not retried
+     */
+    private static final class HandlerException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final IOException mCause;
+
+        HandlerException(IOException cause) {
+            super(cause);
+            mCause = cause;
+        }
+    }
+
+    /**
+     * Counts the bytes read from the body as received
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        long mCount;
+
+        CountingInputStream(InputStream inputStream) {
+            super(inputStream);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Outcome of a single attempt
+     */
+    private static final class Attempt<T> {
+        // false if the response should be retried
+        boolean done;
+        int responseCode;
+        // wait asked for by the server before retrying
+        long retryAfterMillis;
+        T value;
+    }
+}
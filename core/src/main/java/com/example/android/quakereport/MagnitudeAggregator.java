@@ -0,0 +1,297 @@
+package com.example.android.quakereport;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Numbers of earthquakes per time bucket, for example per day, and per magnitude band, the
+ * bands of {@link EarthquakeFormatter#getMagnitudeBand(double)} used to color the list.
+ *
+ * Counts are kept up to date as earthquakes are added, updated and deleted, so summaries over
+ * months of data never read the earthquakes themselves: the count of a bucket is read directly
+ * and the count of a range of buckets from cumulative counts, recomputed on the first range
+ * query following a change. Buckets are aligned on the epoch, days are UTC days.
+ *
+ * Every counted event is remembered by id, so an update moves it from its previous bucket and
+ * band instead of counting it twice. All methods are thread safe.
+ */
+public final class MagnitudeAggregator {
+
+    // duration of a day, the default bucket
+    public static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private static final int BANDS = EarthquakeFormatter.MAGNITUDE_BAND_COUNT;
+
+    // buckets allocated at least on the side the counts grow
+    private static final int MIN_GROWTH_BUCKETS = 16;
+
+    private final long mBucketMillis;
+
+    // bucket and band of every counted event, packed as bucket * BANDS + band
+    private final Map<String, Long> mEvents = new HashMap<>();
+
+    // bucket of the first element of mCounts and number of buckets allocated
+    private long mFirstBucket;
+    private int mCapacity;
+
+    // counts of bucket mFirstBucket + b and band in mCounts[b * BANDS + band]
+    private int[] mCounts = new int[0];
+
+    private final int[] mBandTotals = new int[BANDS];
+
+    // counts of the buckets before b in mCumulative[b * BANDS + band], null when out of date
+    private int[] mCumulative;
+
+    public MagnitudeAggregator() {
+        this(DAY_MILLIS);
+    }
+
+    /**
+     * @param bucketMillis duration of a time bucket in milliseconds
+     */
+    public MagnitudeAggregator(long bucketMillis) {
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("Bucket duration must be positive");
+        }
+        mBucketMillis = bucketMillis;
+    }
+
+    public long getBucketMillis() {
+        return mBucketMillis;
+    }
+
+    /**
+     * Counts an earthquake, or moves it to its new bucket and band if it is already counted
+     *
+     * @param id           usgs event id
+     * @param magnitude    magnitude of the earthquake
+     * @param dateInMillis date of the earthquake in milliseconds
+     */
+    public synchronized void add(String id, double magnitude, long dateInMillis) {
+        long bucket = getBucket(dateInMillis);
+        int band = EarthquakeFormatter.getMagnitudeBand(magnitude);
+        long packed = bucket * BANDS + band;
+        Long previous = mEvents.put(id, packed);
+        if (previous != null) {
+            if (previous == packed) {
+                return;
+            }
+            uncount(previous);
+        }
+        count(bucket, band, 1);
+    }
+
+    /**
+     * Counts the earthquakes of a store, see {@link #add(String, double, long)}
+     *
+     * @param earthquakes earthquakes {@link EarthquakeStore}
+     */
+    public synchronized void add(EarthquakeStore earthquakes) {
+        for (int i = 0, n = earthquakes.size(); i < n; i++) {
+            add(earthquakes.getId(i), earthquakes.getMagnitude(i),
+                    earthquakes.getDateInMillis(i));
+        }
+    }
+
+    /**
+     * Applies changes fetched by an {@link EarthquakeSync}
+     *
+     * @param changes changes {@link EarthquakeChanges}
+     */
+    public synchronized void apply(EarthquakeChanges changes) {
+        remove(changes.getDeletedIds());
+        add(changes.getUpserts());
+    }
+
+    /**
+     * Stops counting earthquakes, ids that are not counted are ignored
+     *
+     * @param ids usgs event ids
+     */
+    public synchronized void remove(Collection<String> ids) {
+        for (String id : ids) {
+            Long previous = mEvents.remove(id);
+            if (previous != null) {
+                uncount(previous);
+            }
+        }
+    }
+
+    /**
+     * Forgets every earthquake
+     */
+    public synchronized void clear() {
+        mEvents.clear();
+        mCounts = new int[0];
+        mCapacity = 0;
+        Arrays.fill(mBandTotals, 0);
+        mCumulative = null;
+    }
+
+    /**
+     * Returns the number of counted earthquakes
+     *
+     * @return number of earthquakes
+     */
+    public synchronized int size() {
+        return mEvents.size();
+    }
+
+    /**
+     * Returns the number of earthquakes of a magnitude band
+     *
+     * @param band magnitude band
+     * @return number of earthquakes
+     */
+    public synchronized int getCount(int band) {
+        return mBandTotals[band];
+    }
+
+    /**
+     * Returns the number of earthquakes of a magnitude band in the bucket holding a date
+     *
+     * @param dateInMillis date in milliseconds
+     * @param band         magnitude band
+     * @return number of earthquakes
+     */
+    public synchronized int getBucketCount(long dateInMillis, int band) {
+        long index = getBucket(dateInMillis) - mFirstBucket;
+        if (index < 0 || index >= mCapacity) {
+            return 0;
+        }
+        return mCounts[(int) index * BANDS + band];
+    }
+
+    /**
+     * Returns the number of earthquakes of a magnitude band in the buckets holding the dates of
+     * a time range
+     *
+     * @param startMillis earliest date in milliseconds, inclusive
+     * @param endMillis   latest date in milliseconds, inclusive
+     * @param band        magnitude band
+     * @return number of earthquakes
+     */
+    public synchronized int getCount(long startMillis, long endMillis, int band) {
+        if (mCapacity == 0 || startMillis > endMillis) {
+            return 0;
+        }
+        long first = Math.max(getBucket(startMillis) - mFirstBucket, 0);
+        long last = Math.min(getBucket(endMillis) - mFirstBucket, mCapacity - 1);
+        if (first > last) {
+            return 0;
+        }
+
+        int[] cumulative = getCumulative();
+        return cumulative[((int) last + 1) * BANDS + band] - cumulative[(int) first * BANDS + band];
+    }
+
+    /**
+     * Returns the number of earthquakes of every magnitude band in the buckets holding the
+     * dates of a time range
+     *
+     * @param startMillis earliest date in milliseconds, inclusive
+     * @param endMillis   latest date in milliseconds, inclusive
+     * @return numbers of earthquakes indexed by magnitude band
+     */
+    public synchronized int[] getCounts(long startMillis, long endMillis) {
+        int[] counts = new int[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            counts[band] = getCount(startMillis, endMillis, band);
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the counts of every bucket of a time range, for example to draw a histogram of
+     * the events per day by magnitude band
+     *
+     * @param startMillis earliest date in milliseconds, inclusive
+     * @param endMillis   latest date in milliseconds, inclusive
+     * @return numbers of earthquakes indexed by bucket, from the bucket holding startMillis,
+     * then by magnitude band
+     */
+    public synchronized int[][] getBucketCounts(long startMillis, long endMillis) {
+        if (startMillis > endMillis) {
+            return new int[0][];
+        }
+        long firstBucket = getBucket(startMillis);
+        int[][] counts = new int[(int) (getBucket(endMillis) - firstBucket + 1)][];
+        for (int b = 0; b < counts.length; b++) {
+            long index = firstBucket + b - mFirstBucket;
+            counts[b] = index >= 0 && index < mCapacity
+                    ? Arrays.copyOfRange(mCounts, (int) index * BANDS, (int) index * BANDS + BANDS)
+                    : new int[BANDS];
+        }
+        return counts;
+    }
+
+    private void count(long bucket, int band, int delta) {
+        ensureBucket(bucket);
+        mCounts[(int) (bucket - mFirstBucket) * BANDS + band] += delta;
+        mBandTotals[band] += delta;
+        mCumulative = null;
+    }
+
+    /**
+     * Removes an event from the counts
+     *
+     * @param packed bucket and band of the event, packed as in {@link #mEvents}
+     */
+    private void uncount(long packed) {
+        long bucket = floorDiv(packed, BANDS);
+        count(bucket, (int) (packed - bucket * BANDS), -1);
+    }
+
+    /**
+     * Grows the counts so they hold the bucket, with room for more buckets on the same side
+     */
+    private void ensureBucket(long bucket) {
+        if (mCapacity == 0) {
+            mFirstBucket = bucket;
+            mCapacity = MIN_GROWTH_BUCKETS;
+            mCounts = new int[mCapacity * BANDS];
+            return;
+        }
+        long index = bucket - mFirstBucket;
+        if (index >= 0 && index < mCapacity) {
+            return;
+        }
+
+        int growth = Math.max(MIN_GROWTH_BUCKETS, mCapacity / 2);
+        long newFirstBucket = index < 0 ? bucket - growth : mFirstBucket;
+        long newLastBucket = index < 0 ? mFirstBucket + mCapacity - 1 : bucket + growth;
+        int newCapacity = (int) (newLastBucket - newFirstBucket + 1);
+        int[] counts = new int[newCapacity * BANDS];
+        System.arraycopy(mCounts, 0, counts, (int) (mFirstBucket - newFirstBucket) * BANDS,
+                mCapacity * BANDS);
+        mFirstBucket = newFirstBucket;
+        mCapacity = newCapacity;
+        mCounts = counts;
+    }
+
+    private int[] getCumulative() {
+        if (mCumulative == null) {
+            int[] cumulative = new int[(mCapacity + 1) * BANDS];
+            for (int i = 0; i < mCapacity * BANDS; i++) {
+                cumulative[i + BANDS] = cumulative[i] + mCounts[i];
+            }
+            mCumulative = cumulative;
+        }
+        return mCumulative;
+    }
+
+    private long getBucket(long dateInMillis) {
+        return floorDiv(dateInMillis, mBucketMillis);
+    }
+
+    private static long floorDiv(long x, long y) {
+        long quotient = x / y;
+        // round down instead of toward zero
+        if (x % y != 0 && (x < 0) != (y < 0)) {
+            quotient--;
+        }
+        return quotient;
+    }
+}
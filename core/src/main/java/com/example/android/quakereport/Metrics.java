@@ -0,0 +1,286 @@
+package com.example.android.quakereport;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timings and counters of the fetch, parse and bind pipeline, kept in memory and queryable by
+ * name. Durations are recorded in nanoseconds into {@link Histogram}s.
+ *
+ * Recording costs a couple of atomic operations, so metrics are enabled by default. Allocations
+ * are only measured once an {@link AllocationCounter} is set, the Android app sets one in debug
+ * builds.
+ */
+public final class Metrics {
+
+    // time to open the connection, name lookup and TLS handshake included, 0 for a reused one
+    public static final String HTTP_CONNECT = "http.connect";
+
+    // time from the opened connection to the response headers
+    public static final String HTTP_TIME_TO_FIRST_BYTE = "http.ttfb";
+
+    // time to read the body, which includes its parsing as bodies are parsed while they stream
+    public static final String HTTP_DOWNLOAD = "http.download";
+
+    // bytes of each body as received, before decompression
+    public static final String HTTP_BYTES = "http.bytes";
+
+    // requests sent, retries included
+    public static final String HTTP_REQUESTS = "http.requests";
+
+    // requests retried after an error
+    public static final String HTTP_RETRIES = "http.retries";
+
+    // time to parse a response into earthquakes, reading the body it streams from included
+    public static final String PARSE = "parse";
+
+    // bytes allocated by the parsing thread while parsing a response
+    public static final String PARSE_ALLOCATED_BYTES = "parse.allocated";
+
+    // requests answered by an identical request running or by a recent response
+    public static final String REQUESTS_COALESCED = "requests.coalesced";
+
+    // time between a loader being asked to load and its background load starting
+    public static final String LOADER_QUEUE = "loader.queue";
+
+    // time to bind one list row
+    public static final String BIND = "bind";
+
+    // time spent binding rows during one frame
+    public static final String BIND_FRAME = "bind.frame";
+
+    /**
+     * Measures the bytes allocated by the calling thread
+     */
+    public interface AllocationCounter {
+
+        /**
+         * Returns the bytes allocated by the calling thread so far
+         *
+         * @return allocated bytes
+         */
+        long getAllocatedBytes();
+    }
+
+    private static final ConcurrentMap<String, Histogram> sHistograms = new ConcurrentHashMap<>();
+
+    private static final ConcurrentMap<String, AtomicLong> sCounters = new ConcurrentHashMap<>();
+
+    private static volatile boolean sEnabled = true;
+
+    private static volatile AllocationCounter sAllocationCounter;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link Metrics} object.
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Turns recording on or off, the values recorded so far are kept
+     *
+     * @param enabled true to record
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Sets the counter used to measure allocations
+     *
+     * @param allocationCounter counter {@link AllocationCounter}, null to stop measuring them
+     */
+    public static void setAllocationCounter(AllocationCounter allocationCounter) {
+        sAllocationCounter = allocationCounter;
+    }
+
+    /**
+     * Returns the histogram of the given name, created on first use
+     *
+     * @param name name of the measured value
+     * @param unit unit {@link Histogram.Unit} of the values, used if the histogram is created
+     * @return histogram {@link Histogram}
+     */
+    public static Histogram histogram(String name, Histogram.Unit unit) {
+        Histogram histogram = sHistograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram(name, unit);
+            histogram = sHistograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns the value of a counter
+     *
+     * @param name name of the counter
+     * @return value, 0 if the counter was never incremented
+     */
+    public static long getCount(String name) {
+        AtomicLong counter = sCounters.get(name);
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * Returns the histograms recorded so far
+     *
+     * @return histograms {@link Histogram} by name
+     */
+    public static SortedMap<String, Histogram> getHistograms() {
+        return new TreeMap<>(sHistograms);
+    }
+
+    /**
+     * Returns the counters incremented so far
+     *
+     * @return values by name
+     */
+    public static SortedMap<String, Long> getCounts() {
+        SortedMap<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> counter : sCounters.entrySet()) {
+            counts.put(counter.getKey(), counter.getValue().get());
+        }
+        return counts;
+    }
+
+    /**
+     * Forgets every recorded value
+     */
+    public static void reset() {
+        for (Histogram histogram : sHistograms.values()) {
+            histogram.reset();
+        }
+        for (AtomicLong counter : sCounters.values()) {
+            counter.set(0);
+        }
+    }
+
+    /**
+     * Returns the start time of a duration to record with {@link #recordTime(String, long)}
+     *
+     * @return start time in nanoseconds, 0 if recording is disabled
+     */
+    public static long startTime() {
+        return sEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time elapsed since a start time
+     *
+     * @param name      name of the histogram
+     * @param startTime start time returned by {@link #startTime()}
+     * @return elapsed time in nanoseconds, 0 if recording is disabled
+     */
+    public static long recordTime(String name, long startTime) {
+        if (startTime == 0 || !sEnabled) {
+            return 0;
+        }
+        long elapsed = System.nanoTime() - startTime;
+        histogram(name, Histogram.Unit.NANOSECONDS).record(elapsed);
+        return elapsed;
+    }
+
+    /**
+     * Records a value
+     *
+     * @param name  name of the histogram
+     * @param unit  unit {@link Histogram.Unit} of the value
+     * @param value value to record
+     */
+    public static void record(String name, Histogram.Unit unit, long value) {
+        if (sEnabled) {
+            histogram(name, unit).record(value);
+        }
+    }
+
+    /**
+     * Increments a counter
+     *
+     * @param name name of the counter
+     */
+    public static void increment(String name) {
+        if (!sEnabled) {
+            return;
+        }
+        AtomicLong counter = sCounters.get(name);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = sCounters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    /**
+     * Returns the bytes allocated by the calling thread so far, to measure the allocations of
+     * a piece of code with {@link #recordAllocations(String, long)}
+     *
+     * @return allocated bytes, or -1 if allocations are not measured
+     */
+    public static long startAllocations() {
+        AllocationCounter allocationCounter = sAllocationCounter;
+        return sEnabled && allocationCounter != null ? allocationCounter.getAllocatedBytes() : -1;
+    }
+
+    /**
+     * Records the bytes allocated by the calling thread since a start value
+     *
+     * @param name           name of the histogram
+     * @param startAllocated value returned by {@link #startAllocations()}
+     */
+    public static void recordAllocations(String name, long startAllocated) {
+        AllocationCounter allocationCounter = sAllocationCounter;
+        if (startAllocated < 0 || allocationCounter == null) {
+            return;
+        }
+        record(name, Histogram.Unit.BYTES,
+                allocationCounter.getAllocatedBytes() - startAllocated);
+    }
+
+    /**
+     * Formats every metric, one per line, for example for a debug overlay or a log
+     *
+     * @return text of the metrics
+     */
+    public static String dump() {
+        StringBuilder text = new StringBuilder();
+        for (Histogram histogram : getHistograms().values()) {
+            text.append(histogram.getName())
+                    .append(" n=").append(histogram.getCount())
+                    .append(" p50=").append(format(histogram, histogram.getPercentile(50)))
+                    .append(" p99=").append(format(histogram, histogram.getPercentile(99)))
+                    .append(" max=").append(format(histogram, histogram.getMax()))
+                    .append('\n');
+        }
+        for (Map.Entry<String, Long> count : getCounts().entrySet()) {
+            text.append(count.getKey()).append(' ').append(count.getValue()).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String format(Histogram histogram, long value) {
+        switch (histogram.getUnit()) {
+            case NANOSECONDS:
+                return String.format(Locale.US, "%.2fms", value / 1e6);
+            case BYTES:
+                return value < 1024 ? value + "B"
+                        : String.format(Locale.US, "%.1fkB", value / 1024.0);
+            default:
+                return String.valueOf(value);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.android.quakereport;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tokens of usgs places and the dictionary of their regions, shared by every store.
+ *
+ * Most places read "N km DIR of Region" and only the distance changes from one event to the
+ * next, so a place is kept as an offset token packing the distance and direction, and the id of
+ * its region in a dictionary holding every region once. A place of another form, like
+ * "Fiji region", is kept whole as a region without offset. Only places of the exact form, with
+ * "N km" or "Nkm", are tokenized, so {@link #toPlace(int, int)} gives back the same place.
+ *
+ * Region ids are the same in every store and for the life of the process, so rows are grouped
+ * or filtered by region by comparing ints. Regions are never removed, the dictionary grows with
+ * the distinct regions seen, a few thousand for the whole usgs catalog. All methods are thread
+ * safe, looking a region up by id does not lock.
+ */
+public final class PlaceDictionary {
+
+    // offset token of the places without a distance
+    public static final int NO_OFFSET = -1;
+
+    // compass points in the order of their index in the offset tokens
+    private static final String[] DIRECTIONS = {"N", "NNE", "NE", "ENE", "E", "ESE", "SE", "SSE",
+            "S", "SSW", "SW", "WSW", "W", "WNW", "NW", "NNW"};
+
+    // bits of the direction index in an offset token
+    private static final int DIRECTION_BITS = 4;
+
+    // bit set in an offset token when the place has a space between the distance and "km"
+    private static final int SPACED = 1 << DIRECTION_BITS;
+
+    // shift of the distance in an offset token
+    private static final int DISTANCE_SHIFT = DIRECTION_BITS + 1;
+
+    // longest distance tokenized, so it fits in an offset token
+    private static final int MAX_DISTANCE_DIGITS = 7;
+
+    private static final ConcurrentHashMap<String, Integer> sRegionIds =
+            new ConcurrentHashMap<>();
+
+    // regions indexed by id, replaced when grown
+    private static volatile String[] sRegions = new String[256];
+
+    private static int sRegionCount;
+
+    private static final Object sLock = new Object();
+
+    /**
+     * Create a private constructor because no one should ever create a {@link PlaceDictionary}
+     * object.
+     */
+    private PlaceDictionary() {
+    }
+
+    /**
+     * Splits a place into its offset token and region id, adding the region to the dictionary
+     * if it is not there yet
+     *
+     * @param place place of the earthquake
+     * @return offset token in the high 32 bits and region id in the low 32 bits, see
+     * {@link #getOffset(long)} and {@link #getRegionId(long)}
+     */
+    static long tokenize(String place) {
+        int offset = NO_OFFSET;
+        int regionStart = 0;
+
+        int length = place.length();
+        int i = 0;
+        int distance = 0;
+        while (i < length && i < MAX_DISTANCE_DIGITS && isDigit(place.charAt(i))) {
+            distance = distance * 10 + place.charAt(i) - '0';
+            i++;
+        }
+        // leading zeros would not be given back
+        boolean validDistance = i > 0 && (i == 1 || place.charAt(0) != '0')
+                && (i == length || !isDigit(place.charAt(i)));
+        if (validDistance) {
+            int spaced = 0;
+            if (place.startsWith(" km ", i)) {
+                spaced = SPACED;
+                i += 4;
+            } else if (place.startsWith("km ", i)) {
+                i += 3;
+            } else {
+                i = -1;
+            }
+            int direction = i < 0 ? -1 : findDirection(place, i);
+            if (direction >= 0) {
+                i += DIRECTIONS[direction].length();
+                if (place.startsWith(" of ", i) && i + 4 < length) {
+                    offset = distance << DISTANCE_SHIFT | spaced | direction;
+                    regionStart = i + 4;
+                }
+            }
+        }
+
+        int regionId = intern(regionStart == 0 ? place : place.substring(regionStart));
+        return (long) offset << 32 | (regionId & 0xffffffffL);
+    }
+
+    /**
+     * Returns the offset token of tokens returned by {@link #tokenize(String)}
+     */
+    static int getOffset(long tokens) {
+        return (int) (tokens >> 32);
+    }
+
+    /**
+     * Returns the region id of tokens returned by {@link #tokenize(String)}
+     */
+    static int getRegionId(long tokens) {
+        return (int) tokens;
+    }
+
+    /**
+     * Returns the region of an id
+     *
+     * @param regionId region id
+     * @return region, the same String instance for every place of the region
+     */
+    public static String getRegion(int regionId) {
+        return sRegions[regionId];
+    }
+
+    /**
+     * Returns the id of a region, for example to filter the rows of a store by region
+     *
+     * @param region region, like "Yelizovo, Russia"
+     * @return region id, -1 if no place of the region was ever tokenized
+     */
+    public static int findRegion(String region) {
+        Integer id = sRegionIds.get(region);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the number of regions in the dictionary
+     *
+     * @return number of regions
+     */
+    public static int getRegionCount() {
+        synchronized (sLock) {
+            return sRegionCount;
+        }
+    }
+
+    /**
+     * Returns the distance of an offset token
+     *
+     * @param offset offset token
+     * @return distance in km, -1 for {@link #NO_OFFSET}
+     */
+    public static int getDistance(int offset) {
+        return offset == NO_OFFSET ? -1 : offset >>> DISTANCE_SHIFT;
+    }
+
+    /**
+     * Returns the direction of an offset token
+     *
+     * @param offset offset token
+     * @return compass point like "SSW", null for {@link #NO_OFFSET}
+     */
+    public static String getDirection(int offset) {
+        return offset == NO_OFFSET ? null : DIRECTIONS[offset & (DIRECTIONS.length - 1)];
+    }
+
+    /**
+     * Returns the location offset of an offset token, like "N km SSW of"
+     *
+     * @param offset offset token, not {@link #NO_OFFSET}
+     * @return location offset
+     */
+    public static String formatOffset(int offset) {
+        return getDistance(offset) + ((offset & SPACED) != 0 ? " km " : "km ")
+                + getDirection(offset) + " of";
+    }
+
+    /**
+     * Builds the place of tokens
+     *
+     * @param offset   offset token
+     * @param regionId region id
+     * @return place, as it was tokenized
+     */
+    public static String toPlace(int offset, int regionId) {
+        if (offset == NO_OFFSET) {
+            return getRegion(regionId);
+        }
+        return formatOffset(offset) + ' ' + getRegion(regionId);
+    }
+
+    private static int intern(String region) {
+        Integer id = sRegionIds.get(region);
+        if (id != null) {
+            return id;
+        }
+        synchronized (sLock) {
+            id = sRegionIds.get(region);
+            if (id != null) {
+                return id;
+            }
+            String[] regions = sRegions;
+            if (sRegionCount == regions.length) {
+                regions = Arrays.copyOf(regions, regions.length * 2);
+            }
+            regions[sRegionCount] = region;
+            // published before the id so a reader given the id finds the region
+            sRegions = regions;
+            sRegionIds.put(region, sRegionCount);
+            return sRegionCount++;
+        }
+    }
+
+    /**
+     * Returns the index of the compass point starting at a position and followed by a space
+     */
+    private static int findDirection(String place, int start) {
+        int end = place.indexOf(' ', start);
+        if (end < 0) {
+            return -1;
+        }
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            String direction = DIRECTIONS[d];
+            if (direction.length() == end - start && place.startsWith(direction, start)) {
+                return d;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Fetches several usgs queries at once, for example one per monitored region or magnitude band,
+ * and merges their earthquakes into one list ordered from the newest to the oldest.
+ *
+ * Every query is fetched and stream-parsed on its own thread of the given executor, so the whole
+ * fan-out takes about as long as the slowest query instead of the sum of all of them.
+ */
+public final class QueryFanOut {
+
+    private static final String LOG_TAG = QueryFanOut.class.getSimpleName();
+
+    /**
+     * Create a private constructor because no one should ever create a {@link QueryFanOut}
+     * object.
+     */
+    private QueryFanOut() {
+    }
+
+    /**
+     * Fetches the queries concurrently and merges their earthquakes, see
+     * {@link EarthquakeStore#merge(List)}. A query that fails is left out of the result, the
+     * queries should be ordered by time, the usgs default.
+     *
+     * @param requestUrls string usgs urls of the queries
+     * @param executor    executor {@link ExecutorService} fetching the queries, its number of
+     *                    threads bounds the number of requests in flight
+     * @param cache       cache {@link EarthquakeCache} of parsed responses, may be null
+     * @return merged earthquakes or null if nothing could be fetched
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the
+     *                              queries, the queries still running are then cancelled
+     */
+    public static EarthquakeStore fetchAll(List<String> requestUrls, ExecutorService executor,
+                                           final EarthquakeCache cache)
+            throws InterruptedException {
+        List<Future<EarthquakeStore>> futures = new ArrayList<>(requestUrls.size());
+        List<EarthquakeStore> results = new ArrayList<>(requestUrls.size());
+        try {
+            for (final String requestUrl : requestUrls) {
+                futures.add(executor.submit(new Callable<EarthquakeStore>() {
+                    @Override
+                    public EarthquakeStore call() {
+                        return QueryUtils.fetchEarthquakesData(requestUrl, cache);
+                    }
+                }));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    QueryLog.e(LOG_TAG, "Problem fetching " + requestUrls.get(i), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<EarthquakeStore> future : futures) {
+                future.cancel(true);
+            }
+            throw e;
+        }
+
+        EarthquakeStore earthquakes = EarthquakeStore.merge(results);
+        if (earthquakes.isEmpty()) {
+            return null;
+        }
+        return earthquakes;
+    }
+}
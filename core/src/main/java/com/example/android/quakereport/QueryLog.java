@@ -0,0 +1,59 @@
+package com.example.android.quakereport;
+
+/**
+ * Logging of the fetch and parse code. Messages are written to standard error until another
+ * {@link Backend} is set, the Android app sets one writing to android.util.Log.
+ */
+public final class QueryLog {
+
+    /**
+     * Destination of the log messages
+     */
+    public interface Backend {
+
+        /**
+         * Logs an error
+         *
+         * @param tag       tag of the class logging the message
+         * @param message   message to log
+         * @param throwable exception to log or null
+         */
+        void e(String tag, String message, Throwable throwable);
+    }
+
+    // backend writing to standard error, used when no other backend is set
+    private static final Backend STANDARD_ERROR = new Backend() {
+        @Override
+        public void e(String tag, String message, Throwable throwable) {
+            System.err.println("E/" + tag + ": " + message);
+            if (throwable != null) {
+                throwable.printStackTrace();
+            }
+        }
+    };
+
+    private static volatile Backend sBackend = STANDARD_ERROR;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link QueryLog} object.
+     */
+    private QueryLog() {
+    }
+
+    /**
+     * Sets the backend all messages are written to
+     *
+     * @param backend backend {@link Backend}, null to write to standard error again
+     */
+    public static void setBackend(Backend backend) {
+        sBackend = backend == null ? STANDARD_ERROR : backend;
+    }
+
+    static void e(String tag, String message) {
+        sBackend.e(tag, message, null);
+    }
+
+    static void e(String tag, String message, Throwable throwable) {
+        sBackend.e(tag, message, throwable);
+    }
+}
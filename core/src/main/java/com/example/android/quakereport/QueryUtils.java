@@ -0,0 +1,922 @@
+
+package com.example.android.quakereport;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+
+/**
+ * Helper methods related to requesting and receiving earthquake data from USGS.
+ */
+public final class QueryUtils {
+
+    private static final String LOG_TAG = QueryUtils.class.getSimpleName();
+
+    // properties.status of an event that has been deleted, only sent with includedeleted=true
+    private static final String STATUS_DELETED = "deleted";
+
+    // format of the time parameters of a usgs query
+    private static final String QUERY_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS";
+
+    // formats of the time parameters accepted by usgs, tried in this order
+    private static final String[] QUERY_TIME_FORMATS = {QUERY_TIME_FORMAT,
+            "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd'T'HH:mm", "yyyy-MM-dd"};
+
+    // format of the dates of HTTP headers
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    // timeouts, retries and retry delay of the default http client
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+    private static final int MAX_RETRIES = 2;
+    private static final long RETRY_BASE_DELAY_MILLIS = 500;
+
+    // client sending every request, replaceable to tune timeouts or talk to a stub server
+    private static volatile HttpClient sHttpClient = new HttpClient(CONNECT_TIMEOUT_MILLIS,
+            READ_TIMEOUT_MILLIS, MAX_RETRIES, RETRY_BASE_DELAY_MILLIS);
+
+    // time a response is reused for by identical requests, and number of responses kept
+    private static final long RECENT_RESPONSE_TTL_MILLIS = 10 * 1000;
+    private static final int MAX_RECENT_RESPONSES = 4;
+
+    // shares the responses of identical requests made at the same time or shortly after
+    private static final RequestCoalescer sCoalescer = new RequestCoalescer(
+            RECENT_RESPONSE_TTL_MILLIS, MAX_RECENT_RESPONSES);
+
+    /**
+     * Decodes the response while it is read from the connection, see
+     * {@link #extractEarthquakes(InputStream)}
+     */
+    public static final EarthquakeParser STREAMING_PARSER = new EarthquakeParser() {
+        @Override
+        public EarthquakeStore parse(InputStream inputStream) throws IOException {
+            return extractEarthquakes(inputStream);
+        }
+    };
+
+    /**
+     * Reads the whole response into a String first and parses it with
+     * {@link #extractEarthquakes(String)}
+     */
+    public static final EarthquakeParser TREE_PARSER = new EarthquakeParser() {
+        @Override
+        public EarthquakeStore parse(InputStream inputStream) throws IOException {
+            String jsonResponse = readFromStream(inputStream);
+            if (jsonResponse.isEmpty()) {
+                return null;
+            }
+            return new EarthquakeStore(extractEarthquakes(jsonResponse));
+        }
+    };
+
+    /**
+     * Create a private constructor because no one should ever create a {@link QueryUtils} object.
+     * This class is only meant to hold static variables and methods, which can be accessed
+     * directly from the class name QueryUtils (and an object instance of QueryUtils is not needed).
+     */
+    private QueryUtils() {
+    }
+
+    /**
+     * Returns the client sending the requests
+     *
+     * @return client {@link HttpClient}
+     */
+    static HttpClient getHttpClient() {
+        return sHttpClient;
+    }
+
+    /**
+     * Replaces the client sending the requests
+     *
+     * @param httpClient client {@link HttpClient}, null to restore the default one
+     */
+    public static void setHttpClient(HttpClient httpClient) {
+        sHttpClient = httpClient != null ? httpClient : new HttpClient(CONNECT_TIMEOUT_MILLIS,
+                READ_TIMEOUT_MILLIS, MAX_RETRIES, RETRY_BASE_DELAY_MILLIS);
+    }
+
+    /**
+     * Return a list of {@link Earthquake} objects that has been built up from
+     * parsing a JSON response.
+     */
+    public static ArrayList<Earthquake> extractEarthquakes(String jsonString) {
+
+        // Create an empty ArrayList that we can start adding earthquakes to
+        ArrayList<Earthquake> earthquakes = new ArrayList<>();
+
+        // Try to parse the SAMPLE_JSON_RESPONSE. If there's a problem with the way the JSON
+        // is formatted, a JSONException exception object will be thrown.
+        // Catch the exception so the app doesn't crash, and print the error message to the logs.
+        try {
+
+            // Parse the response given by the SAMPLE_JSON_RESPONSE string and
+            // build up a list of Earthquake objects with the corresponding data.
+
+            // get root JSON object
+            JSONObject rootJSONObject = new JSONObject(jsonString);
+
+            // get features JSON array
+            JSONArray features = rootJSONObject.optJSONArray("features");
+
+            // loop through the array to get magnitude, location and time of occurrence of each
+            // earthquake
+            for (int i = 0, n = features.length() ; i < n ; i++) {
+                // get current JSON object
+                JSONObject earthquake = features.optJSONObject(i);
+
+                // get properties of current earthquake
+                JSONObject properties = earthquake.optJSONObject("properties");
+
+                // get magnitude, location and time of occurrence of earthquake at current position
+                // and give this value to earthquake object
+                double magnitude = properties.optDouble("mag");
+                String place = properties.optString("place");
+                long timeInMillis = properties.optLong("time");
+                String url = properties.optString("url");
+
+                // get event id of the earthquake, used to recognize it in other responses
+                String id = earthquake.optString("id", null);
+
+                // get epicenter of the earthquake, coordinates are longitude, latitude and depth
+                double latitude = Double.NaN;
+                double longitude = Double.NaN;
+                JSONObject geometry = earthquake.optJSONObject("geometry");
+                JSONArray coordinates = geometry == null ? null
+                        : geometry.optJSONArray("coordinates");
+                if (coordinates != null) {
+                    longitude = coordinates.optDouble(0);
+                    latitude = coordinates.optDouble(1);
+                }
+
+                earthquakes.add(new Earthquake(id, magnitude, place, timeInMillis, url,
+                        latitude, longitude));
+            }
+        } catch (JSONException e) {
+            // If an error is thrown when executing any of the above statements in the "try" block,
+            // catch the exception here, so the app doesn't crash. Print a log message
+            // with the message from the exception.
+            QueryLog.e("QueryUtils", "Problem parsing the earthquake JSON results", e);
+        }
+
+        // Return the list of earthquakes
+        return earthquakes;
+    }
+
+    /**
+     * Return an {@link EarthquakeStore} decoded directly from a GeoJSON stream.
+     * Only features[].id, features[].geometry.coordinates and
+     * features[].properties.{mag,place,time,url} are read, every other
+     * field is skipped without being materialized, so the response never has to be held in
+     * memory as a whole. Rows are appended to the store as they are read, no {@link Earthquake}
+     * object is created. Deleted events are left out.
+     *
+     * @param inputStream GeoJSON response stream {@link InputStream}
+     * @return earthquakes parsed so far
+     * @throws IOException if the stream cannot be read or is not valid JSON
+     */
+    public static EarthquakeStore extractEarthquakes(InputStream inputStream)
+            throws IOException {
+        EarthquakeStore earthquakes = new EarthquakeStore();
+        readFeatures(inputStream, earthquakes, null, 0, null);
+        return earthquakes;
+    }
+
+    /**
+     * Receives the earthquakes of a response chunk by chunk
+     */
+    public interface ChunkListener {
+
+        /**
+         * Called with every chunk of earthquakes, in the order of the response
+         *
+         * @param earthquakes earthquakes {@link EarthquakeStore} of the chunk, a new store for
+         *                    every chunk
+         * @throws IOException to stop reading the response
+         */
+        void onChunk(EarthquakeStore earthquakes) throws IOException;
+    }
+
+    /**
+     * Reads the earthquakes of a GeoJSON stream like {@link #extractEarthquakes(InputStream)},
+     * handing them to a listener in chunks instead of returning them all, so the memory used
+     * does not depend on the size of the response
+     *
+     * @param inputStream GeoJSON response stream {@link InputStream}
+     * @param chunkSize   maximum number of earthquakes per chunk
+     * @param listener    listener {@link ChunkListener} of the chunks
+     * @return number of earthquakes read
+     * @throws IOException if the stream cannot be read or is not valid JSON, or if the listener
+     *                     threw it
+     */
+    public static int extractEarthquakes(InputStream inputStream, int chunkSize,
+                                         ChunkListener listener) throws IOException {
+        return readFeatures(inputStream, new EarthquakeStore(chunkSize), null, chunkSize,
+                listener);
+    }
+
+    /**
+     * Return the {@link EarthquakeChanges} decoded from the GeoJSON response of a query with the
+     * updatedafter and includedeleted parameters, like
+     * {@link #extractEarthquakes(InputStream)} but also reading properties.{updated,status}
+     *
+     * @param inputStream GeoJSON response stream {@link InputStream}
+     * @return changes parsed so far
+     * @throws IOException if the stream cannot be read or is not valid JSON
+     */
+    public static EarthquakeChanges extractChanges(InputStream inputStream) throws IOException {
+        EarthquakeChanges changes = new EarthquakeChanges();
+        readFeatures(inputStream, changes.getUpserts(), changes, 0, null);
+        return changes;
+    }
+
+    /**
+     * Reads the features of a GeoJSON stream
+     *
+     * @param inputStream GeoJSON response stream {@link InputStream}
+     * @param earthquakes store {@link EarthquakeStore} to append the earthquakes to
+     * @param changes     changes {@link EarthquakeChanges} recording deletions and update times,
+     *                    null to only skip deleted events
+     * @param chunkSize   number of earthquakes handed to the listener at once
+     * @param listener    listener {@link ChunkListener} the earthquakes are handed to in chunks
+     *                    of new stores, null to append them all to the given store
+     * @return number of earthquakes read
+     * @throws IOException if the stream cannot be read or is not valid JSON
+     */
+    private static int readFeatures(InputStream inputStream, EarthquakeStore earthquakes,
+                                    EarthquakeChanges changes, int chunkSize,
+                                    ChunkListener listener) throws IOException {
+        Feature feature = new Feature();
+        int count = 0;
+        // features read, the skipped ones included
+        int featureCount = 0;
+
+        JsonReader jsonReader = new JsonReader(new InputStreamReader(inputStream,
+                Charset.forName("UTF-8")));
+        try {
+            // walk the root object until the features array is found
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                String name = jsonReader.nextName();
+                if (name.equals("features") && jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+                    jsonReader.beginArray();
+                    while (jsonReader.hasNext()) {
+                        readFeature(jsonReader, feature);
+                        featureCount++;
+                        if (!feature.hasProperties) {
+                            continue;
+                        }
+                        if (feature.malformed) {
+                            QueryLog.e(LOG_TAG, "Skipping earthquake with malformed properties "
+                                    + feature.id);
+                            continue;
+                        }
+
+                        if (changes != null) {
+                            changes.addUpdateTime(feature.updatedInMillis);
+                        }
+                        if (!STATUS_DELETED.equals(feature.status)) {
+                            earthquakes.add(feature.id, feature.magnitude, feature.place,
+                                    feature.timeInMillis, feature.url, feature.latitude,
+                                    feature.longitude);
+                            if (changes != null) {
+                                changes.addUpsertUpdateTime(feature.updatedInMillis);
+                            }
+                            count++;
+                            if (listener != null && earthquakes.size() >= chunkSize) {
+                                listener.onChunk(earthquakes);
+                                earthquakes = new EarthquakeStore(chunkSize);
+                            }
+                        } else if (changes != null && feature.id != null) {
+                            changes.addDeletion(feature.id);
+                        }
+                    }
+                    jsonReader.endArray();
+                } else {
+                    jsonReader.skipValue();
+                }
+            }
+            jsonReader.endObject();
+            if (changes != null) {
+                changes.setComplete();
+            }
+        } catch (IllegalStateException | NumberFormatException e) {
+            // JsonReader throws IllegalStateException when a token is not of the expected type,
+            // and NumberFormatException when a number cannot be read
+            QueryLog.e(LOG_TAG, "Problem parsing the earthquake JSON results", e);
+        } finally {
+            jsonReader.close();
+        }
+
+        if (listener == null) {
+            earthquakes.setResponseFeatureCount(featureCount);
+        }
+
+        // the last chunk, the earthquakes parsed before an error included
+        if (listener != null && !earthquakes.isEmpty()) {
+            listener.onChunk(earthquakes);
+        }
+        return count;
+    }
+
+    /**
+     * Reads a single feature object into the given holder, the id of a feature can come before
+     * or after its properties
+     *
+     * @param jsonReader reader positioned at the start of a feature object
+     * @param feature    holder {@link Feature} of the fields read, reset first
+     * @throws IOException if the stream cannot be read
+     */
+    private static void readFeature(JsonReader jsonReader, Feature feature) throws IOException {
+        feature.reset();
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+            JsonToken token = jsonReader.peek();
+            if (name.equals("properties") && token == JsonToken.BEGIN_OBJECT) {
+                readProperties(jsonReader, feature);
+            } else if (name.equals("geometry") && token == JsonToken.BEGIN_OBJECT) {
+                readGeometry(jsonReader, feature);
+            } else if (name.equals("id") && token == JsonToken.STRING) {
+                feature.id = jsonReader.nextString();
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+    }
+
+    /**
+     * Reads the epicenter out of a feature's point geometry, coordinates are longitude, latitude
+     * and depth
+     *
+     * @param jsonReader reader positioned at the start of a geometry object
+     * @param feature    holder {@link Feature} of the fields read
+     * @throws IOException if the stream cannot be read
+     */
+    private static void readGeometry(JsonReader jsonReader, Feature feature) throws IOException {
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            if (jsonReader.nextName().equals("coordinates")
+                    && jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+                jsonReader.beginArray();
+                if (jsonReader.hasNext() && jsonReader.peek() == JsonToken.NUMBER) {
+                    feature.longitude = jsonReader.nextDouble();
+                }
+                if (jsonReader.hasNext() && jsonReader.peek() == JsonToken.NUMBER) {
+                    feature.latitude = jsonReader.nextDouble();
+                }
+                // depth and anything after it
+                while (jsonReader.hasNext()) {
+                    jsonReader.skipValue();
+                }
+                jsonReader.endArray();
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+    }
+
+    /**
+     * Reads magnitude, place, time, url, update time and status out of a feature's properties
+     * object
+     *
+     * @param jsonReader reader positioned at the start of a properties object
+     * @param feature    holder {@link Feature} of the fields read
+     * @throws IOException if the stream cannot be read
+     */
+    private static void readProperties(JsonReader jsonReader, Feature feature)
+            throws IOException {
+        feature.hasProperties = true;
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+
+            // null values keep their defaults
+            if (jsonReader.peek() == JsonToken.NULL) {
+                jsonReader.skipValue();
+                continue;
+            }
+
+            try {
+                switch (name) {
+                    case "mag":
+                        feature.magnitude = jsonReader.nextDouble();
+                        break;
+                    case "place":
+                        feature.place = jsonReader.nextString();
+                        break;
+                    case "time":
+                        feature.timeInMillis = jsonReader.nextLong();
+                        break;
+                    case "url":
+                        feature.url = jsonReader.nextString();
+                        break;
+                    case "updated":
+                        feature.updatedInMillis = jsonReader.nextLong();
+                        break;
+                    case "status":
+                        feature.status = jsonReader.nextString();
+                        break;
+                    default:
+                        jsonReader.skipValue();
+                        break;
+                }
+            } catch (NumberFormatException e) {
+                // a number that is not one, like a string magnitude or a fractional time, the
+                // value is left unread so it is skipped and the feature is dropped
+                jsonReader.skipValue();
+                feature.malformed = true;
+            }
+        }
+        jsonReader.endObject();
+    }
+
+    /**
+     * Fetches earthquake data from the given url using the streaming parser
+     *
+     * @param requestUrl string usgs url
+     * @return list of earthquakes, empty if the response has none, null if nothing could be
+     * fetched
+     */
+    public static EarthquakeStore fetchEarthquakesData(String requestUrl) {
+        return fetchEarthquakesData(requestUrl, true);
+    }
+
+    /**
+     * Fetches earthquake data from the given url
+     *
+     * @param requestUrl         string usgs url
+     * @param useStreamingParser true to decode the response while it is read from the connection,
+     *                           false to read the whole response into a String first and parse it
+     *                           with {@link #extractEarthquakes(String)}
+     * @return list of earthquakes, empty if the response has none, null if nothing could be
+     * fetched
+     */
+    public static EarthquakeStore fetchEarthquakesData(String requestUrl,
+                                                       boolean useStreamingParser) {
+        return fetchEarthquakesData(requestUrl, getParser(useStreamingParser), null);
+    }
+
+    /**
+     * Fetches earthquake data from the given url using the streaming parser, revalidating the
+     * response cached for the url instead of downloading it again when possible
+     *
+     * @param requestUrl string usgs url
+     * @param cache      cache {@link EarthquakeCache} of parsed responses, may be null
+     * @return list of earthquakes, empty if the response has none, null if nothing could be
+     * fetched
+     */
+    public static EarthquakeStore fetchEarthquakesData(String requestUrl,
+                                                       EarthquakeCache cache) {
+        return fetchEarthquakesData(requestUrl, STREAMING_PARSER, cache);
+    }
+
+    /**
+     * Fetches earthquake data from the given url. If a cache is given the request carries the
+     * validators of the cached response: a 304 answer returns the cached earthquakes, a new
+     * response replaces them, and the cached earthquakes are also returned when the request fails.
+     *
+     * @param requestUrl         string usgs url
+     * @param useStreamingParser see {@link #fetchEarthquakesData(String, boolean)}
+     * @param cache              cache {@link EarthquakeCache} of parsed responses, may be null
+     * @return list of earthquakes, empty if the response has none, null if nothing could be
+     * fetched
+     */
+    public static EarthquakeStore fetchEarthquakesData(String requestUrl,
+                                                       boolean useStreamingParser,
+                                                       EarthquakeCache cache) {
+        return fetchEarthquakesData(requestUrl, getParser(useStreamingParser), cache);
+    }
+
+    /**
+     * Fetches earthquake data from the given url, decoding the response with the given parser.
+     * If a cache is given the request carries the validators of the cached response, see
+     * {@link #fetchEarthquakesData(String, boolean, EarthquakeCache)}.
+     *
+     * Requests parsed by {@link #STREAMING_PARSER} or {@link #TREE_PARSER} are coalesced: a
+     * request for the same url and cache as one already running waits for its response instead
+     * of making its own, and a response is reused for a few seconds, see
+     * {@link RequestCoalescer}. Only responses of the server are shared, a request that fails
+     * falls back to the cache on its own.
+     *
+     * @param requestUrl string usgs url
+     * @param parser     JSON backend {@link EarthquakeParser} decoding the response
+     * @param cache      cache {@link EarthquakeCache} of parsed responses, may be null
+     * @return list of earthquakes, empty if the response has none, null if nothing could be
+     * fetched
+     */
+    public static EarthquakeStore fetchEarthquakesData(final String requestUrl,
+                                                       final EarthquakeParser parser,
+                                                       final EarthquakeCache cache) {
+        // Create a URL object
+        final URL url = createUrl(requestUrl);
+
+        EarthquakeStore earthquakes;
+        if (url == null || (parser != STREAMING_PARSER && parser != TREE_PARSER)) {
+            // other parsers may keep state of their own, their requests are always made
+            earthquakes = fetchFromServer(url, parser, cache);
+        } else {
+            // both parsers return the same earthquakes, the url identifies the response, and
+            // the cache as the response is stored in it
+            String key = cache == null ? requestUrl
+                    : requestUrl + '\n' + cache.getDirectory().getPath();
+            earthquakes = sCoalescer.fetch(key, new Callable<EarthquakeStore>() {
+                @Override
+                public EarthquakeStore call() {
+                    return fetchFromServer(url, parser, cache);
+                }
+            });
+        }
+
+        // fall back to the cached earthquakes if the request failed
+        if (earthquakes == null && cache != null && url != null) {
+            EarthquakeCache.Entry cacheEntry = cache.get(url.toString());
+            if (cacheEntry != null) {
+                earthquakes = cacheEntry.getEarthquakes();
+            }
+        }
+
+        return earthquakes;
+    }
+
+    /**
+     * Forgets the responses kept for identical requests, the next requests are made again
+     */
+    public static void clearRecentResponses() {
+        sCoalescer.clear();
+    }
+
+    /**
+     * Sends the request of {@link #fetchEarthquakesData(String, EarthquakeParser,
+     * EarthquakeCache)} to the server, revalidating the cached response if there is one
+     *
+     * @return earthquakes of the response, or of the cache for a 304 response, null if the
+     * request failed
+     */
+    private static EarthquakeStore fetchFromServer(URL url, EarthquakeParser parser,
+                                                   EarthquakeCache cache) {
+        if (url == null) {
+            return null;
+        }
+
+        EarthquakeCache.Entry cacheEntry = null;
+        if (cache != null) {
+            cacheEntry = cache.get(url.toString());
+        }
+
+        // Perform HTTP request to the URL and parse the response
+        try {
+            return makeHttpRequest(url, parser, cache, cacheEntry);
+        } catch (IOException e) {
+            QueryLog.e(LOG_TAG, "Problem retrieving data from usgs", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the given usgs url with its offset and limit parameters replaced, to request a
+     * single page of the query. The offset and limit of the query itself are kept: pages start
+     * at the offset of the query and stop at its limit.
+     *
+     * @param requestUrl string usgs url
+     * @param offset     index of the first event of the page within the query, starts at 1
+     * @param limit      maximum number of events in the page
+     * @return string url of the page, null if the page starts past the limit of the query
+     */
+    public static String buildPageUrl(String requestUrl, int offset, int limit) {
+        int queryOffset = getIntParameter(requestUrl, "offset", 1);
+        int queryLimit = getIntParameter(requestUrl, "limit", Integer.MAX_VALUE);
+        if (offset - 1 >= queryLimit) {
+            return null;
+        }
+        StringBuilder pageUrl = removeParameters(requestUrl, "offset", "limit");
+        pageUrl.append("offset=").append(queryOffset + offset - 1)
+                .append("&limit=").append(Math.min(limit, queryLimit - (offset - 1)));
+        return pageUrl.toString();
+    }
+
+    /**
+     * Returns the given usgs url asking only for the events added, updated or deleted after the
+     * given time, deleted events are returned with the status "deleted". The offset and limit of
+     * the query are dropped, they would cut the changes instead of the events of the query.
+     *
+     * @param requestUrl         string usgs url
+     * @param updatedAfterMillis time in milliseconds of the newest update already known
+     * @return string url of the delta query
+     */
+    public static String buildDeltaUrl(String requestUrl, long updatedAfterMillis) {
+        StringBuilder deltaUrl = removeParameters(requestUrl, "updatedafter", "includedeleted",
+                "offset", "limit");
+        deltaUrl.append("updatedafter=").append(formatQueryTime(updatedAfterMillis))
+                .append("&includedeleted=true");
+        return deltaUrl.toString();
+    }
+
+    /**
+     * Formats a time as the value of a usgs time parameter, like starttime or updatedafter
+     *
+     * @param timeInMillis time in milliseconds
+     * @return UTC time with milliseconds, like "2016-08-01T12:30:00.000"
+     */
+    public static String formatQueryTime(long timeInMillis) {
+        SimpleDateFormat timeFormat = new SimpleDateFormat(QUERY_TIME_FORMAT, Locale.US);
+        timeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return timeFormat.format(new Date(timeInMillis));
+    }
+
+    /**
+     * Copies the given usgs url without the given parameters, ready for more parameters to be
+     * appended
+     *
+     * @param requestUrl string usgs url
+     * @param names      names of the parameters to remove
+     * @return url ending with '?' or '&'
+     */
+    private static StringBuilder removeParameters(String requestUrl, String... names) {
+        StringBuilder url = new StringBuilder();
+
+        int queryStart = requestUrl.indexOf('?');
+        if (queryStart < 0) {
+            url.append(requestUrl).append('?');
+            return url;
+        }
+
+        // copy every parameter except the removed ones
+        url.append(requestUrl, 0, queryStart + 1);
+        for (String parameter : requestUrl.substring(queryStart + 1).split("&")) {
+            if (parameter.isEmpty() || hasName(parameter, names)) {
+                continue;
+            }
+            url.append(parameter).append('&');
+        }
+        return url;
+    }
+
+    /**
+     * Returns the decoded value of a parameter of a usgs url
+     *
+     * @param requestUrl string usgs url
+     * @param name       name of the parameter
+     * @return value of the parameter or null if the url does not have it
+     */
+    public static String getParameter(String requestUrl, String name) {
+        int queryStart = requestUrl.indexOf('?');
+        if (queryStart < 0) {
+            return null;
+        }
+        for (String parameter : requestUrl.substring(queryStart + 1).split("&")) {
+            if (parameter.startsWith(name + "=")) {
+                try {
+                    return URLDecoder.decode(parameter.substring(name.length() + 1), "UTF-8");
+                } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+                    QueryLog.e(LOG_TAG, "Problem decoding the parameter " + parameter, e);
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value of a positive integer parameter of a usgs url
+     *
+     * @param requestUrl   string usgs url
+     * @param name         name of the parameter
+     * @param defaultValue value returned if the url does not have a valid one
+     * @return value of the parameter
+     */
+    private static int getIntParameter(String requestUrl, String name, int defaultValue) {
+        String value = getParameter(requestUrl, name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int intValue = Integer.parseInt(value);
+            // usgs rejects the query otherwise
+            return intValue > 0 ? intValue : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Parses a time parameter of a usgs query, like "2016-01-31" or "2016-01-31T12:00:00",
+     * always in UTC, with or without a trailing "Z"
+     *
+     * @param time value of the parameter
+     * @return time in milliseconds, -1 if it cannot be parsed
+     */
+    public static long parseQueryTime(String time) {
+        if (time.endsWith("Z")) {
+            time = time.substring(0, time.length() - 1);
+        }
+        for (String pattern : QUERY_TIME_FORMATS) {
+            SimpleDateFormat timeFormat = new SimpleDateFormat(pattern, Locale.US);
+            timeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+            timeFormat.setLenient(false);
+            try {
+                Date date = timeFormat.parse(time);
+                // the whole value must match, "2016-01-31T12" is not a date
+                if (timeFormat.format(date).length() == time.length()) {
+                    return date.getTime();
+                }
+            } catch (ParseException e) {
+                // try the next format
+            }
+        }
+        return -1;
+    }
+
+    private static boolean hasName(String parameter, String[] names) {
+        for (String name : names) {
+            if (parameter.startsWith(name + "=")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the built-in parser matching the flag of the boolean overloads
+     *
+     * @param useStreamingParser see {@link #fetchEarthquakesData(String, boolean)}
+     * @return {@link #STREAMING_PARSER} or {@link #TREE_PARSER}
+     */
+    private static EarthquakeParser getParser(boolean useStreamingParser) {
+        return useStreamingParser ? STREAMING_PARSER : TREE_PARSER;
+    }
+
+    /**
+     * Creates a url object from input string
+     *
+     * @param stringUrl string usgs url
+     * @return URL object {@link URL}
+     */
+    private static URL createUrl(String stringUrl) {
+        URL url = null;
+        try {
+            url = new URL(stringUrl);
+        } catch (MalformedURLException e) {
+            e.printStackTrace();
+        }
+        return url;
+    }
+
+    /**
+     * Performs the http request and parses the response
+     *
+     * @param url        usgs url {@link URL}
+     * @param parser     JSON backend {@link EarthquakeParser} decoding the response
+     * @param cache      cache to store the parsed response in, may be null
+     * @param cacheEntry cached response to revalidate, may be null
+     * @return list of earthquakes or null if the request failed
+     * @throws IOException if the request failed after its retries
+     */
+    private static EarthquakeStore makeHttpRequest(final URL url, final EarthquakeParser parser,
+                                                   final EarthquakeCache cache,
+                                                   final EarthquakeCache.Entry cacheEntry)
+            throws IOException {
+        // if url is null return early
+        if (url == null)
+            return null;
+
+        // ask the server to only send the response if it changed since it was cached
+        Map<String, String> requestHeaders = new HashMap<>();
+        if (cacheEntry != null) {
+            if (cacheEntry.getETag() != null) {
+                requestHeaders.put("If-None-Match", cacheEntry.getETag());
+            }
+            if (cacheEntry.getLastModified() > 0) {
+                requestHeaders.put("If-Modified-Since",
+                        formatHttpDate(cacheEntry.getLastModified()));
+            }
+        }
+
+        return sHttpClient.get(url, requestHeaders,
+                new HttpClient.ResponseHandler<EarthquakeStore>() {
+                    @Override
+                    public EarthquakeStore onResponse(HttpURLConnection connection,
+                                                      int responseCode, InputStream body)
+                            throws IOException {
+                        if (responseCode == HttpURLConnection.HTTP_OK) {
+                            long parseStart = Metrics.startTime();
+                            long allocatedStart = Metrics.startAllocations();
+                            EarthquakeStore earthquakes = parser.parse(body);
+                            Metrics.recordTime(Metrics.PARSE, parseStart);
+                            Metrics.recordAllocations(Metrics.PARSE_ALLOCATED_BYTES,
+                                    allocatedStart);
+                            if (cache != null && earthquakes != null) {
+                                cache.put(url.toString(), earthquakes,
+                                        connection.getHeaderField("ETag"),
+                                        connection.getLastModified());
+                            }
+                            return earthquakes;
+                        }
+                        if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED
+                                && cacheEntry != null) {
+                            // cached response is still valid
+                            cache.touch(url.toString());
+                            return cacheEntry.getEarthquakes();
+                        }
+                        QueryLog.e(LOG_TAG, "Error response code: " + responseCode);
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * Formats a time as an HTTP date, like "Sun, 06 Nov 1994 08:49:37 GMT"
+     *
+     * @param timeInMillis time in milliseconds
+     * @return HTTP date
+     */
+    private static String formatHttpDate(long timeInMillis) {
+        SimpleDateFormat httpDateFormat = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+        httpDateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return httpDateFormat.format(new Date(timeInMillis));
+    }
+
+    /**
+     * Reads json string from inputStream, package private for the benchmark module
+     *
+     * @param inputStream {@link InputStream}
+     * @return json string
+     * @throws IOException
+     */
+    static String readFromStream(InputStream inputStream) throws IOException {
+        StringBuilder output = new StringBuilder();
+        if (inputStream != null) {
+            InputStreamReader inputStreamReader = new InputStreamReader(inputStream,
+                    Charset.forName("UTF-8"));
+            BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
+            String line = bufferedReader.readLine();
+            while (line != null) {
+                output.append(line);
+                line = bufferedReader.readLine();
+            }
+        }
+
+        return output.toString();
+    }
+
+    /**
+     * Fields of the feature being read by the streaming parser, reused for every feature
+     */
+    private static final class Feature {
+        // true once a properties object has been read
+        boolean hasProperties;
+        // true if a numeric property could not be read
+        boolean malformed;
+        String id;
+        double magnitude;
+        String place;
+        long timeInMillis;
+        String url;
+        long updatedInMillis;
+        String status;
+        double latitude;
+        double longitude;
+
+        void reset() {
+            // same defaults as the optDouble/optString/optLong calls of the tree based parser
+            hasProperties = false;
+            malformed = false;
+            id = null;
+            magnitude = Double.NaN;
+            place = "";
+            timeInMillis = 0;
+            url = "";
+            updatedInMillis = 0;
+            status = null;
+            latitude = Double.NaN;
+            longitude = Double.NaN;
+        }
+    }
+}
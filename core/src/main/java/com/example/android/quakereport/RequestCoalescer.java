@@ -0,0 +1,149 @@
+package com.example.android.quakereport;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Shares the result of identical requests made at the same time, for example by the loaders of
+ * several screens or of an activity being recreated, so the url is fetched and parsed once.
+ *
+ * The first caller for a key runs the fetch on its own thread, later callers for the same key
+ * wait for it instead of starting their own. Results are then kept in a small memory cache for
+ * a short time, requests repeated within it are answered without a network round trip.
+ *
+ * Every caller gets the same store, the one kept for the later requests, and like every store
+ * handed out it must not be modified, so sharing a result costs no copy. Computing its display
+ * fields is the exception, {@link EarthquakeStore#formatDisplayFields(EarthquakeFormatter)} is
+ * synchronized and formats each row once whoever asks first.
+ */
+public final class RequestCoalescer {
+
+    private static final String LOG_TAG = RequestCoalescer.class.getSimpleName();
+
+    private final long mTtlMillis;
+
+    private final int mMaxEntries;
+
+    // fetches running, by key
+    private final ConcurrentMap<String, FutureTask<EarthquakeStore>> mInFlight =
+            new ConcurrentHashMap<>();
+
+    // recent results, least recently used first, guarded by itself
+    private final LinkedHashMap<String, Entry> mRecent = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param ttlMillis  time a result is reused for, 0 to only share fetches running at once
+     * @param maxEntries maximum number of results kept in memory
+     */
+    public RequestCoalescer(long ttlMillis, int maxEntries) {
+        mTtlMillis = ttlMillis;
+        mMaxEntries = maxEntries;
+    }
+
+    /**
+     * Returns a recent result for the key, or the result of a fetch for the key already
+     * running, or runs the fetch on the calling thread
+     *
+     * @param key   key {@link String} of the request, usually the url
+     * @param fetch fetch {@link Callable} returning the earthquakes or null if it failed, only
+     *              fresh results should be returned as they are kept for the later requests
+     * @return earthquakes {@link EarthquakeStore} fetched by this thread or for another request,
+     * shared with the other callers and not to be modified, or null if the fetch failed or the
+     * calling thread was interrupted while waiting for it
+     */
+    public EarthquakeStore fetch(String key, Callable<EarthquakeStore> fetch) {
+        EarthquakeStore recent = getRecent(key);
+        if (recent != null) {
+            Metrics.increment(Metrics.REQUESTS_COALESCED);
+            return recent;
+        }
+
+        FutureTask<EarthquakeStore> task = new FutureTask<>(fetch);
+        FutureTask<EarthquakeStore> running = mInFlight.putIfAbsent(key, task);
+        if (running == null) {
+            // no identical request running, this thread makes it
+            running = task;
+            try {
+                task.run();
+            } finally {
+                mInFlight.remove(key, task);
+            }
+        } else {
+            Metrics.increment(Metrics.REQUESTS_COALESCED);
+        }
+
+        EarthquakeStore earthquakes;
+        try {
+            earthquakes = running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            QueryLog.e(LOG_TAG, "Problem fetching " + key, e.getCause());
+            return null;
+        }
+        if (earthquakes != null && running == task) {
+            putRecent(key, earthquakes);
+        }
+        return earthquakes;
+    }
+
+    /**
+     * Forgets the recent results, the next requests are fetched again
+     */
+    public void clear() {
+        synchronized (mRecent) {
+            mRecent.clear();
+        }
+    }
+
+    private EarthquakeStore getRecent(String key) {
+        if (mTtlMillis <= 0) {
+            return null;
+        }
+        synchronized (mRecent) {
+            Entry entry = mRecent.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() - entry.mTimeMillis > mTtlMillis) {
+                mRecent.remove(key);
+                return null;
+            }
+            return entry.mEarthquakes;
+        }
+    }
+
+    private void putRecent(String key, EarthquakeStore earthquakes) {
+        if (mTtlMillis <= 0 || mMaxEntries <= 0) {
+            return;
+        }
+        synchronized (mRecent) {
+            mRecent.put(key, new Entry(earthquakes, System.currentTimeMillis()));
+            Iterator<Map.Entry<String, Entry>> eldest = mRecent.entrySet().iterator();
+            while (mRecent.size() > mMaxEntries) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Result kept in memory
+     */
+    private static final class Entry {
+        final EarthquakeStore mEarthquakes;
+        final long mTimeMillis;
+
+        Entry(EarthquakeStore earthquakes, long timeMillis) {
+            mEarthquakes = earthquakes;
+            mTimeMillis = timeMillis;
+        }
+    }
+}
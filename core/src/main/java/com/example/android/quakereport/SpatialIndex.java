@@ -0,0 +1,227 @@
+package com.example.android.quakereport;
+
+import java.util.Arrays;
+
+/**
+ * Grid index of the epicenters of an {@link EarthquakeStore}, answering radius and viewport
+ * queries by only looking at the earthquakes of the grid cells the query area touches.
+ *
+ * Rows are bucketed into cells of a fixed size in degrees, numbered row by row from the south
+ * west corner like a geohash of fixed precision. Only occupied cells are kept, as a sorted array
+ * of cell ids pointing into the rows sorted by cell, so the index costs three int arrays and a
+ * copy of the coordinates whatever the size of the grid. Earthquakes without coordinates are not
+ * indexed.
+ *
+ * The index is a snapshot of the store when it was built, rows appended later are not indexed.
+ */
+public final class SpatialIndex {
+
+    // size of a cell in degrees, about 11 km of latitude
+    public static final double DEFAULT_CELL_SIZE_DEGREES = 0.1;
+
+    private final double mCellSize;
+
+    // number of cells around a circle of latitude
+    private final int mColumns;
+
+    // number of cells from pole to pole
+    private final int mRows;
+
+    // ids of the occupied cells, ascending
+    private final int[] mCellIds;
+
+    // index in mRowsByCell of the first row of each occupied cell, followed by the row count
+    private final int[] mCellStarts;
+
+    // indexed rows of the store, ordered by cell and by row within a cell
+    private final int[] mRowsByCell;
+
+    // coordinates of the rows of mRowsByCell, kept next to each other for the distance checks
+    private final double[] mLatitudes;
+    private final double[] mLongitudes;
+
+    /**
+     * Indexes the store with cells of {@link #DEFAULT_CELL_SIZE_DEGREES}
+     *
+     * @param earthquakes store {@link EarthquakeStore} to index
+     */
+    public SpatialIndex(EarthquakeStore earthquakes) {
+        this(earthquakes, DEFAULT_CELL_SIZE_DEGREES);
+    }
+
+    /**
+     * @param earthquakes      store {@link EarthquakeStore} to index
+     * @param cellSizeDegrees  size of a cell in degrees, smaller cells suit dense data and
+     *                         small query areas
+     */
+    public SpatialIndex(EarthquakeStore earthquakes, double cellSizeDegrees) {
+        mCellSize = cellSizeDegrees;
+        mColumns = (int) Math.ceil(360 / cellSizeDegrees);
+        mRows = (int) Math.ceil(180 / cellSizeDegrees);
+        if ((long) mColumns * mRows > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cell size too small: " + cellSizeDegrees);
+        }
+
+        // sort the rows by cell through a single primitive sort of (cell, row) pairs
+        int size = earthquakes.size();
+        long[] cellRows = new long[size];
+        int indexed = 0;
+        for (int i = 0; i < size; i++) {
+            double latitude = earthquakes.getLatitude(i);
+            double longitude = earthquakes.getLongitude(i);
+            if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+                continue;
+            }
+            cellRows[indexed++] = (long) getCell(latitude, longitude) << 32 | i;
+        }
+        Arrays.sort(cellRows, 0, indexed);
+
+        mRowsByCell = new int[indexed];
+        mLatitudes = new double[indexed];
+        mLongitudes = new double[indexed];
+        int[] cellIds = new int[indexed];
+        int[] cellStarts = new int[indexed + 1];
+        int cellCount = 0;
+        for (int i = 0; i < indexed; i++) {
+            int cell = (int) (cellRows[i] >>> 32);
+            int row = (int) cellRows[i];
+            if (cellCount == 0 || cellIds[cellCount - 1] != cell) {
+                cellIds[cellCount] = cell;
+                cellStarts[cellCount] = i;
+                cellCount++;
+            }
+            mRowsByCell[i] = row;
+            mLatitudes[i] = earthquakes.getLatitude(row);
+            mLongitudes[i] = earthquakes.getLongitude(row);
+        }
+        cellStarts[cellCount] = indexed;
+
+        mCellIds = Arrays.copyOf(cellIds, cellCount);
+        mCellStarts = Arrays.copyOf(cellStarts, cellCount + 1);
+    }
+
+    /**
+     * Returns the rows whose epicenter is within a distance of a point
+     *
+     * @param latitude  latitude of the point in degrees
+     * @param longitude longitude of the point in degrees
+     * @param radiusKm  distance in km
+     * @return indexes of the rows in the store, ascending
+     */
+    public int[] queryRadius(double latitude, double longitude, double radiusKm) {
+        double[] box = GeoGrid.getBoundingBox(latitude, longitude, radiusKm);
+        return query(box[0], box[1], box[2], box[3], latitude, longitude, radiusKm);
+    }
+
+    /**
+     * Returns the rows whose epicenter is in a box, a viewport of a map for example. A box whose
+     * west longitude is greater than its east longitude crosses the antimeridian.
+     *
+     * @param south southern latitude in degrees
+     * @param west  western longitude in degrees
+     * @param north northern latitude in degrees
+     * @param east  eastern longitude in degrees
+     * @return indexes of the rows in the store, ascending
+     */
+    public int[] queryBox(double south, double west, double north, double east) {
+        return query(south, west, north, east, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Returns the number of indexed rows
+     *
+     * @return rows with coordinates
+     */
+    public int size() {
+        return mRowsByCell.length;
+    }
+
+    /**
+     * Collects the rows in a box, and within a distance of a center if one is given
+     *
+     * @return indexes of the rows in the store, ascending
+     */
+    private int[] query(double south, double west, double north, double east,
+                        double centerLatitude, double centerLongitude, double radiusKm) {
+        boolean wholeLongitude = east - west >= 360;
+        if (!wholeLongitude) {
+            west = GeoGrid.normalizeLongitude(west);
+            east = GeoGrid.normalizeLongitude(east);
+        }
+        boolean crossesAntimeridian = !wholeLongitude && west > east;
+        boolean checkDistance = !Double.isNaN(radiusKm);
+
+        int firstRow = getRow(Math.min(south, north));
+        int lastRow = getRow(Math.max(south, north));
+        int westColumn = wholeLongitude ? 0 : getColumn(west);
+        int eastColumn = wholeLongitude ? mColumns - 1 : getColumn(east);
+
+        int[] result = new int[16];
+        int count = 0;
+        for (int row = firstRow; row <= lastRow; row++) {
+            // one run of cells per grid row, two if the box crosses the antimeridian
+            int runs = crossesAntimeridian ? 2 : 1;
+            for (int run = 0; run < runs; run++) {
+                int fromColumn = crossesAntimeridian && run == 1 ? 0 : westColumn;
+                int toColumn = crossesAntimeridian && run == 0 ? mColumns - 1 : eastColumn;
+                int lastCell = row * mColumns + toColumn;
+
+                int cellIndex = Arrays.binarySearch(mCellIds, row * mColumns + fromColumn);
+                if (cellIndex < 0) {
+                    cellIndex = -cellIndex - 1;
+                }
+                for (; cellIndex < mCellIds.length && mCellIds[cellIndex] <= lastCell;
+                     cellIndex++) {
+                    for (int i = mCellStarts[cellIndex]; i < mCellStarts[cellIndex + 1]; i++) {
+                        double latitude = mLatitudes[i];
+                        double longitude = mLongitudes[i];
+                        boolean matches = checkDistance
+                                ? GeoGrid.getDistanceKm(centerLatitude, centerLongitude,
+                                latitude, longitude) <= radiusKm
+                                : isInBox(latitude, longitude, south, west, north, east,
+                                wholeLongitude, crossesAntimeridian);
+                        if (matches) {
+                            if (count == result.length) {
+                                result = Arrays.copyOf(result, count * 2);
+                            }
+                            result[count++] = mRowsByCell[i];
+                        }
+                    }
+                }
+            }
+        }
+
+        int[] rows = Arrays.copyOf(result, count);
+        Arrays.sort(rows);
+        return rows;
+    }
+
+    private static boolean isInBox(double latitude, double longitude, double south, double west,
+                                   double north, double east, boolean wholeLongitude,
+                                   boolean crossesAntimeridian) {
+        if (latitude < Math.min(south, north) || latitude > Math.max(south, north)) {
+            return false;
+        }
+        if (wholeLongitude) {
+            return true;
+        }
+        if (crossesAntimeridian) {
+            return longitude >= west || longitude <= east;
+        }
+        return longitude >= west && longitude <= east;
+    }
+
+    private int getCell(double latitude, double longitude) {
+        return getRow(latitude) * mColumns + getColumn(longitude);
+    }
+
+    private int getRow(double latitude) {
+        int row = (int) Math.floor((latitude + 90) / mCellSize);
+        return Math.max(0, Math.min(mRows - 1, row));
+    }
+
+    private int getColumn(double longitude) {
+        double normalized = GeoGrid.normalizeLongitude(longitude) + 180;
+        return Math.min(mColumns - 1, (int) Math.floor(normalized / mCellSize));
+    }
+}
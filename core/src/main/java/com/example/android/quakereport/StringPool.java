@@ -0,0 +1,51 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Pool of distinct strings, each one stored once and referred to by an int id
+ */
+public final class StringPool {
+
+    // id of every string in the pool
+    private final HashMap<String, Integer> mIds = new HashMap<>();
+
+    // strings of the pool, indexed by id
+    private final ArrayList<String> mStrings = new ArrayList<>();
+
+    /**
+     * Returns the id of the string, adding it to the pool if it is not there yet
+     *
+     * @param string string to intern
+     * @return id of the string
+     */
+    public int intern(String string) {
+        Integer id = mIds.get(string);
+        if (id == null) {
+            id = mStrings.size();
+            mIds.put(string, id);
+            mStrings.add(string);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the string with the given id
+     *
+     * @param id id returned by {@link #intern(String)}
+     * @return string
+     */
+    public String get(int id) {
+        return mStrings.get(id);
+    }
+
+    /**
+     * Returns the number of distinct strings in the pool
+     *
+     * @return number of strings
+     */
+    public int size() {
+        return mStrings.size();
+    }
+}
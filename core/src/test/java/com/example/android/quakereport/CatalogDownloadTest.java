@@ -0,0 +1,107 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CatalogDownloadTest {
+
+    // ceiling of the buffers of a download and the rows of a chunk of two earthquakes
+    private static final long TWO_ROW_CEILING =
+            2 * 64 * 1024 + 2 * (EarthquakeStore.COLUMN_BYTES_PER_ROW + 64);
+
+    private File mDirectory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        mDirectory = File.createTempFile("catalog", "");
+        assertTrue(mDirectory.delete());
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void chunksFitTheCeiling() {
+        assertEquals(2, new CatalogDownload(mDirectory, TWO_ROW_CEILING).getChunkSize());
+        assertEquals(1, new CatalogDownload(mDirectory, 0).getChunkSize());
+    }
+
+    @Test
+    public void ceilingIsCappedByTheRuntime() {
+        long maxMemory = Runtime.getRuntime().maxMemory();
+
+        assertEquals(new CatalogDownload(mDirectory, maxMemory / 2).getChunkSize(),
+                new CatalogDownload(mDirectory, Long.MAX_VALUE).getChunkSize());
+        assertTrue(new CatalogDownload(mDirectory).getChunkSize()
+                < new CatalogDownload(mDirectory, maxMemory / 2).getChunkSize());
+    }
+
+    @Test
+    public void downloadsInChunks() throws IOException {
+        StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int i = 0; i < 5; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"type\":\"Feature\",\"properties\":{\"mag\":5.5,\"place\":"
+                    + "\"Fiji region\",\"time\":").append(5000 - i)
+                    .append(",\"url\":\"http://example.com/e").append(i).append("\"},"
+                    + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[1.5,2.5,3]},\"id\":\"e")
+                    .append(i).append("\"}");
+        }
+        final byte[] body = json.append("]}").toString().getBytes("UTF-8");
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream output = exchange.getResponseBody();
+                output.write(body);
+                output.close();
+            }
+        });
+        server.start();
+        try {
+            final List<Integer> chunkSizes = new ArrayList<>();
+            int count = new CatalogDownload(mDirectory, TWO_ROW_CEILING).download(
+                    "http://127.0.0.1:" + server.getAddress().getPort() + "/query",
+                    new QueryUtils.ChunkListener() {
+                        @Override
+                        public void onChunk(EarthquakeStore earthquakes) {
+                            chunkSizes.add(earthquakes.size());
+                        }
+                    });
+
+            assertEquals(5, count);
+            assertArrayEquals(new Integer[]{2, 2, 1}, chunkSizes.toArray(new Integer[0]));
+            // the spilled response is deleted
+            assertEquals(0, mDirectory.listFiles().length);
+        } finally {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.android.quakereport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class EarthquakeCacheTest {
+
+    private static final String URL = "http://earthquake.usgs.gov/fdsnws/event/1/query?limit=2";
+
+    private File mDirectory;
+
+    private EarthquakeCache mCache;
+
+    private static EarthquakeStore earthquakes(String... ids) throws IOException {
+        StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"type\":\"Feature\",\"properties\":{\"mag\":4.5,\"place\":"
+                    + "\"12km NNE of Somewhere\",\"time\":").append(1000 + i)
+                    .append(",\"url\":\"http://example.com/").append(ids[i]).append("\"},"
+                    + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[1.5,2.5,3]},\"id\":\"")
+                    .append(ids[i]).append("\"}");
+        }
+        json.append("]}");
+        return QueryUtils.extractEarthquakes(new ByteArrayInputStream(
+                json.toString().getBytes(Charset.forName("UTF-8"))));
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("cache", "");
+        mDirectory.delete();
+        mCache = new EarthquakeCache(mDirectory, 1024 * 1024, 60 * 1000);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void returnsStoredEntry() throws IOException {
+        mCache.put(URL, earthquakes("a", "b"), "\"v1\"", 42);
+
+        EarthquakeCache.Entry entry = mCache.get(URL);
+        assertNotNull(entry);
+        assertEquals("\"v1\"", entry.getETag());
+        assertEquals(42, entry.getLastModified());
+        assertEquals(2, entry.getEarthquakes().size());
+        assertEquals("b", entry.getEarthquakes().getId(1));
+        assertNull(mCache.get(URL + "&offset=3"));
+    }
+
+    @Test
+    public void replacesEntryWithoutLeavingTemporaryFiles() throws IOException {
+        mCache.put(URL, earthquakes("a", "b"), null, 0);
+        mCache.put(URL, earthquakes("c"), null, 0);
+
+        EarthquakeCache.Entry entry = mCache.get(URL);
+        assertEquals(1, entry.getEarthquakes().size());
+        assertEquals("c", entry.getEarthquakes().getId(0));
+        assertEquals(1, mDirectory.listFiles().length);
+    }
+
+    @Test
+    public void doesNotStoreEntriesLargerThanTheCache() throws IOException {
+        EarthquakeCache cache = new EarthquakeCache(mDirectory, 200, 60 * 1000);
+        cache.put(URL, earthquakes("a"), null, 0);
+        assertNotNull(cache.get(URL));
+
+        cache.put(URL, earthquakes("a", "b", "c", "d", "e", "f", "g", "h"), null, 0);
+
+        assertNull(cache.get(URL));
+        assertEquals(0, mDirectory.listFiles().length);
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedEntry() throws IOException {
+        EarthquakeCache cache = new EarthquakeCache(mDirectory, 400, 60 * 1000);
+        cache.put(URL, earthquakes("a"), null, 0);
+        cache.put(URL + "&offset=2", earthquakes("b"), null, 0);
+        File[] files = mDirectory.listFiles();
+        for (File file : files) {
+            file.setLastModified(System.currentTimeMillis() - 10 * 1000);
+        }
+
+        // reading the first entry makes the second one the least recently used
+        assertNotNull(cache.get(URL));
+        cache.put(URL + "&offset=3", earthquakes("c"), null, 0);
+
+        assertNotNull(cache.get(URL));
+        assertNull(cache.get(URL + "&offset=2"));
+        assertNotNull(cache.get(URL + "&offset=3"));
+    }
+
+    @Test
+    public void dropsEntriesStoredLongerAgoThanTheMaximumAge() throws Exception {
+        EarthquakeCache cache = new EarthquakeCache(mDirectory, 1024 * 1024, 50);
+        cache.put(URL, earthquakes("a"), null, 0);
+        Thread.sleep(100);
+
+        // using an entry does not make it younger
+        for (File file : mDirectory.listFiles()) {
+            file.setLastModified(System.currentTimeMillis());
+        }
+        assertNull(cache.get(URL));
+    }
+
+    @Test
+    public void concurrentWritesNeverExposePartialEntries() throws Exception {
+        final EarthquakeStore first = earthquakes("a", "b", "c");
+        final EarthquakeStore second = earthquakes("d");
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            final EarthquakeStore earthquakes = t % 2 == 0 ? first : second;
+            writers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 50; i++) {
+                        mCache.put(URL, earthquakes, null, 0);
+                    }
+                }
+            });
+            writers[t].start();
+        }
+        for (int i = 0; i < 200; i++) {
+            EarthquakeCache.Entry entry = mCache.get(URL);
+            if (entry != null) {
+                int size = entry.getEarthquakes().size();
+                assertEquals(true, size == 3 || size == 1);
+            }
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertEquals(1, mDirectory.listFiles().length);
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EarthquakeDiffTest {
+
+    private static final String EVENT_PAGE = "http://earthquake.usgs.gov/earthquakes/eventpage/";
+
+    private static void add(EarthquakeStore earthquakes, String id, double magnitude) {
+        earthquakes.add(id, magnitude, "Fiji region", 1000, EVENT_PAGE + id);
+    }
+
+    private static EarthquakeStore list(String ids) {
+        EarthquakeStore earthquakes = new EarthquakeStore();
+        for (int i = 0; i < ids.length(); i++) {
+            add(earthquakes, String.valueOf(ids.charAt(i)), 4.0);
+        }
+        return earthquakes;
+    }
+
+    /**
+     * Applies the updates of the diff to the ids of the old list, like a list view would, and
+     * records the positions of the changed rows
+     */
+    private static final class Replay implements EarthquakeDiff.Callback {
+        final List<String> mIds = new ArrayList<>();
+        final List<Integer> mChanged = new ArrayList<>();
+        private final EarthquakeStore mNewList;
+
+        Replay(EarthquakeStore oldList, EarthquakeStore newList) {
+            for (int i = 0; i < oldList.size(); i++) {
+                mIds.add(oldList.getId(i));
+            }
+            mNewList = newList;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            assertTrue(position >= 0 && position + count <= mIds.size());
+            mIds.subList(position, position + count).clear();
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            assertTrue(position >= 0 && position <= mIds.size());
+            for (int i = 0; i < count; i++) {
+                mIds.add(position + i, mNewList.getId(position + i));
+            }
+        }
+
+        @Override
+        public void onChanged(int position, int count) {
+            for (int i = 0; i < count; i++) {
+                mChanged.add(position + i);
+            }
+        }
+    }
+
+    private static Replay replay(EarthquakeStore oldList, EarthquakeStore newList) {
+        Replay replay = new Replay(oldList, newList);
+        EarthquakeDiff.compute(oldList, newList).dispatchTo(replay);
+        return replay;
+    }
+
+    private static List<String> ids(EarthquakeStore earthquakes) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < earthquakes.size(); i++) {
+            ids.add(earthquakes.getId(i));
+        }
+        return ids;
+    }
+
+    @Test
+    public void sameListsHaveNoUpdates() {
+        EarthquakeDiff diff = EarthquakeDiff.compute(list("abc"), list("abc"));
+
+        assertTrue(diff.isEmpty());
+        assertEquals(0, diff.getAffectedRowCount());
+    }
+
+    @Test
+    public void insertsNewRowsAtTheTop() {
+        EarthquakeStore newList = list("xyabc");
+        EarthquakeDiff diff = EarthquakeDiff.compute(list("abc"), newList);
+
+        assertEquals(2, diff.getAffectedRowCount());
+        assertEquals(ids(newList), replay(list("abc"), newList).mIds);
+    }
+
+    @Test
+    public void removesRowsFromTheEnd() {
+        EarthquakeStore oldList = list("abcde");
+        EarthquakeStore newList = list("ace");
+
+        Replay replay = replay(oldList, newList);
+
+        assertEquals(ids(newList), replay.mIds);
+        assertEquals(2, EarthquakeDiff.compute(oldList, newList).getAffectedRowCount());
+    }
+
+    @Test
+    public void movedRowIsRemovedAndInsertedAgain() {
+        EarthquakeStore oldList = list("abcd");
+        EarthquakeStore newList = list("dabc");
+
+        Replay replay = replay(oldList, newList);
+
+        assertEquals(ids(newList), replay.mIds);
+        // the three rows in order are kept, only the moved one is updated
+        assertEquals(2, EarthquakeDiff.compute(oldList, newList).getAffectedRowCount());
+    }
+
+    @Test
+    public void reportsChangedContents() {
+        EarthquakeStore newList = new EarthquakeStore();
+        add(newList, "a", 4.0);
+        add(newList, "b", 5.2);
+        add(newList, "c", 5.3);
+        add(newList, "d", 4.0);
+
+        Replay replay = replay(list("abcd"), newList);
+
+        assertEquals(ids(newList), replay.mIds);
+        assertEquals(Arrays.asList(1, 2), replay.mChanged);
+    }
+
+    @Test
+    public void replayingRandomDiffsGivesTheNewList() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            List<String> oldIds = new ArrayList<>();
+            int oldSize = random.nextInt(30);
+            for (int i = 0; i < oldSize; i++) {
+                oldIds.add("old" + i);
+            }
+            List<String> newIds = new ArrayList<>();
+            for (String id : oldIds) {
+                if (random.nextInt(4) != 0) {
+                    newIds.add(id);
+                }
+            }
+            int added = random.nextInt(10);
+            for (int i = 0; i < added; i++) {
+                newIds.add(random.nextInt(newIds.size() + 1), "new" + i);
+            }
+            if (newIds.size() > 1 && random.nextBoolean()) {
+                Collections.swap(newIds, random.nextInt(newIds.size()),
+                        random.nextInt(newIds.size()));
+            }
+
+            EarthquakeStore oldList = new EarthquakeStore();
+            for (String id : oldIds) {
+                add(oldList, id, 4.0);
+            }
+            EarthquakeStore newList = new EarthquakeStore();
+            List<Integer> updated = new ArrayList<>();
+            for (String id : newIds) {
+                boolean update = id.startsWith("old") && random.nextInt(5) == 0;
+                if (update) {
+                    updated.add(newList.size());
+                }
+                add(newList, id, update ? 6.0 : 4.0);
+            }
+
+            Replay replay = replay(oldList, newList);
+
+            assertEquals(newIds, replay.mIds);
+            // an updated row is either reported changed or was moved, removed and inserted
+            assertTrue(updated.containsAll(replay.mChanged));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EarthquakeSnapshotTest {
+
+    private static final String JSON = "{\"type\":\"FeatureCollection\",\"features\":["
+            + "{\"type\":\"Feature\",\"properties\":{\"mag\":4.37,\"place\":"
+            + "\"74km NW of Rumoi, Japan\",\"time\":1454124312220,\"url\":"
+            + "\"http://earthquake.usgs.gov/earthquakes/eventpage/us20004vvx\"},"
+            + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[141.0945678,44.4765432,240]},"
+            + "\"id\":\"us20004vvx\"},"
+            + "{\"type\":\"Feature\",\"properties\":{\"mag\":null,\"place\":"
+            + "\"Fiji region\",\"time\":1454124312000,\"url\":"
+            + "\"http://earthquake.usgs.gov/earthquakes/eventpage/us20004vvy\"},"
+            + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[-179.9999991,-89.123456789,"
+            + "10]},\"id\":\"us20004vvy\"}]}";
+
+    private static EarthquakeStore parse() throws IOException {
+        return QueryUtils.extractEarthquakes(new ByteArrayInputStream(
+                JSON.getBytes(Charset.forName("UTF-8"))));
+    }
+
+    private static EarthquakeStore roundTrip(EarthquakeStore earthquakes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream outputStream = new DataOutputStream(bytes);
+        EarthquakeSnapshot.write(earthquakes, outputStream);
+        outputStream.close();
+        return EarthquakeSnapshot.read(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    @Test
+    public void readsBackTheSameEarthquakes() throws IOException {
+        EarthquakeStore parsed = parse();
+        EarthquakeStore read = roundTrip(parsed);
+
+        assertEquals(parsed.size(), read.size());
+        for (int i = 0; i < parsed.size(); i++) {
+            assertEquals(parsed.getId(i), read.getId(i));
+            assertEquals(parsed.getMagnitude(i), read.getMagnitude(i), 0);
+            assertEquals(parsed.getDateInMillis(i), read.getDateInMillis(i));
+            assertEquals(parsed.getPlace(i), read.getPlace(i));
+            assertEquals(parsed.getLatitude(i), read.getLatitude(i), 0);
+            assertEquals(parsed.getLongitude(i), read.getLongitude(i), 0);
+            assertEquals(parsed.getUrl(i), read.getUrl(i));
+        }
+        assertTrue(Double.isNaN(read.getMagnitude(1)));
+    }
+
+    @Test
+    public void parsedRowsHoldTheSnapshotPrecision() throws IOException {
+        EarthquakeStore parsed = parse();
+
+        assertEquals(4.37, parsed.getMagnitude(0), 0);
+        assertEquals(44.47654, parsed.getLatitude(0), 0);
+        assertEquals(141.09457, parsed.getLongitude(0), 0);
+        assertEquals(-180.0, parsed.getLongitude(1), 0);
+        assertEquals(-89.12346, parsed.getLatitude(1), 0);
+    }
+
+    @Test
+    public void keepsTheFeatureCountOfTheResponse() throws IOException {
+        EarthquakeStore parsed = parse();
+        parsed.setResponseFeatureCount(5);
+
+        assertEquals(5, roundTrip(parsed).getResponseFeatureCount());
+    }
+
+    @Test
+    public void diffOfReadBackAndParsedEarthquakesIsEmpty() throws IOException {
+        EarthquakeStore read = roundTrip(parse());
+
+        assertTrue(EarthquakeDiff.compute(read, parse()).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedSnapshot() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream outputStream = new DataOutputStream(bytes);
+        EarthquakeSnapshot.write(parse(), outputStream);
+        outputStream.close();
+
+        byte[] snapshot = bytes.toByteArray();
+        EarthquakeSnapshot.read(ByteBuffer.wrap(snapshot, 0, snapshot.length - 3).slice());
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EarthquakeStoreTest {
+
+    private static final String EVENT_PAGE = "http://earthquake.usgs.gov/earthquakes/eventpage/";
+
+    @Test
+    public void mergeOrdersByDateAndKeepsEachEventOnce() {
+        EarthquakeStore first = new EarthquakeStore();
+        first.add("a", 5.0, "Fiji region", 3000, EVENT_PAGE + "a");
+        first.add("b", 4.0, "Fiji region", 1000, EVENT_PAGE + "b");
+        EarthquakeStore second = new EarthquakeStore();
+        second.add("c", 4.5, "Fiji region", 2000, EVENT_PAGE + "c");
+        second.add("b", 4.0, "Fiji region", 1000, EVENT_PAGE + "b");
+
+        EarthquakeStore merged = EarthquakeStore.merge(Arrays.asList(first, null, second));
+
+        assertEquals(3, merged.size());
+        assertEquals("a", merged.getId(0));
+        assertEquals("c", merged.getId(1));
+        assertEquals("b", merged.getId(2));
+    }
+
+    @Test
+    public void mergeKeepsEveryEventWithoutId() {
+        EarthquakeStore first = new EarthquakeStore();
+        first.add(null, 5.0, "Fiji region", 3000, EVENT_PAGE);
+        EarthquakeStore second = new EarthquakeStore();
+        second.add(null, 4.5, "Tonga", 2000, EVENT_PAGE);
+
+        EarthquakeStore merged = EarthquakeStore.merge(Arrays.asList(first, second));
+
+        assertEquals(2, merged.size());
+        assertEquals("Fiji region", merged.getPlace(0));
+        assertEquals("Tonga", merged.getPlace(1));
+    }
+
+    @Test
+    public void formatsLocationsOfTokenizedAndWholePlaces() {
+        EarthquakeStore earthquakes = new EarthquakeStore();
+        earthquakes.add("a", 5.0, "74km NW of Rumoi, Japan", 3000, EVENT_PAGE + "a");
+        earthquakes.add("b", 4.0, "Fiji region", 2000, EVENT_PAGE + "b");
+        earthquakes.add("c", 4.0, "5km of Nowhere", 1000, EVENT_PAGE + "c");
+        EarthquakeFormatter formatter = new EarthquakeFormatter();
+
+        assertEquals("74km NW of", formatter.formatLocationOffset(earthquakes, 0));
+        assertEquals("Rumoi, Japan", formatter.formatPrimaryLocation(earthquakes, 0));
+        assertEquals("Near the", formatter.formatLocationOffset(earthquakes, 1));
+        assertEquals("Fiji region", formatter.formatPrimaryLocation(earthquakes, 1));
+        assertEquals("5km of", formatter.formatLocationOffset(earthquakes, 2));
+        assertEquals("Nowhere", formatter.formatPrimaryLocation(earthquakes, 2));
+    }
+
+    @Test
+    public void mergeKeepsTheDisplayFieldsOfFormattedRows() {
+        EarthquakeStore first = new EarthquakeStore();
+        first.add("a", 5.0, "74km NW of Rumoi, Japan", 3000, EVENT_PAGE + "a");
+        first.formatDisplayFields(new EarthquakeFormatter());
+        EarthquakeStore second = new EarthquakeStore();
+        second.add("b", 4.0, "Fiji region", 2000, EVENT_PAGE + "b");
+
+        EarthquakeStore merged = EarthquakeStore.merge(Arrays.asList(first, second));
+
+        assertFalse(merged.isFormatted());
+        merged.formatDisplayFields(new EarthquakeFormatter());
+        assertTrue(merged.isFormatted());
+        assertEquals("5.0", merged.getMagnitudeText(0));
+        assertEquals("74km NW of", merged.getLocationOffset(0));
+        assertEquals("Rumoi, Japan", merged.getPrimaryLocation(0));
+        assertEquals("Near the", merged.getLocationOffset(1));
+        assertEquals("Fiji region", merged.getPrimaryLocation(1));
+        assertEquals(EarthquakeFormatter.getMagnitudeBand(4.0), merged.getMagnitudeBand(1));
+    }
+
+    @Test
+    public void formatsLargeStoresInSlices() throws InterruptedException {
+        EarthquakeStore sliced = new EarthquakeStore();
+        for (int i = 0; i < 5000; i++) {
+            sliced.add("e" + i, (i % 90) / 10.0, (i % 50) + "km N of Region " + (i % 7),
+                    i * 60000L, EVENT_PAGE + "e" + i);
+        }
+        EarthquakeStore sequential = new EarthquakeStore(sliced.size());
+        sequential.addAll(sliced);
+        sequential.formatDisplayFields(new EarthquakeFormatter());
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            sliced.formatDisplayFields(executor, 4);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(sliced.isFormatted());
+        for (int i = 0; i < sliced.size(); i++) {
+            assertEquals(sequential.getMagnitudeText(i), sliced.getMagnitudeText(i));
+            assertEquals(sequential.getMagnitudeBand(i), sliced.getMagnitudeBand(i));
+            assertEquals(sequential.getLocationOffset(i), sliced.getLocationOffset(i));
+            assertEquals(sequential.getPrimaryLocation(i), sliced.getPrimaryLocation(i));
+            assertEquals(sequential.getDateText(i), sliced.getDateText(i));
+            assertEquals(sequential.getTimeText(i), sliced.getTimeText(i));
+        }
+    }
+}
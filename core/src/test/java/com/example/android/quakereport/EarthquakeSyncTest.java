@@ -0,0 +1,136 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EarthquakeSyncTest {
+
+    private static final String EVENT_PAGE = "http://earthquake.usgs.gov/earthquakes/eventpage/";
+
+    private static final String QUERY = "http://earthquake.usgs.gov/fdsnws/event/1/query"
+            + "?format=geojson&orderby=time&starttime=2016-01-01&limit=3";
+
+    private static void add(EarthquakeStore earthquakes, String id, double magnitude, long time) {
+        earthquakes.add(id, magnitude, "Fiji region", time, EVENT_PAGE + id);
+    }
+
+    private static EarthquakeStore held() {
+        EarthquakeStore earthquakes = new EarthquakeStore();
+        add(earthquakes, "c", 5.0, 3000);
+        add(earthquakes, "b", 4.0, 2000);
+        add(earthquakes, "a", 3.0, 1000);
+        return earthquakes;
+    }
+
+    private static String ids(EarthquakeStore earthquakes) {
+        StringBuilder ids = new StringBuilder();
+        for (int i = 0; i < earthquakes.size(); i++) {
+            ids.append(earthquakes.getId(i));
+        }
+        return ids.toString();
+    }
+
+    @Test
+    public void insertsNewEarthquakesInTimeOrder() {
+        EarthquakeChanges changes = new EarthquakeChanges();
+        add(changes.getUpserts(), "d", 4.5, 2500);
+
+        EarthquakeStore applied = EarthquakeSync.apply(held(), changes, 0, Integer.MAX_VALUE);
+
+        assertEquals("cdba", ids(applied));
+    }
+
+    @Test
+    public void replacesUpdatedEarthquakes() {
+        EarthquakeChanges changes = new EarthquakeChanges();
+        // the update moves the event before the newest one
+        add(changes.getUpserts(), "a", 3.5, 4000);
+
+        EarthquakeStore applied = EarthquakeSync.apply(held(), changes, 0, Integer.MAX_VALUE);
+
+        assertEquals("acb", ids(applied));
+        assertEquals(3.5, applied.getMagnitude(0), 0);
+    }
+
+    @Test
+    public void removesDeletedEarthquakes() {
+        EarthquakeChanges changes = new EarthquakeChanges();
+        changes.addDeletion("b");
+
+        EarthquakeStore applied = EarthquakeSync.apply(held(), changes, 0, Integer.MAX_VALUE);
+
+        assertEquals("ca", ids(applied));
+    }
+
+    @Test
+    public void trimsToTheLimitOfTheQuery() {
+        EarthquakeChanges changes = new EarthquakeChanges();
+        add(changes.getUpserts(), "e", 4.0, 5000);
+        add(changes.getUpserts(), "d", 4.0, 4000);
+
+        EarthquakeStore applied = EarthquakeSync.apply(held(), changes, 0, 3);
+
+        assertEquals("edc", ids(applied));
+    }
+
+    @Test
+    public void trimsToTheStartTimeOfTheQuery() {
+        EarthquakeChanges changes = new EarthquakeChanges();
+        add(changes.getUpserts(), "d", 4.0, 4000);
+
+        EarthquakeStore applied = EarthquakeSync.apply(held(), changes, 2000, Integer.MAX_VALUE);
+
+        assertEquals("dcb", ids(applied));
+    }
+
+    @Test
+    public void leavesTheAppliedStoreUntouched() {
+        EarthquakeStore earthquakes = held();
+        EarthquakeChanges changes = new EarthquakeChanges();
+        changes.addDeletion("c");
+
+        EarthquakeSync.apply(earthquakes, changes, 0, 1);
+
+        assertEquals("cba", ids(earthquakes));
+    }
+
+    @Test
+    public void deltaUrlHasNoLimitOrOffset() {
+        String deltaUrl = QueryUtils.buildDeltaUrl(QUERY + "&offset=21", 0);
+
+        assertEquals(null, QueryUtils.getParameter(deltaUrl, "limit"));
+        assertEquals(null, QueryUtils.getParameter(deltaUrl, "offset"));
+        assertEquals("2016-01-01", QueryUtils.getParameter(deltaUrl, "starttime"));
+        assertEquals("1970-01-01T00:00:00.000", QueryUtils.getParameter(deltaUrl, "updatedafter"));
+        assertEquals("true", QueryUtils.getParameter(deltaUrl, "includedeleted"));
+    }
+
+    @Test
+    public void parsesQueryTimes() {
+        assertEquals(1451606400000L, QueryUtils.parseQueryTime("2016-01-01"));
+        assertEquals(1451649600000L, QueryUtils.parseQueryTime("2016-01-01T12:00"));
+        assertEquals(1451649600000L, QueryUtils.parseQueryTime("2016-01-01T12:00:00Z"));
+        assertEquals(1451649600250L, QueryUtils.parseQueryTime("2016-01-01T12:00:00.250"));
+        assertEquals(-1, QueryUtils.parseQueryTime("yesterday"));
+    }
+
+    @Test
+    public void changesCutByAParseErrorAreNotComplete() throws IOException {
+        EarthquakeChanges complete = QueryUtils.extractChanges(new ByteArrayInputStream(
+                "{\"type\":\"FeatureCollection\",\"features\":[]}"
+                        .getBytes(Charset.forName("UTF-8"))));
+        EarthquakeChanges cut = QueryUtils.extractChanges(new ByteArrayInputStream(
+                "{\"type\":\"FeatureCollection\",\"features\":[42]}"
+                        .getBytes(Charset.forName("UTF-8"))));
+
+        assertTrue(complete.isComplete());
+        assertFalse(cut.isComplete());
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FeedPollerTest {
+
+    private static final String EVENT_PAGE = "http://earthquake.usgs.gov/earthquakes/eventpage/";
+
+    private static void add(EarthquakeChanges response, String id, long time, long updated) {
+        EarthquakeStore earthquake = new EarthquakeStore();
+        earthquake.add(id, 4.0, "Fiji region", time, EVENT_PAGE + id);
+        response.addUpsert(earthquake, 0, updated);
+    }
+
+    private static EarthquakeChanges previous() {
+        EarthquakeChanges response = new EarthquakeChanges();
+        add(response, "c", 3000, 3100);
+        add(response, "b", 2000, 2100);
+        add(response, "a", 1000, 1100);
+        return response;
+    }
+
+    private static String ids(EarthquakeStore earthquakes) {
+        StringBuilder ids = new StringBuilder();
+        for (int i = 0; i < earthquakes.size(); i++) {
+            ids.append(earthquakes.getId(i));
+        }
+        return ids.toString();
+    }
+
+    @Test
+    public void firstResponseIsAllUpserts() {
+        EarthquakeChanges changes = FeedPoller.diff(new EarthquakeChanges(), previous());
+
+        assertEquals("cba", ids(changes.getUpserts()));
+        assertEquals(3100, changes.getUpdateTime(0));
+        assertTrue(changes.getDeletedIds().isEmpty());
+    }
+
+    @Test
+    public void unchangedResponseHasNoChanges() {
+        assertTrue(FeedPoller.diff(previous(), previous()).isEmpty());
+    }
+
+    @Test
+    public void reportsNewAndUpdatedEarthquakes() {
+        EarthquakeChanges current = new EarthquakeChanges();
+        add(current, "d", 4000, 4100);
+        add(current, "c", 3000, 3100);
+        // a revised magnitude changes the updated time only
+        add(current, "b", 2000, 5000);
+        add(current, "a", 1000, 1100);
+
+        EarthquakeChanges changes = FeedPoller.diff(previous(), current);
+
+        assertEquals("db", ids(changes.getUpserts()));
+        assertEquals(5000, changes.getUpdateTime(1));
+        assertTrue(changes.getDeletedIds().isEmpty());
+    }
+
+    @Test
+    public void reportsRemovedEarthquakes() {
+        EarthquakeChanges current = new EarthquakeChanges();
+        add(current, "c", 3000, 3100);
+        add(current, "a", 1000, 1100);
+
+        EarthquakeChanges changes = FeedPoller.diff(previous(), current);
+
+        assertTrue(changes.getUpserts().isEmpty());
+        assertEquals(Collections.singleton("b"), changes.getDeletedIds());
+    }
+
+    @Test
+    public void earthquakesLeavingTheWindowAreNotRemovals() {
+        EarthquakeChanges current = new EarthquakeChanges();
+        add(current, "d", 4000, 4100);
+        add(current, "c", 3000, 3100);
+
+        EarthquakeChanges changes = FeedPoller.diff(previous(), current);
+
+        assertEquals("d", ids(changes.getUpserts()));
+        assertTrue(changes.getDeletedIds().isEmpty());
+    }
+
+    @Test
+    public void reportsDeletedEventsOfTheResponse() {
+        EarthquakeChanges current = new EarthquakeChanges();
+        add(current, "c", 3000, 3100);
+        add(current, "a", 1000, 1100);
+        current.addDeletion("b");
+        current.addDeletion("z");
+
+        EarthquakeChanges changes = FeedPoller.diff(previous(), current);
+
+        assertEquals(Collections.singleton("b"), changes.getDeletedIds());
+    }
+
+    @Test
+    public void appliedChangesFollowTheFeed() {
+        EarthquakeStore earthquakes = FeedPoller.diff(new EarthquakeChanges(), previous())
+                .getUpserts();
+        EarthquakeChanges current = new EarthquakeChanges();
+        add(current, "c", 3000, 3100);
+        add(current, "b", 2500, 5000);
+
+        earthquakes = EarthquakeSync.apply(earthquakes, FeedPoller.diff(previous(), current),
+                Long.MIN_VALUE, Integer.MAX_VALUE);
+
+        // a is older than the oldest earthquake of the feed and is kept
+        assertEquals("cba", ids(earthquakes));
+        assertEquals(2500, earthquakes.getDateInMillis(1));
+    }
+
+    @Test
+    public void restartsAndRefreshesKeepTheSchedule() throws Exception {
+        final byte[] body = ("{\"type\":\"FeatureCollection\",\"features\":[{\"type\":"
+                + "\"Feature\",\"properties\":{\"mag\":4.0,\"place\":\"Fiji region\","
+                + "\"time\":1000,\"updated\":1100,\"url\":\"" + EVENT_PAGE + "a\"},"
+                + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[1.5,2.5,3]},"
+                + "\"id\":\"a\"}]}").getBytes("UTF-8");
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream output = exchange.getResponseBody();
+                output.write(body);
+                output.close();
+            }
+        });
+        server.start();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final CountDownLatch polled = new CountDownLatch(1);
+            FeedPoller poller = new FeedPoller(
+                    "http://127.0.0.1:" + server.getAddress().getPort() + "/feed.geojson", null,
+                    scheduler, new FeedPoller.Listener() {
+                        @Override
+                        public void onChanges(EarthquakeChanges changes) {
+                            polled.countDown();
+                        }
+                    });
+            poller.start();
+            assertTrue(polled.await(10, TimeUnit.SECONDS));
+
+            poller.stop();
+            poller.start();
+            long minimum = FeedPoller.MIN_INTERVAL_MILLIS / 2;
+            assertTrue(poller.getNextPollDelayMillis() > minimum);
+            poller.refresh();
+            assertTrue(poller.getNextPollDelayMillis() > minimum);
+            poller.stop();
+            assertEquals(-1, poller.getNextPollDelayMillis());
+        } finally {
+            scheduler.shutdownNow();
+            server.stop(0);
+        }
+    }
+}
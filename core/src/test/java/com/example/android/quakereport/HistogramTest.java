@@ -0,0 +1,99 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+    private static Histogram histogram(long... values) {
+        Histogram histogram = new Histogram("test", Histogram.Unit.COUNT);
+        for (long value : values) {
+            histogram.record(value);
+        }
+        return histogram;
+    }
+
+    @Test
+    public void smallValuesHaveABucketEach() {
+        for (long value = 0; value < 8; value++) {
+            assertEquals(value, histogram(value, 1000).getPercentile(50));
+        }
+    }
+
+    @Test
+    public void percentilesAreTheUpperEndOfTheirBucket() {
+        // 8 to 15 have a bucket each, then every power of two is split in 8 buckets
+        assertEquals(15, histogram(15, 1000).getPercentile(50));
+        assertEquals(17, histogram(16, 1000).getPercentile(50));
+        assertEquals(17, histogram(17, 1000).getPercentile(50));
+        assertEquals(19, histogram(18, 1000).getPercentile(50));
+        assertEquals(1023, histogram(960, 10000).getPercentile(50));
+        assertEquals(1151, histogram(1024, 10000).getPercentile(50));
+    }
+
+    @Test
+    public void percentilesAreWithinTheBucketPrecision() {
+        for (long value = 1; value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            long percentile = histogram(value, Long.MAX_VALUE).getPercentile(50);
+            assertTrue(value + " -> " + percentile, percentile >= value);
+            assertTrue(value + " -> " + percentile, percentile - value <= value / 8);
+        }
+    }
+
+    @Test
+    public void percentilesAreCappedToTheMaximum() {
+        Histogram histogram = histogram(1000, 1001);
+
+        assertEquals(1001, histogram.getPercentile(99));
+        assertEquals(1001, histogram.getPercentile(100));
+        assertEquals(1001, histogram.getMax());
+    }
+
+    @Test
+    public void percentilesPickTheRankOfTheValues() {
+        Histogram histogram = new Histogram("test", Histogram.Unit.COUNT);
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value < 100 ? 1 : 5000);
+        }
+
+        assertEquals(1, histogram.getPercentile(50));
+        assertEquals(1, histogram.getPercentile(99));
+        assertEquals(5000, histogram.getPercentile(99.5));
+        assertEquals(1, histogram.getPercentile(0));
+    }
+
+    @Test
+    public void recordsTheLargestValues() {
+        Histogram histogram = histogram(Long.MAX_VALUE);
+
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(50));
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+    }
+
+    @Test
+    public void negativeValuesAreRecordedAsZero() {
+        Histogram histogram = histogram(-5);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getSum());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void summarizesAndResets() {
+        Histogram histogram = histogram(2, 4, 9);
+
+        assertEquals(3, histogram.getCount());
+        assertEquals(15, histogram.getSum());
+        assertEquals(5, histogram.getMean(), 0);
+        assertEquals(9, histogram.getMax());
+
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean(), 0);
+        assertEquals(0, histogram.getPercentile(50));
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpClientTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private HttpServer mServer;
+
+    private URL mUrl;
+
+    // responses of the stub server, the last one is repeated
+    private final List<Response> mResponses = Collections.synchronizedList(
+            new ArrayList<Response>());
+
+    private final AtomicInteger mRequests = new AtomicInteger();
+
+    private volatile String mAcceptEncoding;
+
+    @Before
+    public void startServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int request = mRequests.getAndIncrement();
+                mAcceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                Response response = mResponses.get(Math.min(request, mResponses.size() - 1));
+                response.send(exchange);
+            }
+        });
+        mServer.start();
+        mUrl = new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + "/query");
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop(0);
+    }
+
+    private static HttpClient client(int maxRetries, long retryBaseDelayMillis) {
+        return new HttpClient(5000, 5000, maxRetries, retryBaseDelayMillis);
+    }
+
+    private static HttpClient client(int readTimeoutMillis, int maxRetries,
+                                     long retryBaseDelayMillis) {
+        return new HttpClient(5000, readTimeoutMillis, maxRetries, retryBaseDelayMillis);
+    }
+
+    private String get(HttpClient client) throws IOException {
+        return client.get(mUrl, null, new HttpClient.ResponseHandler<String>() {
+            @Override
+            public String onResponse(HttpURLConnection connection, int responseCode,
+                                     InputStream body) throws IOException {
+                return responseCode + " " + new String(readFully(body), UTF_8);
+            }
+        });
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(output);
+        gzip.write(text.getBytes(UTF_8));
+        gzip.close();
+        return output.toByteArray();
+    }
+
+    @Test
+    public void decompressesGzipBodies() throws IOException {
+        mResponses.add(new Response(200, gzip("{\"features\":[]}")).header("Content-Encoding",
+                "gzip"));
+
+        assertEquals("200 {\"features\":[]}", get(client(0, 1)));
+        assertEquals("gzip", mAcceptEncoding);
+    }
+
+    @Test
+    public void emptyGzipBodyIsEmpty() throws IOException {
+        mResponses.add(new Response(200, (byte[]) null).header("Content-Encoding", "gzip"));
+
+        assertEquals("200 ", get(client(0, 1)));
+        assertEquals(1, mRequests.get());
+    }
+
+    @Test
+    public void retriesServerErrors() throws IOException {
+        mResponses.add(new Response(503, "unavailable"));
+        mResponses.add(new Response(500, "error"));
+        mResponses.add(new Response(200, "ok"));
+
+        assertEquals("200 ok", get(client(3, 1)));
+        assertEquals(3, mRequests.get());
+    }
+
+    @Test
+    public void handsTheLastErrorToTheHandler() throws IOException {
+        mResponses.add(new Response(503, "unavailable"));
+
+        assertEquals("503 unavailable", get(client(2, 1)));
+        assertEquals(3, mRequests.get());
+    }
+
+    @Test
+    public void doesNotRetryClientErrors() throws IOException {
+        mResponses.add(new Response(404, "not found"));
+
+        assertEquals("404 not found", get(client(3, 1)));
+        assertEquals(1, mRequests.get());
+    }
+
+    @Test
+    public void retriesTooManyRequestsAfterRetryAfter() throws IOException {
+        mResponses.add(new Response(429, "slow down").header("Retry-After", "1"));
+        mResponses.add(new Response(200, "ok"));
+
+        long start = System.nanoTime();
+        assertEquals("200 ok", get(client(1, 1)));
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(2, mRequests.get());
+        assertTrue("waited " + elapsedMillis + "ms", elapsedMillis >= 1000);
+    }
+
+    @Test
+    public void doesNotWaitForALongRetryAfter() throws IOException {
+        mResponses.add(new Response(503, "maintenance").header("Retry-After", "3600"));
+
+        assertEquals("503 maintenance", get(client(3, 1)));
+        assertEquals(1, mRequests.get());
+    }
+
+    @Test
+    public void backoffStaysWithinItsBound() throws IOException {
+        mResponses.add(new Response(503, "unavailable"));
+
+        long start = System.nanoTime();
+        get(client(3, 100));
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        // full jitter waits at most 100 + 200 + 400ms
+        assertEquals(4, mRequests.get());
+        assertTrue("waited " + elapsedMillis + "ms", elapsedMillis < 700 + 1000);
+    }
+
+    @Test
+    public void retriesBodiesThatStopArriving() throws IOException {
+        mResponses.add(new Response(200, "partial").stall());
+        mResponses.add(new Response(200, "whole"));
+
+        assertEquals("200 whole", get(client(200, 1, 1)));
+        assertEquals(2, mRequests.get());
+    }
+
+    @Test
+    public void doesNotRetryHandlerFailures() {
+        mResponses.add(new Response(200, "not json"));
+
+        try {
+            client(3, 1).get(mUrl, null, new HttpClient.ResponseHandler<String>() {
+                @Override
+                public String onResponse(HttpURLConnection connection, int responseCode,
+                                         InputStream body) throws IOException {
+                    readFully(body);
+                    throw new IOException("Malformed response");
+                }
+            });
+            fail();
+        } catch (IOException e) {
+            assertEquals("Malformed response", e.getMessage());
+        }
+        assertEquals(1, mRequests.get());
+    }
+
+    /**
+     * Response of the stub server
+     */
+    private static final class Response {
+        private final int mCode;
+        private final byte[] mBody;
+        private final List<String[]> mHeaders = new ArrayList<>();
+        private boolean mStalled;
+
+        Response(int code, String body) {
+            this(code, body == null ? null : body.getBytes(UTF_8));
+        }
+
+        Response(int code, byte[] body) {
+            mCode = code;
+            mBody = body;
+        }
+
+        Response header(String name, String value) {
+            mHeaders.add(new String[]{name, value});
+            return this;
+        }
+
+        /**
+         * Announces a longer body than sent and leaves the exchange open
+         */
+        Response stall() {
+            mStalled = true;
+            return this;
+        }
+
+        void send(HttpExchange exchange) throws IOException {
+            for (String[] header : mHeaders) {
+                exchange.getResponseHeaders().add(header[0], header[1]);
+            }
+            if (mBody == null) {
+                exchange.sendResponseHeaders(mCode, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(mCode, mStalled ? mBody.length + 100 : mBody.length);
+            OutputStream body = exchange.getResponseBody();
+            body.write(mBody);
+            body.flush();
+            if (!mStalled) {
+                body.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MagnitudeAggregatorTest {
+
+    private static final long DAY = MagnitudeAggregator.DAY_MILLIS;
+
+    private static final int BANDS = EarthquakeFormatter.MAGNITUDE_BAND_COUNT;
+
+    @Test
+    public void countsByDayAndBand() {
+        MagnitudeAggregator aggregator = new MagnitudeAggregator();
+        aggregator.add("a", 4.2, 10 * DAY);
+        aggregator.add("b", 4.9, 10 * DAY + DAY - 1);
+        aggregator.add("c", 6.0, 11 * DAY);
+
+        assertEquals(3, aggregator.size());
+        assertEquals(2, aggregator.getBucketCount(10 * DAY + 5, 4));
+        assertEquals(0, aggregator.getBucketCount(10 * DAY, 6));
+        assertEquals(1, aggregator.getBucketCount(11 * DAY, 6));
+        assertEquals(2, aggregator.getCount(4));
+        assertEquals(1, aggregator.getCount(10 * DAY, 11 * DAY, 6));
+    }
+
+    @Test
+    public void updateMovesTheEvent() {
+        MagnitudeAggregator aggregator = new MagnitudeAggregator();
+        aggregator.add("a", 4.2, 10 * DAY);
+        aggregator.add("a", 5.1, 12 * DAY);
+
+        assertEquals(1, aggregator.size());
+        assertEquals(0, aggregator.getCount(4));
+        assertEquals(0, aggregator.getBucketCount(10 * DAY, 4));
+        assertEquals(1, aggregator.getBucketCount(12 * DAY, 5));
+    }
+
+    @Test
+    public void appliesSyncChanges() {
+        MagnitudeAggregator aggregator = new MagnitudeAggregator();
+        aggregator.add("a", 4.2, 10 * DAY);
+        aggregator.add("b", 3.0, 10 * DAY);
+
+        EarthquakeChanges changes = new EarthquakeChanges();
+        changes.getUpserts().add("c", 7.5, "Fiji region", 11 * DAY, "http://example.com/c");
+        changes.addDeletion("a");
+        changes.addDeletion("unknown");
+        aggregator.apply(changes);
+
+        assertEquals(2, aggregator.size());
+        assertArrayEquals(new int[]{0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0},
+                aggregator.getCounts(0, 20 * DAY));
+    }
+
+    @Test
+    public void bucketsBeforeTheEpochRoundDown() {
+        MagnitudeAggregator aggregator = new MagnitudeAggregator();
+        aggregator.add("a", 4.0, -1);
+        aggregator.add("b", 4.0, 0);
+
+        assertEquals(1, aggregator.getBucketCount(-DAY, 4));
+        assertEquals(1, aggregator.getBucketCount(0, 4));
+        assertEquals(1, aggregator.getCount(-DAY, -1, 4));
+    }
+
+    @Test
+    public void rangesOutsideTheCountsAreEmpty() {
+        MagnitudeAggregator aggregator = new MagnitudeAggregator();
+        assertEquals(0, aggregator.getCount(0, 100 * DAY, 4));
+
+        aggregator.add("a", 4.0, 50 * DAY);
+
+        assertEquals(0, aggregator.getCount(0, 40 * DAY, 4));
+        assertEquals(0, aggregator.getCount(60 * DAY, 100 * DAY, 4));
+        assertEquals(0, aggregator.getCount(60 * DAY, 50 * DAY, 4));
+        assertEquals(1, aggregator.getCount(Long.MIN_VALUE / 2, Long.MAX_VALUE / 2, 4));
+    }
+
+    @Test
+    public void bucketCountsCoverTheRange() {
+        MagnitudeAggregator aggregator = new MagnitudeAggregator();
+        aggregator.add("a", 2.5, 3 * DAY);
+        aggregator.add("b", 8.0, 5 * DAY);
+
+        int[][] counts = aggregator.getBucketCounts(2 * DAY, 6 * DAY - 1);
+
+        assertEquals(4, counts.length);
+        assertEquals(0, counts[0][2]);
+        assertEquals(1, counts[1][2]);
+        assertEquals(1, counts[3][8]);
+        assertEquals(0, aggregator.getBucketCounts(DAY, 0).length);
+    }
+
+    @Test
+    public void clearForgetsEverything() {
+        MagnitudeAggregator aggregator = new MagnitudeAggregator();
+        aggregator.add("a", 4.0, DAY);
+        aggregator.clear();
+
+        assertEquals(0, aggregator.size());
+        assertEquals(0, aggregator.getCount(4));
+        assertEquals(0, aggregator.getCount(0, 2 * DAY, 4));
+
+        aggregator.add("a", 4.0, DAY);
+        assertEquals(1, aggregator.getCount(0, 2 * DAY, 4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyBuckets() {
+        new MagnitudeAggregator(0);
+    }
+
+    @Test
+    public void rangeCountsMatchBruteForce() {
+        Random random = new Random(7);
+        MagnitudeAggregator aggregator = new MagnitudeAggregator(DAY);
+        Map<String, double[]> events = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            String id = "e" + random.nextInt(500);
+            if (random.nextInt(10) == 0) {
+                aggregator.remove(Collections.singleton(id));
+                events.remove(id);
+                continue;
+            }
+            // dates spread on both sides of the first one, so the counts grow both ways
+            double[] event = {random.nextDouble() * 9,
+                    (random.nextInt(400) - 200) * (double) DAY + random.nextInt((int) DAY)};
+            aggregator.add(id, event[0], (long) event[1]);
+            events.put(id, event);
+
+            if (i % 50 == 0) {
+                long start = (random.nextInt(500) - 250) * DAY + random.nextInt((int) DAY);
+                long end = start + random.nextInt(100) * DAY;
+                int[] expected = new int[BANDS];
+                for (double[] counted : events.values()) {
+                    long bucket = (long) Math.floor(counted[1] / DAY);
+                    if (bucket >= Math.floor((double) start / DAY)
+                            && bucket <= Math.floor((double) end / DAY)) {
+                        expected[EarthquakeFormatter.getMagnitudeBand(counted[0])]++;
+                    }
+                }
+                assertEquals(Arrays.toString(expected),
+                        Arrays.toString(aggregator.getCounts(start, end)));
+            }
+        }
+        assertEquals(events.size(), aggregator.size());
+    }
+}
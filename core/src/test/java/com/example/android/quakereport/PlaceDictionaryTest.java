@@ -0,0 +1,145 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class PlaceDictionaryTest {
+
+    private static String roundTrip(String place) {
+        long tokens = PlaceDictionary.tokenize(place);
+        return PlaceDictionary.toPlace(PlaceDictionary.getOffset(tokens),
+                PlaceDictionary.getRegionId(tokens));
+    }
+
+    /**
+     * Asserts that a place is kept whole, as a region without offset
+     */
+    private static void assertKeptWhole(String place) {
+        long tokens = PlaceDictionary.tokenize(place);
+
+        assertEquals(place, PlaceDictionary.NO_OFFSET, PlaceDictionary.getOffset(tokens));
+        assertEquals(place, PlaceDictionary.getRegion(PlaceDictionary.getRegionId(tokens)));
+        assertEquals(place, roundTrip(place));
+    }
+
+    @Test
+    public void tokenizesSpacedOffsets() {
+        long tokens = PlaceDictionary.tokenize("10 km SSW of Yelizovo, Russia");
+        int offset = PlaceDictionary.getOffset(tokens);
+
+        assertEquals(10, PlaceDictionary.getDistance(offset));
+        assertEquals("SSW", PlaceDictionary.getDirection(offset));
+        assertEquals("10 km SSW of", PlaceDictionary.formatOffset(offset));
+        assertEquals("Yelizovo, Russia",
+                PlaceDictionary.getRegion(PlaceDictionary.getRegionId(tokens)));
+        assertEquals("10 km SSW of Yelizovo, Russia", roundTrip("10 km SSW of Yelizovo, Russia"));
+    }
+
+    @Test
+    public void tokenizesUnspacedOffsets() {
+        long tokens = PlaceDictionary.tokenize("85km NNE of Hihifo, Tonga");
+        int offset = PlaceDictionary.getOffset(tokens);
+
+        assertEquals(85, PlaceDictionary.getDistance(offset));
+        assertEquals("NNE", PlaceDictionary.getDirection(offset));
+        assertEquals("85km NNE of", PlaceDictionary.formatOffset(offset));
+        assertEquals("85km NNE of Hihifo, Tonga", roundTrip("85km NNE of Hihifo, Tonga"));
+    }
+
+    @Test
+    public void spacedAndUnspacedOffsetsShareTheRegion() {
+        long spaced = PlaceDictionary.tokenize("3 km W of Cobb, California");
+        long unspaced = PlaceDictionary.tokenize("3km W of Cobb, California");
+
+        assertEquals(PlaceDictionary.getRegionId(spaced), PlaceDictionary.getRegionId(unspaced));
+        assertEquals(PlaceDictionary.getDistance(PlaceDictionary.getOffset(spaced)),
+                PlaceDictionary.getDistance(PlaceDictionary.getOffset(unspaced)));
+        assertEquals("3 km W of Cobb, California", roundTrip("3 km W of Cobb, California"));
+        assertEquals("3km W of Cobb, California", roundTrip("3km W of Cobb, California"));
+    }
+
+    @Test
+    public void roundTripsEveryDirection() {
+        String[] directions = {"N", "NNE", "NE", "ENE", "E", "ESE", "SE", "SSE", "S", "SSW",
+                "SW", "WSW", "W", "WNW", "NW", "NNW"};
+        for (String direction : directions) {
+            String place = "0 km " + direction + " of Somewhere";
+            int offset = PlaceDictionary.getOffset(PlaceDictionary.tokenize(place));
+
+            assertEquals(direction, PlaceDictionary.getDirection(offset));
+            assertEquals(0, PlaceDictionary.getDistance(offset));
+            assertEquals(place, roundTrip(place));
+        }
+    }
+
+    @Test
+    public void keepsPlacesWithoutOffsetWhole() {
+        assertKeptWhole("Fiji region");
+        assertKeptWhole("South of the Fiji Islands");
+        assertKeptWhole("");
+
+        int offset = PlaceDictionary.NO_OFFSET;
+        assertEquals(-1, PlaceDictionary.getDistance(offset));
+        assertNull(PlaceDictionary.getDirection(offset));
+    }
+
+    @Test
+    public void keepsLeadingZerosAndLongDistancesWhole() {
+        assertKeptWhole("07 km N of Somewhere");
+        assertKeptWhole("00km N of Somewhere");
+        // more digits than an offset token holds
+        assertKeptWhole("12345678 km N of Somewhere");
+        assertEquals(1234567, PlaceDictionary.getDistance(PlaceDictionary.getOffset(
+                PlaceDictionary.tokenize("1234567 km N of Somewhere"))));
+    }
+
+    @Test
+    public void keepsOtherFormsWhole() {
+        assertKeptWhole("10 km");
+        assertKeptWhole("10 km N");
+        assertKeptWhole("10 km N of");
+        assertKeptWhole("10 km N of ");
+        assertKeptWhole("10  km N of Somewhere");
+        assertKeptWhole("10 km  N of Somewhere");
+        assertKeptWhole("10 km NNNE of Somewhere");
+        assertKeptWhole("10 km n of Somewhere");
+        assertKeptWhole("10 mi N of Somewhere");
+        assertKeptWhole("10 km N from Somewhere");
+        assertKeptWhole("10.5 km N of Somewhere");
+        assertKeptWhole("-10 km N of Somewhere");
+    }
+
+    @Test
+    public void findsRegions() {
+        int regionId = PlaceDictionary.getRegionId(
+                PlaceDictionary.tokenize("12 km E of Ridgecrest, CA"));
+
+        assertEquals(regionId, PlaceDictionary.findRegion("Ridgecrest, CA"));
+        assertEquals(regionId, PlaceDictionary.getRegionId(
+                PlaceDictionary.tokenize("4km SW of Ridgecrest, CA")));
+        assertSame(PlaceDictionary.getRegion(regionId),
+                PlaceDictionary.getRegion(PlaceDictionary.findRegion("Ridgecrest, CA")));
+        assertEquals(-1, PlaceDictionary.findRegion("Never tokenized region"));
+    }
+
+    @Test
+    public void roundTripsRandomPlaces() {
+        String[] parts = {"0", "1", "7", "10", "012", "1234567", "12345678", " ", "km", " km",
+                "N", "SSW", "X", " of ", "of", "Region", ",", "."};
+        Random random = new Random(7);
+        for (int n = 0; n < 10000; n++) {
+            StringBuilder place = new StringBuilder();
+            int count = random.nextInt(8);
+            for (int p = 0; p < count; p++) {
+                place.append(parts[random.nextInt(parts.length)]);
+            }
+
+            assertEquals(place.toString(), roundTrip(place.toString()));
+        }
+    }
+}
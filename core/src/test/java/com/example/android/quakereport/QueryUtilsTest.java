@@ -0,0 +1,189 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class QueryUtilsTest {
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(Charset.forName("UTF-8")));
+    }
+
+    private static String feature(String id, String mag, String time) {
+        return "{\"type\":\"Feature\",\"properties\":{\"mag\":" + mag + ",\"place\":"
+                + "\"10km N of Somewhere\",\"time\":" + time + ",\"url\":"
+                + "\"http://earthquake.usgs.gov/earthquakes/eventpage/" + id + "\"},"
+                + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[10.5,20.25,5]},"
+                + "\"id\":\"" + id + "\"}";
+    }
+
+    private static String collection(String... features) {
+        StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int i = 0; i < features.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(features[i]);
+        }
+        return json.append("]}").toString();
+    }
+
+    @Test
+    public void readsFeatures() throws IOException {
+        EarthquakeStore earthquakes = QueryUtils.extractEarthquakes(stream(collection(
+                feature("a", "5.5", "1000"), feature("b", "6.1", "2000"))));
+
+        assertEquals(2, earthquakes.size());
+        assertEquals("a", earthquakes.getId(0));
+        assertEquals(5.5, earthquakes.getMagnitude(0), 0);
+        assertEquals(1000, earthquakes.getDateInMillis(0));
+        assertEquals("10km N of Somewhere", earthquakes.getPlace(0));
+        assertEquals(20.25, earthquakes.getLatitude(0), 0);
+        assertEquals(10.5, earthquakes.getLongitude(0), 0);
+        assertEquals("b", earthquakes.getId(1));
+    }
+
+    @Test
+    public void skipsFeatureWithNonNumericMagnitude() throws IOException {
+        EarthquakeStore earthquakes = QueryUtils.extractEarthquakes(stream(collection(
+                feature("a", "5.5", "1000"), feature("b", "\"big\"", "2000"),
+                feature("c", "4.0", "3000"))));
+
+        assertEquals(2, earthquakes.size());
+        assertEquals("a", earthquakes.getId(0));
+        assertEquals("c", earthquakes.getId(1));
+    }
+
+    @Test
+    public void skipsFeatureWithFractionalTime() throws IOException {
+        EarthquakeStore earthquakes = QueryUtils.extractEarthquakes(stream(collection(
+                feature("a", "5.5", "1000.5"), feature("b", "6.1", "2000"))));
+
+        assertEquals(1, earthquakes.size());
+        assertEquals("b", earthquakes.getId(0));
+    }
+
+    @Test
+    public void keepsFeaturesReadBeforeUnexpectedToken() throws IOException {
+        EarthquakeStore earthquakes = QueryUtils.extractEarthquakes(stream(collection(
+                feature("a", "5.5", "1000"), "42", feature("b", "6.1", "2000"))));
+
+        assertEquals(1, earthquakes.size());
+        assertEquals("a", earthquakes.getId(0));
+    }
+
+    @Test
+    public void countsSkippedFeaturesOfTheResponse() throws IOException {
+        EarthquakeStore earthquakes = QueryUtils.extractEarthquakes(stream(collection(
+                feature("a", "5.5", "1000"), feature("b", "\"big\"", "2000"))));
+
+        assertEquals(1, earthquakes.size());
+        assertEquals(2, earthquakes.getResponseFeatureCount());
+    }
+
+    @Test
+    public void emptyResponseHasNoFeatures() throws IOException {
+        EarthquakeStore earthquakes = QueryUtils.extractEarthquakes(stream(collection()));
+
+        assertEquals(0, earthquakes.size());
+        assertEquals(0, earthquakes.getResponseFeatureCount());
+    }
+
+    @Test
+    public void pagesStayWithinTheOffsetAndLimitOfTheQuery() {
+        String query = "http://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson";
+
+        assertEquals(query + "&offset=21&limit=20", QueryUtils.buildPageUrl(query, 21, 20));
+        assertEquals(query + "&offset=30&limit=20",
+                QueryUtils.buildPageUrl(query + "&offset=10", 21, 20));
+        assertEquals(query + "&offset=21&limit=5",
+                QueryUtils.buildPageUrl(query + "&limit=25", 21, 20));
+        assertNull(QueryUtils.buildPageUrl(query + "&limit=20", 21, 20));
+    }
+
+    @Test
+    public void streamingAndTreeParsersAgree() throws IOException, JSONException {
+        for (int features : new int[]{10, 100}) {
+            byte[] response = GeoJsonFixtures.load(features);
+            EarthquakeStore streamed = QueryUtils.STREAMING_PARSER.parse(
+                    new ByteArrayInputStream(response));
+            EarthquakeStore tree = QueryUtils.TREE_PARSER.parse(
+                    new ByteArrayInputStream(response));
+
+            assertEquals(features, streamed.size());
+            assertEquals(features, tree.size());
+            for (int i = 0; i < features; i++) {
+                assertEquals(tree.getId(i), streamed.getId(i));
+                assertEquals(tree.getMagnitude(i), streamed.getMagnitude(i), 0);
+                assertEquals(tree.getDateInMillis(i), streamed.getDateInMillis(i));
+                assertEquals(tree.getPlace(i), streamed.getPlace(i));
+                assertEquals(tree.getUrl(i), streamed.getUrl(i));
+                assertEquals(tree.getLatitude(i), streamed.getLatitude(i), 0);
+                assertEquals(tree.getLongitude(i), streamed.getLongitude(i), 0);
+            }
+        }
+    }
+
+    @Test
+    public void cacheFallbackIsNotReusedByLaterRequests() throws IOException {
+        final byte[] fresh = collection(feature("new", "4.0", "2000")).getBytes("UTF-8");
+        final AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                // the first request fails, the following ones succeed
+                if (requests.getAndIncrement() == 0) {
+                    exchange.sendResponseHeaders(503, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.sendResponseHeaders(200, fresh.length);
+                OutputStream body = exchange.getResponseBody();
+                body.write(fresh);
+                body.close();
+            }
+        });
+        server.start();
+        File directory = File.createTempFile("queryutils", "");
+        directory.delete();
+        QueryUtils.setHttpClient(new HttpClient(5000, 5000, 0, 1));
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/query";
+            EarthquakeCache cache = new EarthquakeCache(directory, 1024 * 1024, 60 * 1000);
+            cache.put(url, QueryUtils.extractEarthquakes(stream(collection(
+                    feature("old", "5.5", "1000")))), null, 0);
+
+            assertEquals("old", QueryUtils.fetchEarthquakesData(url, cache).getId(0));
+            assertEquals("new", QueryUtils.fetchEarthquakesData(url, cache).getId(0));
+            assertEquals(2, requests.get());
+        } finally {
+            QueryUtils.setHttpClient(null);
+            QueryUtils.clearRecentResponses();
+            server.stop(0);
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RequestCoalescerTest {
+
+    private static final String KEY = "http://earthquake.usgs.gov/fdsnws/event/1/query";
+
+    private static EarthquakeStore earthquakes() {
+        EarthquakeStore earthquakes = new EarthquakeStore();
+        earthquakes.add("a", 4.5, "Fiji region", 1000, "http://example.com/a");
+        return earthquakes;
+    }
+
+    private static Callable<EarthquakeStore> returning(final EarthquakeStore earthquakes,
+                                                       final AtomicInteger calls) {
+        return new Callable<EarthquakeStore>() {
+            @Override
+            public EarthquakeStore call() {
+                calls.incrementAndGet();
+                return earthquakes;
+            }
+        };
+    }
+
+    @Test
+    public void singleCallerGetsTheFetchedStore() {
+        EarthquakeStore fetched = earthquakes();
+
+        EarthquakeStore earthquakes = new RequestCoalescer(10000, 4).fetch(KEY,
+                returning(fetched, new AtomicInteger()));
+
+        assertSame(fetched, earthquakes);
+    }
+
+    @Test
+    public void recentRequestsShareTheStore() {
+        RequestCoalescer coalescer = new RequestCoalescer(10000, 4);
+        EarthquakeStore fetched = earthquakes();
+        AtomicInteger calls = new AtomicInteger();
+        coalescer.fetch(KEY, returning(fetched, calls));
+
+        EarthquakeStore recent = coalescer.fetch(KEY, returning(earthquakes(), calls));
+
+        assertEquals(1, calls.get());
+        assertSame(fetched, recent);
+    }
+
+    @Test
+    public void failuresAreNotKept() {
+        RequestCoalescer coalescer = new RequestCoalescer(10000, 4);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertNull(coalescer.fetch(KEY, returning(null, calls)));
+        coalescer.fetch(KEY, returning(earthquakes(), calls));
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void callersJoiningARunningFetchShareTheStore() throws InterruptedException {
+        final RequestCoalescer coalescer = new RequestCoalescer(0, 4);
+        final EarthquakeStore fetched = earthquakes();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicReference<EarthquakeStore> ownerResult = new AtomicReference<>();
+
+        Thread owner = new Thread() {
+            @Override
+            public void run() {
+                ownerResult.set(coalescer.fetch(KEY, new Callable<EarthquakeStore>() {
+                    @Override
+                    public EarthquakeStore call() throws InterruptedException {
+                        calls.incrementAndGet();
+                        started.countDown();
+                        release.await();
+                        return fetched;
+                    }
+                }));
+            }
+        };
+        owner.start();
+        started.await();
+
+        final AtomicReference<EarthquakeStore> joinedResult = new AtomicReference<>();
+        Thread joined = new Thread() {
+            @Override
+            public void run() {
+                joinedResult.set(coalescer.fetch(KEY, returning(earthquakes(), calls)));
+            }
+        };
+        joined.start();
+        // give the second caller time to find the running fetch
+        Thread.sleep(100);
+        release.countDown();
+        owner.join();
+        joined.join();
+
+        assertEquals(1, calls.get());
+        assertSame(fetched, ownerResult.get());
+        assertSame(fetched, joinedResult.get());
+    }
+}
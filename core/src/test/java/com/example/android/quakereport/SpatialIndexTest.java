@@ -0,0 +1,162 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpatialIndexTest {
+
+    private static final String EVENT_PAGE = "http://earthquake.usgs.gov/earthquakes/eventpage/";
+
+    // centers of the radius queries: open ocean, both sides of the antimeridian and both poles
+    private static final double[][] CENTERS = {{10, 20}, {-15, 179.9}, {52, -179.5},
+            {89.9, 0}, {-89.5, 120}, {0, 180}};
+
+    private static final double[] RADII_KM = {1, 50, 500, 3000};
+
+    /**
+     * Returns random epicenters, a third of them close to the antimeridian or the poles, and a
+     * few without coordinates
+     */
+    private static EarthquakeStore randomEarthquakes(int count, long seed) {
+        Random random = new Random(seed);
+        EarthquakeStore earthquakes = new EarthquakeStore(count);
+        for (int i = 0; i < count; i++) {
+            double latitude = random.nextDouble() * 180 - 90;
+            double longitude = random.nextDouble() * 360 - 180;
+            switch (i % 6) {
+                case 0:
+                    longitude = 180 - random.nextDouble() * 2;
+                    break;
+                case 1:
+                    latitude = random.nextBoolean() ? 90 - random.nextDouble() * 2
+                            : -90 + random.nextDouble() * 2;
+                    break;
+                case 2:
+                    if (i % 60 == 2) {
+                        latitude = Double.NaN;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            earthquakes.add("e" + i, 4.0, "Fiji region", i, EVENT_PAGE + "e" + i, latitude,
+                    longitude);
+        }
+        return earthquakes;
+    }
+
+    private static int[] bruteForceRadius(EarthquakeStore earthquakes, double latitude,
+                                          double longitude, double radiusKm) {
+        int[] rows = new int[earthquakes.size()];
+        int count = 0;
+        for (int i = 0; i < earthquakes.size(); i++) {
+            double rowLatitude = earthquakes.getLatitude(i);
+            double rowLongitude = earthquakes.getLongitude(i);
+            if (!Double.isNaN(rowLatitude) && GeoGrid.getDistanceKm(latitude, longitude,
+                    rowLatitude, rowLongitude) <= radiusKm) {
+                rows[count++] = i;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    private static int[] bruteForceBox(EarthquakeStore earthquakes, double south, double west,
+                                       double north, double east) {
+        int[] rows = new int[earthquakes.size()];
+        int count = 0;
+        for (int i = 0; i < earthquakes.size(); i++) {
+            double latitude = earthquakes.getLatitude(i);
+            double longitude = earthquakes.getLongitude(i);
+            boolean inLongitude = west <= east ? longitude >= west && longitude <= east
+                    : longitude >= west || longitude <= east;
+            if (latitude >= south && latitude <= north && inLongitude) {
+                rows[count++] = i;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    @Test
+    public void radiusQueriesMatchBruteForce() {
+        EarthquakeStore earthquakes = randomEarthquakes(20000, 42);
+        for (double cellSize : new double[]{SpatialIndex.DEFAULT_CELL_SIZE_DEGREES, 1, 7}) {
+            SpatialIndex index = new SpatialIndex(earthquakes, cellSize);
+            for (double[] center : CENTERS) {
+                for (double radiusKm : RADII_KM) {
+                    assertArrayEquals("cell " + cellSize + " center " + Arrays.toString(center)
+                                    + " radius " + radiusKm,
+                            bruteForceRadius(earthquakes, center[0], center[1], radiusKm),
+                            index.queryRadius(center[0], center[1], radiusKm));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void boxQueriesMatchBruteForce() {
+        EarthquakeStore earthquakes = randomEarthquakes(20000, 7);
+        double[][] boxes = {{-10, 20, 10, 40}, {-30, 170, 30, -170}, {80, -180, 90, 180},
+                {-90, 179, -85, -179}, {-5.5, -0.5, 5.5, 0.5}};
+        SpatialIndex index = new SpatialIndex(earthquakes);
+        for (double[] box : boxes) {
+            assertArrayEquals(Arrays.toString(box),
+                    bruteForceBox(earthquakes, box[0], box[1], box[2], box[3]),
+                    index.queryBox(box[0], box[1], box[2], box[3]));
+        }
+    }
+
+    @Test
+    public void earthquakesWithoutCoordinatesAreNotIndexed() {
+        EarthquakeStore earthquakes = new EarthquakeStore();
+        earthquakes.add("a", 4.0, "Fiji region", 0, EVENT_PAGE + "a", 1, 1);
+        earthquakes.add("b", 4.0, "Fiji region", 0, EVENT_PAGE + "b");
+
+        SpatialIndex index = new SpatialIndex(earthquakes);
+
+        assertEquals(1, index.size());
+        assertArrayEquals(new int[]{0}, index.queryBox(-90, -180, 90, 180));
+    }
+
+    @Test
+    public void boundingBoxHoldsEveryPointWithinTheRadius() {
+        Random random = new Random(3);
+        for (double[] center : CENTERS) {
+            for (double radiusKm : RADII_KM) {
+                double[] box = GeoGrid.getBoundingBox(center[0], center[1], radiusKm);
+                int[] cells = GeoGrid.getCells(box[0], box[1], box[2], box[3]);
+                Arrays.sort(cells);
+                for (int i = 0; i < 2000; i++) {
+                    // random points around the center, some of them within the radius
+                    double latitude = Math.max(-90, Math.min(90,
+                            center[0] + (random.nextDouble() * 2 - 1) * radiusKm / 100));
+                    double longitude = GeoGrid.normalizeLongitude(
+                            center[1] + (random.nextDouble() * 2 - 1) * radiusKm / 50);
+                    if (GeoGrid.getDistanceKm(center[0], center[1], latitude, longitude)
+                            > radiusKm) {
+                        continue;
+                    }
+                    String point = Arrays.toString(center) + " " + radiusKm + "km: "
+                            + latitude + "," + longitude;
+                    assertTrue(point, latitude >= box[0] && latitude <= box[2]);
+                    assertTrue(point, box[1] <= box[3]
+                            ? longitude >= box[1] && longitude <= box[3]
+                            : longitude >= box[1] || longitude <= box[3]);
+                    assertTrue(point, Arrays.binarySearch(cells,
+                            GeoGrid.getCell(latitude, longitude)) >= 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void distanceAcrossTheAntimeridianIsShort() {
+        assertEquals(22.2, GeoGrid.getDistanceKm(0, 179.9, 0, -179.9), 0.1);
+        assertEquals(0, GeoGrid.getDistanceKm(90, 0, 90, 120), 1e-9);
+    }
+}
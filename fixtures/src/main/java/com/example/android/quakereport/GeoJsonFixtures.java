@@ -0,0 +1,120 @@
+package com.example.android.quakereport;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * USGS GeoJSON responses shared by the benchmarks, the load test and the unit tests of the core
+ * module. The 10 feature response is a USGS query response kept in the resources, larger
+ * responses repeat its features with new ids, times and distances so every feature stays
+ * distinct.
+ */
+public final class GeoJsonFixtures {
+
+    private static final String RESPONSE_10 = "/usgs_query_10.geojson";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Create a private constructor because no one should ever create a {@link GeoJsonFixtures}
+     * object.
+     */
+    private GeoJsonFixtures() {
+    }
+
+    /**
+     * Returns the recorded 10 feature USGS response as UTF-8 bytes
+     *
+     * @return response bytes
+     * @throws IOException if the resource is missing
+     */
+    public static byte[] readRecorded() throws IOException {
+        return readResource(RESPONSE_10);
+    }
+
+    /**
+     * Returns a GeoJSON response with the given number of features as UTF-8 bytes
+     *
+     * @param featureCount number of features in the response
+     * @return response bytes
+     */
+    public static byte[] load(int featureCount) throws IOException, JSONException {
+        byte[] recorded = readRecorded();
+        JSONObject response = new JSONObject(new String(recorded, UTF_8));
+        JSONArray recordedFeatures = response.getJSONArray("features");
+        if (featureCount == recordedFeatures.length()) {
+            return recorded;
+        }
+
+        // write the features one by one instead of building a tree of all of them
+        StringBuilder json = new StringBuilder(recorded.length / recordedFeatures.length()
+                * featureCount + 1024);
+        JSONObject metadata = response.getJSONObject("metadata");
+        metadata.put("count", featureCount);
+        metadata.put("limit", featureCount);
+        json.append("{\"type\":\"FeatureCollection\",\"metadata\":").append(metadata)
+                .append(",\"features\":[");
+
+        long time = recordedFeatures.getJSONObject(0).getJSONObject("properties")
+                .getLong("time");
+        for (int i = 0; i < featureCount; i++) {
+            JSONObject feature = new JSONObject(
+                    recordedFeatures.getJSONObject(i % recordedFeatures.length()).toString());
+            JSONObject properties = feature.getJSONObject("properties");
+
+            String id = "bm" + Integer.toString(i, 36);
+            time -= 60000 + (i * 7919L) % 3600000;
+            properties.put("time", time);
+            properties.put("updated", time + 600000);
+            properties.put("code", id.substring(2));
+            properties.put("ids", "," + id + ",");
+            properties.put("url", "http://earthquake.usgs.gov/earthquakes/eventpage/" + id);
+            properties.put("place", varyDistance(properties.getString("place"), i));
+            feature.put("id", id);
+
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(feature);
+        }
+
+        json.append("],\"bbox\":").append(response.getJSONArray("bbox")).append('}');
+        return json.toString().getBytes(UTF_8);
+    }
+
+    /**
+     * Changes the distance of "N km DIR of X" places so the number of distinct places grows
+     * with the response like it does in real responses
+     */
+    private static String varyDistance(String place, int i) {
+        int index = place.indexOf("km ");
+        if (index <= 0 || !Character.isDigit(place.charAt(0))) {
+            return place;
+        }
+        return (1 + i % 300) + place.substring(index);
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        InputStream inputStream = GeoJsonFixtures.class.getResourceAsStream(name);
+        if (inputStream == null) {
+            throw new IOException("Missing fixture " + name);
+        }
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.example.android.quakereport;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test of the fetching and parsing code against a local {@link UsgsStubServer}: clients
+ * send requests concurrently and the test reports the throughput, the latency percentiles, the
+ * heap high-water mark and the {@link Metrics} of every stage of the pipeline.
+ *
+ * In fetch mode every request is a {@link QueryUtils#fetchEarthquakesData(String)}. In loader
+ * mode every client does what an {@link EarthquakeSync} driven loader does on each load: sync its
+ * query, a full download the first time and the new events afterwards, then format the display
+ * fields of the earthquakes on a pool of threads. The Android loader itself does not run on the
+ * JVM. In serve mode the stub server only runs, for example to point the app at it.
+ *
+ * Options are given as "--name value", see {@link #usage()}.
+ */
+public final class LoadTest {
+
+    // time between two samples of the heap used
+    private static final long HEAP_SAMPLE_MILLIS = 10;
+
+    private static final int FORMAT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    private final Map<String, String> mOptions;
+
+    private final int mClients;
+
+    private final int mRequests;
+
+    private final int mWarmupRequests;
+
+    private final int mQueries;
+
+    private final boolean mLoaderMode;
+
+    private final Histogram mLatency = new Histogram("request", Histogram.Unit.NANOSECONDS);
+
+    private final AtomicLong mFailures = new AtomicLong();
+
+    private final AtomicLong mEarthquakes = new AtomicLong();
+
+    private final ExecutorService mFormatExecutor = Executors.newFixedThreadPool(
+            FORMAT_PARALLELISM - 1 > 0 ? FORMAT_PARALLELISM - 1 : 1);
+
+    private LoadTest(Map<String, String> options) {
+        mOptions = options;
+        mClients = getInt("clients", 8);
+        mRequests = getInt("requests", 50);
+        mWarmupRequests = getInt("warmup", 5);
+        mQueries = getInt("queries", 0);
+        mLoaderMode = getString("mode", "fetch").equals("loader");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        if (options == null) {
+            System.err.println(usage());
+            System.exit(2);
+            return;
+        }
+        new LoadTest(options).run();
+    }
+
+    private void run() throws Exception {
+        UsgsStubServer server = new UsgsStubServer(getInt("port", 0));
+        server.setFeatureCount(getInt("features", 1000));
+        server.setDeltaFeatureCount(getInt("delta", 10));
+        server.setLatencyMillis(getInt("latency", 50));
+        server.setBandwidth(getInt("bandwidth", 0));
+        server.setErrorRate(Double.parseDouble(getString("errors", "0")));
+        String recorded = getString("recorded", null);
+        if (recorded != null) {
+            server.setRecordedResponse(readFile(new File(recorded)));
+        }
+        server.start();
+
+        String mode = getString("mode", "fetch");
+        if (mode.equals("serve")) {
+            System.out.println("Serving " + server.getQueryUrl());
+            return;
+        }
+        if (!mode.equals("fetch") && !mode.equals("loader")) {
+            System.err.println(usage());
+            server.stop();
+            System.exit(2);
+            return;
+        }
+
+        // keep as many idle connections as there are clients, like a busy app would
+        System.setProperty("http.maxConnections", String.valueOf(mClients));
+        installAllocationCounter();
+
+        try {
+            runClients(server.getQueryUrl(), mWarmupRequests);
+            reset();
+            HeapSampler heapSampler = new HeapSampler();
+            heapSampler.start();
+            long gcCount = getGcCount();
+            long gcMillis = getGcMillis();
+            long requestsBefore = server.getRequestCount();
+            long bytesBefore = server.getBytesSent();
+
+            long start = System.nanoTime();
+            runClients(server.getQueryUrl(), mRequests);
+            long elapsed = System.nanoTime() - start;
+            heapSampler.interrupt();
+            heapSampler.join();
+
+            report(mode, elapsed, heapSampler.getMaxUsed(), getGcCount() - gcCount,
+                    getGcMillis() - gcMillis, server.getRequestCount() - requestsBefore,
+                    server.getBytesSent() - bytesBefore);
+        } finally {
+            mFormatExecutor.shutdownNow();
+            server.stop();
+        }
+    }
+
+    /**
+     * Runs the clients until each has sent the given number of requests
+     */
+    private void runClients(final String queryUrl, final int requests)
+            throws InterruptedException {
+        if (requests <= 0) {
+            return;
+        }
+        final CountDownLatch done = new CountDownLatch(mClients);
+        List<Thread> clients = new ArrayList<>();
+        for (int c = 0; c < mClients; c++) {
+            final int client = c;
+            clients.add(new Thread("client-" + client) {
+                @Override
+                public void run() {
+                    try {
+                        runClient(queryUrl, client, requests);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        for (Thread thread : clients) {
+            thread.start();
+        }
+        done.await();
+    }
+
+    private void runClient(String queryUrl, int client, int requests) {
+        // a loader keeps its sync between loads, so every load after the first is a delta
+        EarthquakeSync sync = new EarthquakeSync(getClientUrl(queryUrl, client, 0));
+        for (int r = 0; r < requests; r++) {
+            long start = System.nanoTime();
+            EarthquakeStore earthquakes;
+            if (mLoaderMode) {
+                sync.sync();
+                earthquakes = sync.getNewestUpdate() == 0 ? null : sync.getEarthquakes();
+                if (earthquakes != null) {
+                    try {
+                        earthquakes.formatDisplayFields(mFormatExecutor, FORMAT_PARALLELISM);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            } else {
+                earthquakes = QueryUtils.fetchEarthquakesData(getClientUrl(queryUrl, client, r));
+            }
+            mLatency.record(System.nanoTime() - start);
+            if (earthquakes == null) {
+                mFailures.incrementAndGet();
+            } else {
+                mEarthquakes.addAndGet(earthquakes.size());
+            }
+        }
+    }
+
+    /**
+     * Returns the url of a request. With --queries N the clients share N distinct queries, so
+     * identical requests are coalesced, otherwise every request is a query of its own.
+     */
+    private String getClientUrl(String queryUrl, int client, int request) {
+        int query = client * Math.max(mRequests, mWarmupRequests) + request;
+        if (mQueries > 0) {
+            query %= mQueries;
+        }
+        return queryUrl + "&loadtestquery=" + query;
+    }
+
+    private void reset() {
+        Metrics.reset();
+        mLatency.reset();
+        mFailures.set(0);
+        mEarthquakes.set(0);
+        QueryUtils.clearRecentResponses();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+    }
+
+    private void report(String mode, long elapsedNanos, long maxHeapUsed, long gcCount,
+                        long gcMillis, long serverRequests, long bytesSent) {
+        long requests = (long) mClients * mRequests;
+        double seconds = elapsedNanos / 1e9;
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.US, "mode=%s clients=%d requests=%d options=%s%n",
+                mode, mClients, requests, mOptions));
+        text.append(String.format(Locale.US,
+                "throughput %.1f requests/s, %.0f earthquakes/s, %d failed%n",
+                requests / seconds, mEarthquakes.get() / seconds, mFailures.get()));
+        text.append(String.format(Locale.US, "latency p50=%.2fms p99=%.2fms max=%.2fms%n",
+                mLatency.getPercentile(50) / 1e6, mLatency.getPercentile(99) / 1e6,
+                mLatency.getMax() / 1e6));
+        text.append(String.format(Locale.US,
+                "heap high-water %.1fMB sampled, %.1fMB pool peaks, gc %d in %dms%n",
+                maxHeapUsed / 1048576.0, getHeapPoolPeaks() / 1048576.0, gcCount, gcMillis));
+        text.append(String.format(Locale.US, "server %d requests, %.1fMB sent%n",
+                serverRequests, bytesSent / 1048576.0));
+        text.append(Metrics.dump());
+        System.out.print(text);
+    }
+
+    /**
+     * Measures the allocations of the parse stage with the thread allocation counter of the JVM,
+     * when it has one
+     */
+    private static void installAllocationCounter() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        final com.sun.management.ThreadMXBean allocations =
+                (com.sun.management.ThreadMXBean) threads;
+        if (!allocations.isThreadAllocatedMemorySupported()) {
+            return;
+        }
+        allocations.setThreadAllocatedMemoryEnabled(true);
+        Metrics.setAllocationCounter(new Metrics.AllocationCounter() {
+            @Override
+            public long getAllocatedBytes() {
+                return allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        });
+    }
+
+    /**
+     * Returns the sum of the peak usages of the heap pools since they were reset, an upper bound
+     * of the heap high-water mark as the pools may peak at different times
+     */
+    private static long getHeapPoolPeaks() {
+        long peaks = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peaks += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peaks;
+    }
+
+    private static long getGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long getGcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private int getInt(String name, int defaultValue) {
+        String value = mOptions.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private String getString(String name, String defaultValue) {
+        String value = mOptions.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Parses "--name value" pairs
+     *
+     * @return options by name, null if the arguments are not pairs
+     */
+    private static Map<String, String> parseOptions(String[] args) {
+        if (args.length % 2 != 0) {
+            return null;
+        }
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                return null;
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    private static String usage() {
+        return "Usage: LoadTest [--name value]...\n"
+                + "  --mode fetch|loader|serve  what each request does (fetch)\n"
+                + "  --clients N                concurrent clients (8)\n"
+                + "  --requests N               measured requests per client (50)\n"
+                + "  --warmup N                 requests per client before measuring (5)\n"
+                + "  --queries N                distinct queries shared by the clients,"
+                + " 0 for one per request (0)\n"
+                + "  --features N               features of the synthetic responses (1000)\n"
+                + "  --delta N                  new events returned to delta queries (10)\n"
+                + "  --recorded FILE            serve a recorded GeoJSON response instead\n"
+                + "  --latency MILLIS           delay before each response (50)\n"
+                + "  --bandwidth BYTES          bytes per second of each response, 0 for no"
+                + " limit (0)\n"
+                + "  --errors RATE              share of requests answered 503 (0)\n"
+                + "  --port N                   port of the stub server, 0 for any (0)";
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            return UsgsStubServer.readFully(inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Samples the heap used until interrupted
+     */
+    private static final class HeapSampler extends Thread {
+        private volatile long mMaxUsed;
+
+        HeapSampler() {
+            super("heap-sampler");
+            setDaemon(true);
+        }
+
+        long getMaxUsed() {
+            return mMaxUsed;
+        }
+
+        @Override
+        public void run() {
+            Runtime runtime = Runtime.getRuntime();
+            while (!isInterrupted()) {
+                mMaxUsed = Math.max(mMaxUsed, runtime.totalMemory() - runtime.freeMemory());
+                try {
+                    Thread.sleep(HEAP_SAMPLE_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local replacement of the usgs FDSN event service answering the queries of the app, so the
+ * fetching and parsing code can be measured under load without depending on the network or on
+ * earthquake.usgs.gov.
+ *
+ * Queries return a recorded response as is, or a synthetic one repeating the features of a
+ * recorded usgs response with new ids and times, of {@link #setFeatureCount(int)} features or
+ * of the limit parameter of the query if smaller. Queries with the updatedafter parameter, sent
+ * by {@link EarthquakeSync}, return a few new events instead. Responses carry an ETag, are
+ * gzipped when the client accepts it and can be slowed down by a latency and a bandwidth, and a
+ * share of them can fail with a 503.
+ *
+ * Every request is answered on a thread of its own so a slow response does not delay the
+ * others. The settings can be changed while the server runs.
+ */
+public final class UsgsStubServer {
+
+    // path of the queries, the other paths answer 404
+    public static final String QUERY_PATH = "/fdsnws/event/1/query";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // bytes written at once, and between two pauses when the bandwidth is limited
+    private static final int WRITE_BYTES = 8 * 1024;
+
+    private final HttpServer mServer;
+
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+
+    private final Random mRandom = new Random();
+
+    // synthetic responses by feature count, plain and gzipped
+    private final ConcurrentMap<Integer, Response> mResponses = new ConcurrentHashMap<>();
+
+    // numbers the events of the delta responses so every one is new
+    private final AtomicInteger mDeltaEvents = new AtomicInteger();
+
+    private final AtomicLong mRequests = new AtomicLong();
+
+    private final AtomicLong mErrors = new AtomicLong();
+
+    private final AtomicLong mBytesSent = new AtomicLong();
+
+    private volatile int mFeatureCount = 1000;
+
+    private volatile int mDeltaFeatureCount = 10;
+
+    private volatile long mLatencyMillis;
+
+    private volatile long mBandwidthBytesPerSecond;
+
+    private volatile double mErrorRate;
+
+    private volatile Response mRecorded;
+
+    /**
+     * Creates a server, not started yet
+     *
+     * @param port local port, 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public UsgsStubServer(int port) throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(port), 0);
+        mServer.setExecutor(mExecutor);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    respond(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+    }
+
+    public void start() {
+        mServer.start();
+    }
+
+    /**
+     * Stops the server, the requests being answered are dropped
+     */
+    public void stop() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    public int getPort() {
+        return mServer.getAddress().getPort();
+    }
+
+    /**
+     * Returns the url of a query of the server, with the parameters of the query of the app
+     *
+     * @return string url
+     */
+    public String getQueryUrl() {
+        return "http://localhost:" + getPort() + QUERY_PATH
+                + "?format=geojson&eventtype=earthquake&orderby=time&minmag=6";
+    }
+
+    /**
+     * @param featureCount number of features of the synthetic responses
+     */
+    public void setFeatureCount(int featureCount) {
+        mFeatureCount = featureCount;
+    }
+
+    /**
+     * @param deltaFeatureCount number of new events returned to queries with updatedafter
+     */
+    public void setDeltaFeatureCount(int deltaFeatureCount) {
+        mDeltaFeatureCount = deltaFeatureCount;
+    }
+
+    /**
+     * @param latencyMillis delay before the response headers are sent
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        mLatencyMillis = latencyMillis;
+    }
+
+    /**
+     * @param bandwidthBytesPerSecond bytes sent per second for each response, as sent on the
+     *                                wire so after compression, 0 for no limit
+     */
+    public void setBandwidth(long bandwidthBytesPerSecond) {
+        mBandwidthBytesPerSecond = bandwidthBytesPerSecond;
+    }
+
+    /**
+     * @param errorRate share of the requests answered with a 503, between 0 and 1
+     */
+    public void setErrorRate(double errorRate) {
+        mErrorRate = errorRate;
+    }
+
+    /**
+     * Answers the queries with a recorded response instead of synthetic ones
+     *
+     * @param geoJson recorded response, null to go back to synthetic responses
+     */
+    public void setRecordedResponse(byte[] geoJson) throws IOException {
+        mRecorded = geoJson == null ? null : new Response(geoJson);
+    }
+
+    public long getRequestCount() {
+        return mRequests.get();
+    }
+
+    public long getErrorCount() {
+        return mErrors.get();
+    }
+
+    public long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        mRequests.incrementAndGet();
+        if (!exchange.getRequestURI().getPath().equals(QUERY_PATH)) {
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_FOUND, -1);
+            return;
+        }
+
+        sleep(mLatencyMillis);
+        double errorRate = mErrorRate;
+        if (errorRate > 0 && nextDouble() < errorRate) {
+            mErrors.incrementAndGet();
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_UNAVAILABLE, -1);
+            return;
+        }
+
+        Response response;
+        try {
+            response = getResponse(parseQuery(exchange.getRequestURI().getRawQuery()));
+        } catch (JSONException e) {
+            throw new IOException("Cannot build response", e);
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("ETag", response.mETag);
+        if (response.mETag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+            return;
+        }
+
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        byte[] body = response.mBody;
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            body = response.mGzippedBody;
+        }
+        exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+        write(exchange.getResponseBody(), body);
+    }
+
+    /**
+     * Writes a body at most at the bandwidth set
+     */
+    private void write(OutputStream outputStream, byte[] body) throws IOException {
+        long bandwidth = mBandwidthBytesPerSecond;
+        long start = System.nanoTime();
+        for (int offset = 0; offset < body.length; offset += WRITE_BYTES) {
+            int length = Math.min(WRITE_BYTES, body.length - offset);
+            outputStream.write(body, offset, length);
+            outputStream.flush();
+            mBytesSent.addAndGet(length);
+            if (bandwidth > 0) {
+                // wait until the bytes written so far are due
+                long dueMillis = (offset + length) * 1000L / bandwidth;
+                sleep(dueMillis - (System.nanoTime() - start) / 1000000);
+            }
+        }
+    }
+
+    private Response getResponse(Map<String, String> query) throws IOException, JSONException {
+        if (query.containsKey("updatedafter")) {
+            return new Response(buildDelta(mDeltaFeatureCount));
+        }
+
+        Response recorded = mRecorded;
+        if (recorded != null) {
+            return recorded;
+        }
+
+        int featureCount = mFeatureCount;
+        String limit = query.get("limit");
+        if (limit != null) {
+            try {
+                featureCount = Math.min(featureCount, Integer.parseInt(limit));
+            } catch (NumberFormatException e) {
+                // an invalid limit is ignored
+            }
+        }
+        Response response = mResponses.get(featureCount);
+        if (response == null) {
+            // built once per feature count, two threads building it at once is harmless
+            response = new Response(buildSynthetic(featureCount));
+            mResponses.putIfAbsent(featureCount, response);
+        }
+        return response;
+    }
+
+    /**
+     * Builds a response repeating the features of the recorded response with new ids, times and
+     * distances, so every feature and place is distinct like in real responses
+     */
+    private static byte[] buildSynthetic(int featureCount) throws IOException, JSONException {
+        JSONObject recorded = new JSONObject(new String(GeoJsonFixtures.readRecorded(), UTF_8));
+        JSONArray recordedFeatures = recorded.getJSONArray("features");
+        long time = recordedFeatures.getJSONObject(0).getJSONObject("properties")
+                .getLong("time");
+
+        StringBuilder json = beginFeatureCollection(recorded, featureCount);
+        for (int i = 0; i < featureCount; i++) {
+            time -= 60000 + (i * 7919L) % 3600000;
+            JSONObject feature = copyFeature(recordedFeatures, i, "lt" + Integer.toString(i, 36),
+                    time, time + 600000);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(feature);
+        }
+        return json.append("]}").toString().getBytes(UTF_8);
+    }
+
+    /**
+     * Builds a response of new events updated now, as returned to the queries of the events
+     * updated after a date
+     */
+    private byte[] buildDelta(int featureCount) throws IOException, JSONException {
+        JSONObject recorded = new JSONObject(new String(GeoJsonFixtures.readRecorded(), UTF_8));
+        JSONArray recordedFeatures = recorded.getJSONArray("features");
+        long now = System.currentTimeMillis();
+
+        StringBuilder json = beginFeatureCollection(recorded, featureCount);
+        for (int i = 0; i < featureCount; i++) {
+            int event = mDeltaEvents.getAndIncrement();
+            JSONObject feature = copyFeature(recordedFeatures, event,
+                    "ltd" + Integer.toString(event, 36), now - (featureCount - i) * 1000L, now);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(feature);
+        }
+        return json.append("]}").toString().getBytes(UTF_8);
+    }
+
+    private static StringBuilder beginFeatureCollection(JSONObject recorded, int featureCount)
+            throws JSONException {
+        JSONObject metadata = recorded.getJSONObject("metadata");
+        metadata.put("generated", System.currentTimeMillis());
+        metadata.put("count", featureCount);
+        metadata.put("limit", featureCount);
+        StringBuilder json = new StringBuilder(featureCount * 1200 + 1024);
+        return json.append("{\"type\":\"FeatureCollection\",\"metadata\":").append(metadata)
+                .append(",\"features\":[");
+    }
+
+    private static JSONObject copyFeature(JSONArray recordedFeatures, int i, String id, long time,
+                                          long updated) throws JSONException {
+        JSONObject feature = new JSONObject(
+                recordedFeatures.getJSONObject(i % recordedFeatures.length()).toString());
+        JSONObject properties = feature.getJSONObject("properties");
+        properties.put("time", time);
+        properties.put("updated", updated);
+        properties.put("code", id);
+        properties.put("ids", "," + id + ",");
+        properties.put("url", "http://earthquake.usgs.gov/earthquakes/eventpage/" + id);
+        properties.put("place", varyDistance(properties.getString("place"), i));
+        feature.put("id", id);
+        return feature;
+    }
+
+    /**
+     * Changes the distance of "N km DIR of X" places
+     */
+    private static String varyDistance(String place, int i) {
+        int index = place.indexOf("km ");
+        if (index <= 0 || !Character.isDigit(place.charAt(0))) {
+            return place;
+        }
+        return (1 + i % 300) + place.substring(index);
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws IOException {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0) {
+                query.put(URLDecoder.decode(parameter.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(parameter.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return query;
+    }
+
+    private double nextDouble() {
+        synchronized (mRandom) {
+            return mRandom.nextDouble();
+        }
+    }
+
+    private static void sleep(long millis) throws IOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[WRITE_BYTES];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Body of a response, kept plain and gzipped, and its ETag
+     */
+    private static final class Response {
+        final byte[] mBody;
+        final byte[] mGzippedBody;
+        final String mETag;
+
+        Response(byte[] body) throws IOException {
+            mBody = body;
+            ByteArrayOutputStream gzipped = new ByteArrayOutputStream(body.length / 4);
+            GZIPOutputStream outputStream = new GZIPOutputStream(gzipped);
+            outputStream.write(body);
+            outputStream.close();
+            mGzippedBody = gzipped.toByteArray();
+            mETag = "\"" + Integer.toHexString(Arrays.hashCode(body)) + "\"";
+        }
+    }
+}